@@ -0,0 +1,77 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.security.MessageDigest;
+import javax.annotation.CheckForNull;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Identifies the content of a file together with the configuration it was analyzed with.
+ * Analyzing again a file with the same fingerprint would find the same issues.
+ * <p>
+ * The modification stamp of the document at the time the fingerprint was computed is kept, so that it's cheap to check
+ * whether the file was modified since then without hashing its content again.
+ */
+public final class AnalysisFingerprint {
+  private final String value;
+  private final long modificationStamp;
+
+  AnalysisFingerprint(String value, long modificationStamp) {
+    this.value = value;
+    this.modificationStamp = modificationStamp;
+  }
+
+  /**
+   * <b>Can only be called with read access</b>.
+   * Returns null if the file has no text content.
+   */
+  @CheckForNull
+  public static AnalysisFingerprint compute(FileDocumentManager docManager, VirtualFile file, String configurationHash) {
+    Document doc = docManager.getDocument(file);
+    if (doc == null) {
+      return null;
+    }
+    MessageDigest digest = DigestUtils.getSha1Digest();
+    digest.update(configurationHash.getBytes(UTF_8));
+    digest.update(doc.getImmutableCharSequence().toString().getBytes(UTF_8));
+    return new AnalysisFingerprint(Hex.encodeHexString(digest.digest()), doc.getModificationStamp());
+  }
+
+  public String value() {
+    return value;
+  }
+
+  /**
+   * Whether the file wasn't modified since the fingerprint was computed.
+   * A document that is not loaded has the same modification stamp as its file.
+   */
+  public boolean isUpToDate(FileDocumentManager docManager, VirtualFile file) {
+    Document doc = docManager.getCachedDocument(file);
+    long currentStamp = doc != null ? doc.getModificationStamp() : file.getModificationStamp();
+    return file.isValid() && currentStamp == modificationStamp;
+  }
+}
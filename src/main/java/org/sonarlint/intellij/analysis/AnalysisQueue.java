@@ -0,0 +1,174 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.ThreadSafe;
+import org.sonarlint.intellij.trigger.TriggerType;
+
+/**
+ * Background analyses waiting to run, keyed by file. When a file is submitted again before the analysis it was queued with starts,
+ * it is moved to the newest submission, so that it's analyzed only once, with the newest trigger. The flags and callbacks of the
+ * superseded submission are kept by the newest one.
+ */
+@ThreadSafe
+class AnalysisQueue {
+  private final Map<VirtualFile, Pending> pendingByFile = new HashMap<>();
+  private long savedAnalyses = 0;
+
+  /**
+   * Queues a job, taking over the files that are already queued.
+   *
+   * @return the pending analysis, to be given to {@link #start(Pending)} when its turn comes
+   */
+  synchronized Pending add(SonarLintJob job) {
+    Pending pending = new Pending(job);
+    for (Map.Entry<Module, Collection<VirtualFile>> e : job.filesPerModule().entrySet()) {
+      for (VirtualFile file : e.getValue()) {
+        Pending previous = pendingByFile.put(file, pending);
+        if (previous != null && previous != pending) {
+          previous.remove(file);
+          pending.superseded++;
+          savedAnalyses++;
+          if (previous.waitForServerIssues && !pending.waitForServerIssues) {
+            pending.waitForServerIssues = true;
+            pending.changed = true;
+          }
+          if (previous.isEmpty() && !previous.callbacks.isEmpty()) {
+            pending.callbacks.addAll(previous.callbacks);
+            pending.changed = true;
+            previous.callbacks.clear();
+          }
+        }
+      }
+    }
+    return pending;
+  }
+
+  /**
+   * Removes a pending analysis from the queue, before running it.
+   *
+   * @return the job to run, with the files that were not submitted again since it was queued, or null if there is none
+   */
+  @CheckForNull
+  synchronized SonarLintJob start(Pending pending) {
+    pending.files.values().forEach(files -> files.forEach(f -> pendingByFile.remove(f, pending)));
+    if (pending.isEmpty()) {
+      return null;
+    }
+    if (!pending.changed) {
+      return pending.job;
+    }
+    Map<Module, Collection<VirtualFile>> files = new HashMap<>();
+    pending.files.forEach((module, moduleFiles) -> files.put(module, new ArrayList<>(moduleFiles)));
+    return new SonarLintJob(files, pending.trigger, pending.waitForServerIssues, callback(pending.callbacks));
+  }
+
+  /**
+   * Number of file analyses that were not run because the file was submitted again while queued.
+   */
+  synchronized long savedAnalyses() {
+    return savedAnalyses;
+  }
+
+  @CheckForNull
+  private static AnalysisCallback callback(List<AnalysisCallback> callbacks) {
+    if (callbacks.isEmpty()) {
+      return null;
+    }
+    if (callbacks.size() == 1) {
+      return callbacks.get(0);
+    }
+    return new CompositeCallback(new ArrayList<>(callbacks));
+  }
+
+  /**
+   * A job in the queue. It's only modified by the queue, while holding its lock.
+   */
+  static class Pending {
+    private final SonarLintJob job;
+    private final TriggerType trigger;
+    private final Map<Module, Collection<VirtualFile>> files = new LinkedHashMap<>();
+    private final List<AnalysisCallback> callbacks = new ArrayList<>();
+    private boolean waitForServerIssues;
+    private boolean changed = false;
+    private int superseded = 0;
+
+    private Pending(SonarLintJob job) {
+      this.job = job;
+      this.trigger = job.trigger();
+      this.waitForServerIssues = job.waitForServerIssues();
+      job.filesPerModule().forEach((module, moduleFiles) -> files.put(module, new LinkedHashSet<>(moduleFiles)));
+      if (job.callback() != null) {
+        callbacks.add(job.callback());
+      }
+    }
+
+    private void remove(VirtualFile file) {
+      Iterator<Collection<VirtualFile>> it = files.values().iterator();
+      while (it.hasNext()) {
+        Collection<VirtualFile> moduleFiles = it.next();
+        if (moduleFiles.remove(file) && moduleFiles.isEmpty()) {
+          it.remove();
+        }
+      }
+      changed = true;
+    }
+
+    private boolean isEmpty() {
+      return files.isEmpty();
+    }
+
+    /**
+     * Number of files that were taken over from older submissions when this one was queued.
+     */
+    int superseded() {
+      return superseded;
+    }
+  }
+
+  private static class CompositeCallback implements AnalysisCallback {
+    private final List<AnalysisCallback> callbacks;
+
+    private CompositeCallback(List<AnalysisCallback> callbacks) {
+      this.callbacks = callbacks;
+    }
+
+    @Override
+    public void onSuccess() {
+      callbacks.forEach(AnalysisCallback::onSuccess);
+    }
+
+    @Override
+    public void onError(Throwable e) {
+      callbacks.forEach(c -> c.onError(e));
+    }
+  }
+}
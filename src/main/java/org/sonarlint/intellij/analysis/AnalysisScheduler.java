@@ -0,0 +1,139 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Runs analyses one at a time, in order of priority, and in order of submission for the same priority.
+ * A running analysis is never interrupted: big jobs should be submitted in chunks so that analyses of higher priority
+ * don't wait for long.
+ */
+@ThreadSafe
+class AnalysisScheduler {
+  enum Priority {
+    FOCUSED("Selected editor"),
+    OPEN("Open files"),
+    BULK("Bulk");
+
+    private final String name;
+
+    Priority(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+  }
+
+  private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+    new AnalysisThreadFactory());
+  private final AtomicLong sequence = new AtomicLong();
+  private final Map<Priority, QueueWaitStats> waitStats = new EnumMap<>(Priority.class);
+
+  AnalysisScheduler() {
+    for (Priority priority : Priority.values()) {
+      waitStats.put(priority, new QueueWaitStats());
+    }
+  }
+
+  /**
+   * @param analysis Receives the time it waited in the queue, in milliseconds
+   */
+  void submit(Priority priority, LongConsumer analysis) {
+    executor.execute(new Entry(priority, sequence.getAndIncrement(), analysis));
+  }
+
+  QueueWaitStats getQueueWaitStats(Priority priority) {
+    return waitStats.get(priority);
+  }
+
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  private class Entry implements Runnable, Comparable<Entry> {
+    private final Priority priority;
+    private final long sequence;
+    private final LongConsumer analysis;
+    private final long submitTime;
+
+    private Entry(Priority priority, long sequence, LongConsumer analysis) {
+      this.priority = priority;
+      this.sequence = sequence;
+      this.analysis = analysis;
+      this.submitTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public void run() {
+      long waited = System.currentTimeMillis() - submitTime;
+      waitStats.get(priority).add(waited);
+      analysis.accept(waited);
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      int cmp = priority.compareTo(other.priority);
+      return cmp != 0 ? cmp : Long.compare(sequence, other.sequence);
+    }
+  }
+
+  /**
+   * Time waited in the queue by the analyses of a priority, since the project was opened.
+   */
+  @ThreadSafe
+  static class QueueWaitStats {
+    private long count = 0;
+    private long totalMs = 0;
+    private long maxMs = 0;
+
+    synchronized void add(long waitedMs) {
+      count++;
+      totalMs += waitedMs;
+      maxMs = Math.max(maxMs, waitedMs);
+    }
+
+    synchronized long count() {
+      return count;
+    }
+
+    synchronized long averageMs() {
+      return count == 0 ? 0 : (totalMs / count);
+    }
+
+    synchronized long maxMs() {
+      return maxMs;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format("%d analyses, %dms on average, %dms at most", count, averageMs(), maxMs);
+    }
+  }
+}
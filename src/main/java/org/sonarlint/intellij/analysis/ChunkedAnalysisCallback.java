@@ -0,0 +1,108 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Callback shared by the chunks of an analysis triggered by the user, which run as separate tasks so that analyses of the selected
+ * editor can run between them.
+ * The callback of the analysis succeeds once all the chunks succeeded, and fails at most once, with the first error.
+ * Once a chunk is canceled, the remaining chunks are canceled too.
+ * The issues found are reported, and matched with server issues, once for the whole analysis.
+ */
+@ThreadSafe
+public class ChunkedAnalysisCallback implements AnalysisCallback {
+  @Nullable
+  private final AnalysisCallback callback;
+  private final AtomicInteger remainingSuccesses;
+  private final AtomicInteger remainingTasks;
+  private final AtomicInteger remainingProcessed;
+  private final Set<VirtualFile> filesWithIssues = ConcurrentHashMap.newKeySet();
+  private final AtomicLong issueCount = new AtomicLong();
+  private final AtomicBoolean failed = new AtomicBoolean(false);
+  private volatile boolean canceled = false;
+
+  ChunkedAnalysisCallback(@Nullable AnalysisCallback callback, int chunks) {
+    this.callback = callback;
+    this.remainingSuccesses = new AtomicInteger(chunks);
+    this.remainingTasks = new AtomicInteger(chunks);
+    this.remainingProcessed = new AtomicInteger(chunks);
+  }
+
+  @Override
+  public void onSuccess() {
+    if (remainingSuccesses.decrementAndGet() == 0 && callback != null) {
+      callback.onSuccess();
+    }
+  }
+
+  @Override
+  public void onError(Throwable e) {
+    if (failed.compareAndSet(false, true) && callback != null) {
+      callback.onError(e);
+    }
+  }
+
+  /**
+   * Called when the issues of a chunk are processed, before its success is notified.
+   *
+   * @return whether it was the last chunk processed, which then reports the issues of all chunks
+   */
+  public boolean chunkProcessed(Collection<VirtualFile> chunkFilesWithIssues, long chunkIssueCount) {
+    filesWithIssues.addAll(chunkFilesWithIssues);
+    issueCount.addAndGet(chunkIssueCount);
+    return remainingProcessed.decrementAndGet() == 0;
+  }
+
+  public Set<VirtualFile> getFilesWithIssues() {
+    return Collections.unmodifiableSet(filesWithIssues);
+  }
+
+  public long getIssueCount() {
+    return issueCount.get();
+  }
+
+  void cancel() {
+    canceled = true;
+  }
+
+  boolean isCanceled() {
+    return canceled;
+  }
+
+  /**
+   * Called when the task of a chunk ends, whatever its outcome.
+   *
+   * @return whether it was the last chunk
+   */
+  boolean chunkEnded() {
+    return remainingTasks.decrementAndGet() == 0;
+  }
+}
@@ -34,8 +34,11 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import javax.annotation.Nullable;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.sonarlint.intellij.config.global.SonarQubeServer;
 import org.sonarlint.intellij.core.ProjectBindingManager;
 import org.sonarlint.intellij.core.SonarLintFacade;
@@ -119,6 +122,19 @@ public class SonarLintAnalyzer {
     return result;
   }
 
+  /**
+   * Hash of the configuration that the issues found in the files of a module depend on, apart from their content.
+   */
+  public String getConfigurationHash(Module module) {
+    SortedMap<String, String> pluginProps = new TreeMap<>();
+    for (AnalysisConfigurator config : AnalysisConfigurator.EP_NAME.getExtensions()) {
+      pluginProps.putAll(config.configure(module));
+    }
+    StringBuilder builder = new StringBuilder(projectBindingManager.getFacade().getConfigurationHash());
+    pluginProps.forEach((k, v) -> builder.append('\n').append(k).append('=').append(v));
+    return DigestUtils.sha1Hex(builder.toString());
+  }
+
   private List<ClientInputFile> getInputFiles(VirtualFileTestPredicate testPredicate, Collection<VirtualFile> filesToAnalyze) {
 
     List<ClientInputFile> inputFiles = new LinkedList<>();
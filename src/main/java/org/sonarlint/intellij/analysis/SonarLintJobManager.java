@@ -22,6 +22,7 @@ package org.sonarlint.intellij.analysis;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.AbstractProjectComponent;
+import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
@@ -29,30 +30,49 @@ import com.intellij.openapi.progress.impl.BackgroundableProcessIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.messages.MessageBus;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
+import org.sonarlint.intellij.analysis.AnalysisScheduler.Priority;
 import org.sonarlint.intellij.messages.TaskListener;
 import org.sonarlint.intellij.trigger.TriggerType;
 import org.sonarlint.intellij.ui.SonarLintConsole;
 
 public class SonarLintJobManager extends AbstractProjectComponent {
-  private final ExecutorService executor = Executors.newSingleThreadExecutor(new AnalysisThreadFactory());
+  /**
+   * Maximum number of files of a background analysis that are analyzed by the same task. Between tasks, analyses of the selected
+   * editor can run.
+   */
+  static final int CHUNK_SIZE = 8;
+  private final AnalysisScheduler scheduler = new AnalysisScheduler();
+  private final AnalysisQueue queue = new AnalysisQueue();
+  private final AtomicReference<RunningTask> running = new AtomicReference<>();
   private final MessageBus messageBus;
   private final ProgressManager progressManager;
   private final SonarLintStatus status;
   private final SonarLintConsole console;
   private final SonarLintTaskFactory taskFactory;
+  private final FileEditorManager editorManager;
 
-  public SonarLintJobManager(Project project, SonarLintTaskFactory taskFactory, SonarLintStatus status, SonarLintConsole console) {
-    this(project, taskFactory, ProgressManager.getInstance(), status, console);
+  public SonarLintJobManager(Project project, SonarLintTaskFactory taskFactory, SonarLintStatus status, SonarLintConsole console,
+    FileEditorManager editorManager) {
+    this(project, taskFactory, ProgressManager.getInstance(), status, console, editorManager);
   }
 
-  public SonarLintJobManager(Project project, SonarLintTaskFactory taskFactory, ProgressManager progressManager, SonarLintStatus status, SonarLintConsole console) {
+  public SonarLintJobManager(Project project, SonarLintTaskFactory taskFactory, ProgressManager progressManager, SonarLintStatus status, SonarLintConsole console,
+    FileEditorManager editorManager) {
     super(project);
     this.taskFactory = taskFactory;
+    this.editorManager = editorManager;
     this.messageBus = project.getMessageBus();
     this.progressManager = progressManager;
     this.status = status;
@@ -64,19 +84,90 @@ public class SonarLintJobManager extends AbstractProjectComponent {
    * It might queue the submission of the job in the thread pool.
    * It won't block the current thread (in most cases, the event dispatch thread), but the contents of the file being analyzed
    * might be changed with the editor at the same time, resulting in a bad or failed placement of the issues in the editor.
+   * Files that are still waiting for a previous background analysis are only analyzed once, by this one.
+   * Files of the selected editor are analyzed first. Unless there is a callback, which expects the results of all files at once,
+   * the other files are analyzed in chunks of {@link #CHUNK_SIZE} files.
    * @see #submitManual(Map, TriggerType, boolean, AnalysisCallback)
    */
   public void submitBackground(Map<Module, Collection<VirtualFile>> files, TriggerType trigger, @Nullable AnalysisCallback callback) {
-    SonarLintJob newJob = new SonarLintJob(files, trigger, false, callback);
+    if (callback != null) {
+      submitBackground(new SonarLintJob(files, trigger, false, callback));
+      return;
+    }
+    for (Map<Module, Collection<VirtualFile>> chunk : split(files, getSelectedFiles())) {
+      submitBackground(new SonarLintJob(chunk, trigger, false, null));
+    }
+  }
+
+  private void submitBackground(SonarLintJob newJob) {
+    TriggerType trigger = newJob.trigger();
     console.debug(String.format("[%s] %d file(s) submitted", trigger.getName(), newJob.allFiles().size()));
+    AnalysisQueue.Pending pending = queue.add(newJob);
+    if (pending.superseded() > 0) {
+      console.debug(String.format("[%s] %d file(s) were already queued for analysis (%d analyses saved so far)", trigger.getName(),
+        pending.superseded(), queue.savedAnalyses()));
+    }
     SonarLintTask task = taskFactory.createTask(newJob, true);
-    runInEDT(task);
+    runInEDT(task, pending, getPriority(newJob, getSelectedFiles(), false));
+  }
+
+  /**
+   * The priority depends on the files analyzed rather than on how they were submitted: the selected editor first, then files
+   * analyzed on their own, such as open files or a single file analyzed by the user, and then the chunks of bigger analyses.
+   *
+   * @param bulk Whether the job is a chunk of an analysis of more than {@link #CHUNK_SIZE} files
+   */
+  static Priority getPriority(SonarLintJob job, Set<VirtualFile> selected, boolean bulk) {
+    if (job.allFiles().stream().anyMatch(selected::contains)) {
+      return Priority.FOCUSED;
+    }
+    return bulk ? Priority.BULK : Priority.OPEN;
+  }
+
+  private Set<VirtualFile> getSelectedFiles() {
+    return new HashSet<>(Arrays.asList(editorManager.getSelectedFiles()));
+  }
+
+  /**
+   * Splits the files of a background analysis: first the selected files, and then the other files in chunks of at most
+   * {@link #CHUNK_SIZE} files.
+   */
+  static List<Map<Module, Collection<VirtualFile>>> split(Map<Module, Collection<VirtualFile>> files, Set<VirtualFile> selected) {
+    Map<Module, Collection<VirtualFile>> focused = new HashMap<>();
+    List<Map<Module, Collection<VirtualFile>>> chunks = new ArrayList<>();
+    Map<Module, Collection<VirtualFile>> chunk = new HashMap<>();
+    int chunkSize = 0;
+
+    for (Map.Entry<Module, Collection<VirtualFile>> e : files.entrySet()) {
+      for (VirtualFile file : e.getValue()) {
+        if (selected.contains(file)) {
+          focused.computeIfAbsent(e.getKey(), m -> new ArrayList<>()).add(file);
+          continue;
+        }
+        if (chunkSize == CHUNK_SIZE) {
+          chunks.add(chunk);
+          chunk = new HashMap<>();
+          chunkSize = 0;
+        }
+        chunk.computeIfAbsent(e.getKey(), m -> new ArrayList<>()).add(file);
+        chunkSize++;
+      }
+    }
+    if (!chunk.isEmpty()) {
+      chunks.add(chunk);
+    }
+    if (!focused.isEmpty()) {
+      chunks.add(0, focused);
+    }
+    return chunks;
   }
 
   /**
    * Runs CodeScan analysis synchronously, if no manual (foreground) analysis is already on going.
    * If a foreground analysis is already on going, this method simply returns an empty AnalysisResult.
    * Once it starts, it will display a ProgressWindow with the EDT and run the analysis in a pooled thread.
+   * If it's not modal, it's scheduled like background analyses: the selected files first, and then the other files in chunks of
+   * {@link #CHUNK_SIZE} files, between which analyses of the selected editor can run. The callback is called once all chunks are done.
    * @see #submitBackground(Map, TriggerType, AnalysisCallback)
    */
   public void submitManual(Map<Module, Collection<VirtualFile>> files, TriggerType trigger, boolean modal, @Nullable AnalysisCallback callback) {
@@ -86,45 +177,130 @@ public class SonarLintJobManager extends AbstractProjectComponent {
     }
 
     SonarLintJob newJob = new SonarLintJob(files, trigger, true, callback);
-    console.debug(String.format("[%s] %d file(s) submitted", trigger.getName(), newJob.allFiles().size()));
-    SonarLintUserTask task = taskFactory.createUserTask(newJob, modal);
-    runInEDT(task);
+    int numFiles = newJob.allFiles().size();
+    console.debug(String.format("[%s] %d file(s) submitted", trigger.getName(), numFiles));
+    Set<VirtualFile> selected = getSelectedFiles();
+    boolean bulk = numFiles > CHUNK_SIZE;
+    List<Map<Module, Collection<VirtualFile>>> chunks = modal ? Collections.singletonList(files) : split(files, selected);
+    if (chunks.size() == 1) {
+      runInEDT(taskFactory.createUserTask(newJob, modal), null, getPriority(newJob, selected, bulk));
+      return;
+    }
+
+    ChunkedAnalysisCallback chunksCallback = new ChunkedAnalysisCallback(callback, chunks.size());
+    for (Map<Module, Collection<VirtualFile>> chunk : chunks) {
+      SonarLintJob chunkJob = new SonarLintJob(chunk, trigger, true, chunksCallback);
+      runInEDT(taskFactory.createUserTask(chunkJob, chunksCallback), null, getPriority(chunkJob, selected, bulk));
+    }
   }
 
-  private void runInEDT(SonarLintTask task) {
+  private void runInEDT(SonarLintTask task, @Nullable AnalysisQueue.Pending pending, Priority priority) {
     final Application app = ApplicationManager.getApplication();
     // task needs to be submitted in the EDT because progress manager will get the related UI
     if (!app.isDispatchThread()) {
-      app.invokeLater(() -> runTask(task));
+      app.invokeLater(() -> runTask(task, pending, priority));
     } else {
-      runTask(task);
+      runTask(task, pending, priority);
     }
   }
 
   /**
    * Depending on the type of task (Modal or Backgroundable), it will prepare related UI and execute the task in the current thread
-   * or in the executor.
+   * or in the scheduler, with the given priority.
    * It needs to be called from EDT because of the creation of the Indicator.
    */
-  private void runTask(SonarLintTask task) {
+  private void runTask(SonarLintTask task, @Nullable AnalysisQueue.Pending pending, Priority priority) {
     if (myProject.isDisposed()) {
       return;
     }
     notifyStart(task.getJob());
     if (task.isConditionalModal() || task.isModal()) {
-      progressManager.run(task);
+      SonarLintTask toRun = dequeue(task, pending);
+      if (toRun != null) {
+        progressManager.run(toRun);
+      }
     } else {
       ProgressIndicator progressIndicator = new BackgroundableProcessIndicator(task);
-      executor.submit(() -> progressManager.runProcess(() -> task.run(progressIndicator), progressIndicator));
+      scheduler.submit(priority, waited -> {
+        console.debug(String.format("[%s] Analysis waited %dms in queue (%s)", priority.getName(), waited, scheduler.getQueueWaitStats(priority)));
+        progressManager.runProcess(() -> runQueued(task, pending, progressIndicator), progressIndicator);
+      });
     }
   }
 
+  private void runQueued(SonarLintTask task, @Nullable AnalysisQueue.Pending pending, ProgressIndicator progressIndicator) {
+    SonarLintTask toRun = dequeue(task, pending);
+    if (toRun == null) {
+      return;
+    }
+    if (pending == null) {
+      // not triggered automatically, never canceled by edits
+      toRun.run(progressIndicator);
+      return;
+    }
+    RunningTask current = new RunningTask(toRun, progressIndicator);
+    running.set(current);
+    try {
+      toRun.run(progressIndicator);
+    } finally {
+      running.compareAndSet(current, null);
+    }
+    if (toRun.wasCanceled() && !myProject.isDisposed()) {
+      SonarLintJob job = toRun.getJob();
+      submitBackground(new SonarLintJob(job.filesPerModule(), job.trigger(), job.waitForServerIssues(), job.callback()));
+    }
+  }
+
+  /**
+   * Cancels the background analysis running on a file, if any, because the file was edited. The analysis is submitted again as
+   * soon as it's canceled, so that the new content is analyzed without waiting for the outdated results.
+   * Analyses triggered by the user are never canceled, and neither are analyses that are already processing their issues.
+   */
+  public void cancelOutdatedAnalysis(VirtualFile file) {
+    RunningTask current = running.get();
+    if (current != null && current.files.contains(file) && !current.indicator.isCanceled() && current.task.tryCancel()) {
+      console.debug("Canceling analysis of outdated content: " + file.getName());
+      current.indicator.cancel();
+    }
+  }
+
+  /**
+   * Removes a background task from the queue when it's about to run.
+   *
+   * @return the task to run, with the files that were not submitted again while it was queued, or null if there is none
+   */
+  @CheckForNull
+  private SonarLintTask dequeue(SonarLintTask task, @Nullable AnalysisQueue.Pending pending) {
+    if (pending == null) {
+      return task;
+    }
+    SonarLintJob job = queue.start(pending);
+    if (job == null) {
+      console.debug("Skipping analysis, all its files were submitted again");
+      messageBus.syncPublisher(TaskListener.SONARLINT_TASK_TOPIC).ended(task.getJob());
+      return null;
+    }
+    return job == task.getJob() ? task : taskFactory.createTask(job, true);
+  }
+
   private void notifyStart(SonarLintJob job) {
     messageBus.syncPublisher(TaskListener.SONARLINT_TASK_TOPIC).started(job);
   }
 
+  private static class RunningTask {
+    private final SonarLintTask task;
+    private final ProgressIndicator indicator;
+    private final Set<VirtualFile> files;
+
+    private RunningTask(SonarLintTask task, ProgressIndicator indicator) {
+      this.task = task;
+      this.indicator = indicator;
+      this.files = new HashSet<>(task.getJob().allFiles());
+    }
+  }
+
   @Override
   public void projectClosed() {
-    executor.shutdown();
+    scheduler.shutdown();
   }
 }
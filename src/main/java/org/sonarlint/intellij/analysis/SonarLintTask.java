@@ -19,24 +19,42 @@
  */
 package org.sonarlint.intellij.analysis;
 
+import com.intellij.openapi.application.AccessToken;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
-import org.sonarlint.intellij.editor.AccumulatorIssueListener;
+import org.sonarlint.intellij.issue.IssueManager;
 import org.sonarlint.intellij.issue.IssueProcessor;
+import org.sonarlint.intellij.issue.TrackingSession;
 import org.sonarlint.intellij.messages.TaskListener;
+import org.sonarlint.intellij.proto.Sonarlint;
+import org.sonarlint.intellij.trigger.TriggerType;
 import org.sonarlint.intellij.ui.SonarLintConsole;
+import org.sonarlint.intellij.util.AggregatedProgressMonitor;
 import org.sonarlint.intellij.util.SonarLintUtils;
 import org.sonarlint.intellij.util.TaskProgressMonitor;
 import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
@@ -47,11 +65,20 @@ import org.sonarsource.sonarlint.core.client.api.exceptions.CanceledException;
 
 public class SonarLintTask extends Task.Backgroundable {
   private static final Logger LOGGER = Logger.getInstance(SonarLintTask.class);
+  private static final int NOT_ANALYZED = 0;
+  private static final int ANALYZING = 1;
+  private static final int ANALYZED = 2;
+  private static final int CANCELED = 3;
   private final IssueProcessor processor;
   protected final SonarLintJob job;
   protected final boolean modal;
   private final boolean startInBackground;
   private final SonarLintConsole console;
+  /**
+   * Whether the analyzers are running, or were canceled by {@link #tryCancel()}. Changed atomically, so that the task either refuses
+   * the cancellation or discards the issues of the analyzers.
+   */
+  private final AtomicInteger state = new AtomicInteger(NOT_ANALYZED);
 
   public SonarLintTask(IssueProcessor processor, SonarLintJob job, boolean background) {
     this(processor, job, false, background);
@@ -89,14 +116,42 @@ public class SonarLintTask extends Task.Backgroundable {
     return job;
   }
 
+  /**
+   * Marks the task as canceled if its analyzers are running. Once they are done, the cancellation is refused, since it would
+   * discard issues that were already found.
+   * The caller is expected to cancel the progress indicator of the task when it succeeds.
+   *
+   * @return whether the task was canceled
+   */
+  public boolean tryCancel() {
+    return state.compareAndSet(ANALYZING, CANCELED);
+  }
+
+  /**
+   * Whether the task was canceled with {@link #tryCancel()}.
+   */
+  public boolean wasCanceled() {
+    return state.get() == CANCELED;
+  }
+
   @Override
   public void run(ProgressIndicator indicator) {
-    AccumulatorIssueListener listener = new AccumulatorIssueListener();
+    TrackingSession session = new TrackingSession();
+    // issues are processed file by file while the analysis runs, so that they are shown as early as possible
+    BiConsumer<VirtualFile, List<Issue>> fileIssuesConsumer = (file, fileIssues) -> processor.processFile(file, indicator, fileIssues, session);
+    AtomicInteger issueCount = new AtomicInteger();
 
     try {
       checkCanceled(indicator, myProject);
 
-      List<AnalysisResults> results = analyze(myProject, indicator, listener);
+      Map<VirtualFile, AnalysisFingerprint> fingerprints = computeFingerprints();
+      Set<VirtualFile> upToDate = new HashSet<>();
+      List<Issue> restoredIssues = new ArrayList<>();
+      Set<VirtualFile> restored = restoreIssues(fingerprints, upToDate, restoredIssues);
+      Map<Module, Collection<VirtualFile>> filesToAnalyze = removeFiles(job.filesPerModule(), upToDate, restored);
+
+      List<AnalysisResults> results = filesToAnalyze.isEmpty() ? Collections.emptyList() : analyze(myProject, indicator, fileIssuesConsumer, issueCount,
+        filesToAnalyze);
 
       //last chance to cancel (to avoid the possibility of having interrupt flag set)
       checkCanceled(indicator, myProject);
@@ -106,16 +161,20 @@ public class SonarLintTask extends Task.Backgroundable {
       indicator.setIndeterminate(false);
       indicator.setFraction(.9);
 
-      List<Issue> issues = listener.getIssues();
-      indicator.setText("Creating CodeScan issues: " + issues.size());
+      indicator.setText("Creating CodeScan issues: " + (issueCount.get() + restoredIssues.size()));
 
       List<ClientInputFile> allFailedAnalysisFiles = results.stream()
         .flatMap(r -> r.failedAnalysisFiles().stream())
         .collect(Collectors.toList());
 
-      processor.process(job, indicator, issues, allFailedAnalysisFiles);
+      Collection<VirtualFile> processed = job.allFiles();
+      processed.removeAll(upToDate);
+      processor.process(job, processed, indicator, restoredIssues, allFailedAnalysisFiles, fingerprints, session);
+      myProject.getMessageBus().syncPublisher(TaskListener.SONARLINT_TASK_TOPIC).completed(job);
     } catch (CanceledException e1) {
       console.info("Analysis canceled");
+      // issues of some files might have been stored while the analyzers were running
+      processor.restore(session);
       return;
     } catch (Throwable e) {
       handleError(e, indicator);
@@ -126,7 +185,7 @@ public class SonarLintTask extends Task.Backgroundable {
 
   private void handleError(Throwable e, ProgressIndicator indicator) {
     // if cancelled, ignore any errors since they were most likely caused by the interrupt
-    if (!indicator.isCanceled()) {
+    if (!indicator.isCanceled() && !wasCanceled()) {
       String msg = "Error running CodeScan analysis";
       console.error(msg, e);
       LOGGER.warn(msg, e);
@@ -150,33 +209,224 @@ public class SonarLintTask extends Task.Backgroundable {
     }
   }
 
-  private List<AnalysisResults> analyze(Project project, ProgressIndicator indicator, AccumulatorIssueListener listener) {
+  /**
+   * Fingerprints are only computed for files opened in editors, for which it's cheap since their content is in memory.
+   */
+  private static boolean shouldComputeFingerprints(TriggerType trigger) {
+    switch (trigger) {
+      case EDITOR_OPEN:
+      case EDITOR_CHANGE:
+      case COMPILATION:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Triggers that often submit files that were not modified since their last analysis, such as opening files after a checkout.
+   */
+  private static boolean shouldRestoreIssues(TriggerType trigger) {
+    return trigger == TriggerType.EDITOR_OPEN || trigger == TriggerType.COMPILATION;
+  }
+
+  private Map<VirtualFile, AnalysisFingerprint> computeFingerprints() {
+    if (!shouldComputeFingerprints(job.trigger())) {
+      return Collections.emptyMap();
+    }
+    SonarLintAnalyzer analyzer = SonarLintUtils.get(myProject, SonarLintAnalyzer.class);
+    Map<Module, String> configurationHashes = new HashMap<>();
+    job.filesPerModule().keySet().forEach(m -> configurationHashes.put(m, analyzer.getConfigurationHash(m)));
+
+    Map<VirtualFile, AnalysisFingerprint> fingerprints = new HashMap<>();
+    FileDocumentManager docManager = FileDocumentManager.getInstance();
+    AccessToken token = ReadAction.start();
+    try {
+      for (Map.Entry<Module, Collection<VirtualFile>> e : job.filesPerModule().entrySet()) {
+        String configurationHash = configurationHashes.get(e.getKey());
+        for (VirtualFile file : e.getValue()) {
+          AnalysisFingerprint fingerprint = file.isValid() ? AnalysisFingerprint.compute(docManager, file, configurationHash) : null;
+          if (fingerprint != null) {
+            fingerprints.put(file, fingerprint);
+          }
+        }
+      }
+    } finally {
+      token.finish();
+    }
+    return fingerprints;
+  }
+
+  /**
+   * Finds the files that don't need to be analyzed, because the issues found by an analysis with the same fingerprint are either
+   * still in the live cache or can be restored from the store.
+   *
+   * @return the files for which issues were restored from the store
+   */
+  private Set<VirtualFile> restoreIssues(Map<VirtualFile, AnalysisFingerprint> fingerprints, Set<VirtualFile> upToDate, List<Issue> restoredIssues) {
+    if (!shouldRestoreIssues(job.trigger())) {
+      return Collections.emptySet();
+    }
+    IssueManager manager = SonarLintUtils.get(myProject, IssueManager.class);
+    Set<VirtualFile> restored = new HashSet<>();
+    for (Map.Entry<VirtualFile, AnalysisFingerprint> e : fingerprints.entrySet()) {
+      VirtualFile file = e.getKey();
+      String fingerprint = e.getValue().value();
+      if (manager.isUpToDate(file, fingerprint)) {
+        upToDate.add(file);
+        continue;
+      }
+      List<Sonarlint.Issues.Issue> storedIssues = manager.getStoredIssues(file, fingerprint);
+      if (storedIssues != null) {
+        ClientInputFile inputFile = new DefaultClientInputFile(file, false, file.getCharset());
+        storedIssues.forEach(i -> restoredIssues.add(new StoredIssue(i, inputFile)));
+        restored.add(file);
+      }
+    }
+    if (!upToDate.isEmpty() || !restored.isEmpty()) {
+      console.debug(String.format("Skipped analysis of %d unchanged files (%d restored from the local store)", upToDate.size() + restored.size(), restored.size()));
+    }
+    return restored;
+  }
+
+  private static Map<Module, Collection<VirtualFile>> removeFiles(Map<Module, Collection<VirtualFile>> filesPerModule, Set<VirtualFile> upToDate,
+    Set<VirtualFile> restored) {
+    if (upToDate.isEmpty() && restored.isEmpty()) {
+      return filesPerModule;
+    }
+    Map<Module, Collection<VirtualFile>> remaining = new HashMap<>();
+    for (Map.Entry<Module, Collection<VirtualFile>> e : filesPerModule.entrySet()) {
+      List<VirtualFile> files = e.getValue().stream()
+        .filter(f -> !upToDate.contains(f) && !restored.contains(f))
+        .collect(Collectors.toList());
+      if (!files.isEmpty()) {
+        remaining.put(e.getKey(), files);
+      }
+    }
+    return remaining;
+  }
+
+  private List<AnalysisResults> analyze(Project project, ProgressIndicator indicator, BiConsumer<VirtualFile, List<Issue>> fileIssuesConsumer,
+    AtomicInteger issueCount, Map<Module, Collection<VirtualFile>> filesPerModule) {
     SonarLintAnalyzer analyzer = SonarLintUtils.get(project, SonarLintAnalyzer.class);
 
     indicator.setIndeterminate(true);
-    int numModules = job.filesPerModule().keySet().size();
+    int numModules = filesPerModule.keySet().size();
     String suffix = "";
     if (numModules > 1) {
       suffix = String.format(" in %d modules", numModules);
     }
 
-    int numFiles = job.allFiles().size();
+    List<VirtualFile> allFiles = filesPerModule.values().stream()
+      .flatMap(Collection::stream)
+      .collect(Collectors.toList());
+    int numFiles = allFiles.size();
     if (numFiles > 1) {
       indicator.setText("Running CodeScan Analysis for " + numFiles + " files" + suffix);
     } else {
-      indicator.setText("Running CodeScan Analysis for '" + getFileName(job.allFiles().iterator().next()) + "'");
+      indicator.setText("Running CodeScan Analysis for '" + getFileName(allFiles.iterator().next()) + "'");
     }
 
     LOGGER.info(indicator.getText());
 
-    ProgressMonitor progressMonitor = new TaskProgressMonitor(indicator);
-    List<AnalysisResults> results = new LinkedList<>();
+    int numThreads = Math.min(numModules, Runtime.getRuntime().availableProcessors());
+    List<AnalysisResults> results;
 
-    for (Map.Entry<Module, Collection<VirtualFile>> e : job.filesPerModule().entrySet()) {
-      results.add(analyzer.analyzeModule(e.getKey(), e.getValue(), listener, progressMonitor));
-      checkCanceled(indicator, myProject);
+    state.set(ANALYZING);
+    try {
+      if (numThreads > 1) {
+        results = analyzeInParallel(analyzer, indicator, fileIssuesConsumer, issueCount, filesPerModule, numThreads);
+      } else {
+        ProgressMonitor progressMonitor = new TaskProgressMonitor(indicator);
+        results = new LinkedList<>();
+        for (Map.Entry<Module, Collection<VirtualFile>> e : filesPerModule.entrySet()) {
+          results.add(analyzeModule(analyzer, e.getKey(), e.getValue(), fileIssuesConsumer, issueCount, progressMonitor));
+          checkCanceled(indicator, myProject);
+        }
+      }
+    } finally {
+      state.compareAndSet(ANALYZING, ANALYZED);
+    }
+    // canceled after the analyzers returned, but before the indicator was canceled
+    if (wasCanceled()) {
+      throw new CanceledException();
     }
     indicator.startNonCancelableSection();
     return results;
   }
+
+  /**
+   * Analyzes the modules concurrently, on a pool that is shut down once they are all done.
+   * If the analysis of a module fails, the analyses of the other modules are canceled and the first failure is rethrown.
+   */
+  private List<AnalysisResults> analyzeInParallel(SonarLintAnalyzer analyzer, ProgressIndicator indicator,
+    BiConsumer<VirtualFile, List<Issue>> fileIssuesConsumer, AtomicInteger issueCount, Map<Module, Collection<VirtualFile>> filesPerModule,
+    int numThreads) {
+    console.debug(String.format("Analyzing %d modules with %d threads", filesPerModule.size(), numThreads));
+    AggregatedProgressMonitor progress = new AggregatedProgressMonitor(indicator, filesPerModule.size());
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads, new AnalysisThreadFactory());
+
+    try {
+      List<Future<AnalysisResults>> futures = new ArrayList<>();
+      int index = 0;
+      for (Map.Entry<Module, Collection<VirtualFile>> e : filesPerModule.entrySet()) {
+        int part = index++;
+        futures.add(executor.submit(() -> {
+          try {
+            if (progress.isCanceled()) {
+              throw new CanceledException();
+            }
+            return analyzeModule(analyzer, e.getKey(), e.getValue(), fileIssuesConsumer, issueCount, progress.part(part));
+          } catch (Throwable t) {
+            progress.cancel();
+            throw t;
+          } finally {
+            progress.done(part);
+          }
+        }));
+      }
+      return waitForResults(futures, progress);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static List<AnalysisResults> waitForResults(List<Future<AnalysisResults>> futures, AggregatedProgressMonitor progress) {
+    List<AnalysisResults> results = new ArrayList<>(futures.size());
+    Throwable failure = null;
+    for (Future<AnalysisResults> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (InterruptedException e) {
+        progress.cancel();
+        Thread.currentThread().interrupt();
+        throw new CanceledException();
+      } catch (ExecutionException e) {
+        // the other modules are canceled after a failure, report the failure rather than their cancellation
+        if (failure == null || failure instanceof CanceledException) {
+          failure = e.getCause();
+        }
+      }
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    } else if (failure != null) {
+      throw new IllegalStateException(failure);
+    }
+    return results;
+  }
+
+  /**
+   * Each module has its own listener, since analyzers report the issues of a module file by file.
+   */
+  private static AnalysisResults analyzeModule(SonarLintAnalyzer analyzer, Module module, Collection<VirtualFile> files,
+    BiConsumer<VirtualFile, List<Issue>> fileIssuesConsumer, AtomicInteger issueCount, ProgressMonitor progressMonitor) {
+    StreamingIssueListener listener = new StreamingIssueListener(fileIssuesConsumer);
+    AnalysisResults results = analyzer.analyzeModule(module, files, listener, progressMonitor);
+    listener.flush();
+    issueCount.addAndGet(listener.getIssueCount());
+    return results;
+  }
 }
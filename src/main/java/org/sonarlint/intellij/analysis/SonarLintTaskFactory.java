@@ -40,4 +40,11 @@ public class SonarLintTaskFactory extends AbstractProjectComponent {
   public SonarLintUserTask createUserTask(SonarLintJob job, boolean modal) {
     return new SonarLintUserTask(processor, job, status, modal);
   }
+
+  /**
+   * Task of a chunk of an analysis triggered by the user, whose job has the given callback.
+   */
+  SonarLintUserTask createUserTask(SonarLintJob job, ChunkedAnalysisCallback chunks) {
+    return new SonarLintUserTask(processor, job, status, false, chunks);
+  }
 }
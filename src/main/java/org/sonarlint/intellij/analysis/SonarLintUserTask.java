@@ -20,25 +20,43 @@
 package org.sonarlint.intellij.analysis;
 
 import com.intellij.openapi.progress.ProgressIndicator;
+import javax.annotation.Nullable;
 import org.jetbrains.annotations.NotNull;
 import org.sonarlint.intellij.issue.IssueProcessor;
 
 /**
  * A modal task (blocking) initiated explicitly by the user.
+ * If the analysis is split in chunks, each chunk has its own task, and the analysis is only over once the last one ends.
  */
 class SonarLintUserTask extends SonarLintTask {
   private final SonarLintStatus status;
+  @Nullable
+  private final ChunkedAnalysisCallback chunks;
 
   SonarLintUserTask(IssueProcessor processor, SonarLintJob job, SonarLintStatus status, boolean modal) {
+    this(processor, job, status, modal, null);
+  }
+
+  SonarLintUserTask(IssueProcessor processor, SonarLintJob job, SonarLintStatus status, boolean modal, @Nullable ChunkedAnalysisCallback chunks) {
     super(processor, job, modal, false);
     this.status = status;
+    this.chunks = chunks;
   }
 
   @Override public void run(@NotNull ProgressIndicator indicator) {
     try {
+      if (chunks != null && chunks.isCanceled()) {
+        // a previous chunk was canceled, the task ends as canceled without analyzing
+        indicator.cancel();
+      }
       super.run(indicator);
+      if (chunks != null && indicator.isCanceled()) {
+        chunks.cancel();
+      }
     } finally {
-      status.stopRun();
+      if (chunks == null || chunks.chunkEnded()) {
+        status.stopRun();
+      }
     }
   }
 }
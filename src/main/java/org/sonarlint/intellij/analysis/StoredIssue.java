@@ -0,0 +1,90 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import org.sonarlint.intellij.proto.Sonarlint;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+/**
+ * An issue restored from the store, as if it had been found by the analyzers.
+ */
+class StoredIssue implements Issue {
+  private final Sonarlint.Issues.Issue issue;
+  private final ClientInputFile inputFile;
+
+  StoredIssue(Sonarlint.Issues.Issue issue, ClientInputFile inputFile) {
+    this.issue = issue;
+    this.inputFile = inputFile;
+  }
+
+  @Override public String getSeverity() {
+    return issue.getSeverity();
+  }
+
+  @CheckForNull
+  @Override public String getType() {
+    return !issue.getType().isEmpty() ? issue.getType() : null;
+  }
+
+  @Override public String getRuleKey() {
+    return issue.getRuleKey();
+  }
+
+  @Override public String getRuleName() {
+    return issue.getRuleName();
+  }
+
+  @Override public List<Flow> flows() {
+    // issues with secondary locations are not restored
+    return Collections.emptyList();
+  }
+
+  @Override public ClientInputFile getInputFile() {
+    return inputFile;
+  }
+
+  @CheckForNull
+  @Override public Integer getStartLine() {
+    return issue.getLine() != 0 ? issue.getLine() : null;
+  }
+
+  @CheckForNull
+  @Override public Integer getStartLineOffset() {
+    return issue.getLine() != 0 ? issue.getStartLineOffset() : null;
+  }
+
+  @CheckForNull
+  @Override public Integer getEndLine() {
+    return issue.getLine() != 0 ? issue.getEndLine() : null;
+  }
+
+  @CheckForNull
+  @Override public Integer getEndLineOffset() {
+    return issue.getLine() != 0 ? issue.getEndLineOffset() : null;
+  }
+
+  @Override public String getMessage() {
+    return issue.getMessage();
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import javax.annotation.Nullable;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
+
+/**
+ * Groups the issues reported by the analyzers per file, and hands over the issues of a file as soon as the analyzers move on to
+ * the next file, instead of waiting for the end of the analysis.
+ * Issues of a file might still be reported after issues of other files, in which case they are handed over separately.
+ */
+public class StreamingIssueListener implements IssueListener {
+  private final BiConsumer<VirtualFile, List<Issue>> fileIssuesConsumer;
+  @Nullable
+  private ClientInputFile currentFile;
+  private List<Issue> currentIssues = new ArrayList<>();
+  private int issueCount = 0;
+
+  public StreamingIssueListener(BiConsumer<VirtualFile, List<Issue>> fileIssuesConsumer) {
+    this.fileIssuesConsumer = fileIssuesConsumer;
+  }
+
+  @Override
+  public synchronized void handle(Issue issue) {
+    ClientInputFile inputFile = issue.getInputFile();
+    if (inputFile == null || inputFile.getPath() == null) {
+      // project level issues are not shown
+      return;
+    }
+    issueCount++;
+    if (!inputFile.equals(currentFile)) {
+      flush();
+      currentFile = inputFile;
+    }
+    currentIssues.add(issue);
+  }
+
+  /**
+   * Hands over the issues of the file being reported. Should be called once the analyzers are done.
+   */
+  public synchronized void flush() {
+    if (currentFile != null && !currentIssues.isEmpty()) {
+      VirtualFile file = currentFile.getClientObject();
+      List<Issue> issues = currentIssues;
+      currentIssues = new ArrayList<>();
+      fileIssuesConsumer.accept(file, issues);
+    }
+    currentFile = null;
+  }
+
+  public synchronized int getIssueCount() {
+    return issueCount;
+  }
+}
@@ -49,6 +49,7 @@ public final class SonarLintProjectSettings extends AbstractProjectComponent imp
   private String serverId = null;
   private String projectKey = null;
   private List<String> fileExclusions = new ArrayList<>();
+  private boolean segmentedIssueStoreEnabled = false;
 
   /**
    * Constructor called by the XML serialization and deserialization (no args).
@@ -137,4 +138,12 @@ public final class SonarLintProjectSettings extends AbstractProjectComponent imp
   public void setFileExclusions(List<String> fileExclusions) {
     this.fileExclusions = new ArrayList<>(fileExclusions);
   }
+
+  public boolean isSegmentedIssueStoreEnabled() {
+    return segmentedIssueStoreEnabled;
+  }
+
+  public void setSegmentedIssueStoreEnabled(boolean segmentedIssueStoreEnabled) {
+    this.segmentedIssueStoreEnabled = segmentedIssueStoreEnabled;
+  }
 }
@@ -39,7 +39,9 @@ import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile
 import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedAnalysisConfiguration;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedSonarLintEngine;
+import org.sonarsource.sonarlint.core.client.api.connected.GlobalStorageStatus;
 import org.sonarsource.sonarlint.core.client.api.connected.LoadedAnalyzer;
+import org.sonarsource.sonarlint.core.client.api.connected.ModuleStorageStatus;
 
 class ConnectedSonarLintFacade extends SonarLintFacade {
   private final ConnectedSonarLintEngine sonarlint;
@@ -78,6 +80,23 @@ class ConnectedSonarLintFacade extends SonarLintFacade {
     return sonarlint.getLoadedAnalyzers();
   }
 
+  /**
+   * Rules are configured in the server, so they only change when the storage is updated.
+   */
+  @Override
+  protected String describeRulesConfiguration() {
+    StringBuilder builder = new StringBuilder(moduleKey);
+    GlobalStorageStatus globalStorageStatus = sonarlint.getGlobalStorageStatus();
+    if (globalStorageStatus != null) {
+      builder.append(':').append(globalStorageStatus.getLastUpdateDate().getTime());
+    }
+    ModuleStorageStatus moduleStorageStatus = sonarlint.getModuleStorageStatus(moduleKey);
+    if (moduleStorageStatus != null) {
+      builder.append(':').append(moduleStorageStatus.getLastUpdateDate().getTime());
+    }
+    return builder.toString();
+  }
+
   @Override protected RuleDetails ruleDetails(String ruleKey) {
     return sonarlint.getRuleDetails(ruleKey);
   }
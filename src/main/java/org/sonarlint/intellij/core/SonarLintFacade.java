@@ -19,16 +19,22 @@
  */
 package org.sonarlint.intellij.core;
 
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Predicate;
 import javax.annotation.CheckForNull;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
 import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
 import org.sonarsource.sonarlint.core.client.api.common.RuleDetails;
@@ -36,10 +42,16 @@ import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults
 import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 import org.sonarsource.sonarlint.core.client.api.connected.LoadedAnalyzer;
+import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
 
 public abstract class SonarLintFacade {
+  private static final Logger LOGGER = Logger.getInstance(SonarLintFacade.class);
   protected final Project project;
   protected final SonarLintProjectSettings projectSettings;
+  /**
+   * Indexes of the work directories in use, by base directory. Facades are created for each analysis, so this is shared by all of them.
+   */
+  private static final Map<Path, Set<Integer>> WORK_DIRS_IN_USE = new HashMap<>();
 
   protected SonarLintFacade(Project project, SonarLintProjectSettings projectSettings) {
     this.project = project;
@@ -53,14 +65,61 @@ public abstract class SonarLintFacade {
 
   public abstract boolean requiresSavingFiles();
 
-  public synchronized AnalysisResults startAnalysis(List<ClientInputFile> inputFiles, IssueListener issueListener,
+  /**
+   * Analyses of several modules can run at the same time, since the engines only prevent analyzing while they are updated or
+   * stopped. Each running analysis gets its own work directory. Only the first one is kept, the others are
+   * under a separate directory and are deleted once their analysis is done.
+   */
+  public AnalysisResults startAnalysis(List<ClientInputFile> inputFiles, IssueListener issueListener,
     Map<String, String> additionalProps, ProgressMonitor progressMonitor) {
     Path baseDir = Paths.get(project.getBasePath());
-    Path workDir = baseDir.resolve(Project.DIRECTORY_STORE_FOLDER).resolve("sonarlint").toAbsolutePath();
     Map<String, String> props = new HashMap<>();
     props.putAll(additionalProps);
     props.putAll(projectSettings.getAdditionalProperties());
-    return analyze(baseDir, workDir, inputFiles, props, issueListener, progressMonitor);
+    int workDirIndex = acquireWorkDir(baseDir);
+    try {
+      return analyze(baseDir, getWorkDir(baseDir, workDirIndex), inputFiles, props, issueListener, progressMonitor);
+    } finally {
+      releaseWorkDir(baseDir, workDirIndex);
+    }
+  }
+
+  private static Path getWorkDir(Path baseDir, int index) {
+    Path storeDir = baseDir.resolve(Project.DIRECTORY_STORE_FOLDER);
+    Path workDir = index == 0 ? storeDir.resolve("sonarlint") : storeDir.resolve("sonarlint-parallel").resolve(Integer.toString(index));
+    return workDir.toAbsolutePath();
+  }
+
+  private static int acquireWorkDir(Path baseDir) {
+    synchronized (WORK_DIRS_IN_USE) {
+      Set<Integer> inUse = WORK_DIRS_IN_USE.computeIfAbsent(baseDir, d -> new HashSet<>());
+      int index = 0;
+      while (!inUse.add(index)) {
+        index++;
+      }
+      return index;
+    }
+  }
+
+  /**
+   * The work directory is deleted before it's released, so that no other analysis uses it meanwhile.
+   */
+  private static void releaseWorkDir(Path baseDir, int index) {
+    try {
+      if (index > 0) {
+        FileUtils.deleteRecursively(getWorkDir(baseDir, index));
+      }
+    } catch (IllegalStateException e) {
+      LOGGER.warn("Failed to delete work directory of analysis", e);
+    } finally {
+      synchronized (WORK_DIRS_IN_USE) {
+        Set<Integer> inUse = WORK_DIRS_IN_USE.get(baseDir);
+        inUse.remove(index);
+        if (inUse.isEmpty()) {
+          WORK_DIRS_IN_USE.remove(baseDir);
+        }
+      }
+    }
   }
 
   public abstract Collection<VirtualFile> getExcluded(Collection<VirtualFile> files, Predicate<VirtualFile> testPredicate);
@@ -79,6 +138,25 @@ public abstract class SonarLintFacade {
 
   public abstract Collection<LoadedAnalyzer> getLoadedAnalyzers();
 
+  /**
+   * Describes where the active rules and their parameters come from, so that it changes whenever they might have changed.
+   */
+  protected abstract String describeRulesConfiguration();
+
+  /**
+   * Hash of the configuration that the issues found in a file depend on, apart from its content: the analyzers and their versions,
+   * the active rules and the additional analysis properties.
+   */
+  public String getConfigurationHash() {
+    StringBuilder builder = new StringBuilder(describeRulesConfiguration());
+    getLoadedAnalyzers().stream()
+      .sorted(Comparator.comparing(LoadedAnalyzer::key))
+      .forEach(a -> builder.append('\n').append(a.key()).append(':').append(a.version()));
+    new TreeMap<>(projectSettings.getAdditionalProperties())
+      .forEach((k, v) -> builder.append('\n').append(k).append('=').append(v));
+    return DigestUtils.sha1Hex(builder.toString());
+  }
+
   @CheckForNull
   public String getRuleName(String ruleKey) {
     RuleDetails details = ruleDetails(ruleKey);
@@ -68,6 +68,14 @@ final class StandaloneSonarLintFacade extends SonarLintFacade {
     return sonarlint.getLoadedAnalyzers();
   }
 
+  /**
+   * In standalone mode, the default rules of the loaded analyzers are used.
+   */
+  @Override
+  protected String describeRulesConfiguration() {
+    return "standalone";
+  }
+
   @Override protected RuleDetails ruleDetails(String ruleKey) {
     return sonarlint.getRuleDetails(ruleKey);
   }
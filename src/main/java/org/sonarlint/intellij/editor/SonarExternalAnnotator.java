@@ -73,7 +73,7 @@ public class SonarExternalAnnotator extends ExternalAnnotator<SonarExternalAnnot
         // reject non-null ranges that are no longer valid. It probably means that they were deleted from the file.
         RangeMarker range = issue.getRange();
         if (range == null || range.isValid()) {
-          addAnnotation(issue, holder);
+          addAnnotation(file, issue, holder);
         }
       });
   }
@@ -96,13 +96,13 @@ public class SonarExternalAnnotator extends ExternalAnnotator<SonarExternalAnnot
     return collectedInfo;
   }
 
-  private void addAnnotation(LiveIssue issue, AnnotationHolder annotationHolder) {
+  private void addAnnotation(PsiFile file, LiveIssue issue, AnnotationHolder annotationHolder) {
     TextRange textRange;
 
     if (issue.getRange() != null) {
       textRange = createTextRange(issue.getRange());
     } else {
-      textRange = issue.psiFile().getTextRange();
+      textRange = file.getTextRange();
     }
 
     String htmlMsg = getHtmlMessage(issue);
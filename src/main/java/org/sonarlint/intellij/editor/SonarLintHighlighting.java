@@ -40,7 +40,6 @@ import java.awt.Font;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
@@ -88,13 +87,13 @@ public class SonarLintHighlighting {
    * @see com.intellij.codeInsight.daemon.DaemonCodeAnalyzer
    * @see com.intellij.codeInsight.highlighting.BraceHighlightingHandler
    */
-  public void highlightFlowsWithHighlightersUtil(RangeMarker rangeMarker, @Nullable String message, List<LiveIssue.Flow> flows) {
+  public void highlightFlowsWithHighlightersUtil(RangeMarker rangeMarker, @Nullable String message, List<LiveIssue.Flow> issueFlows) {
     stopBlinking();
+    List<LiveIssue.Flow> flows = LiveIssue.Flow.promote(issueFlows);
     HighlightInfo primaryInfo = createHighlight(rangeMarker, message);
 
     List<HighlightInfo> infos = flows.stream()
       .flatMap(f -> f.locations().stream()
-        .filter(Objects::nonNull)
         .map(l -> createHighlight(l.location(), l.message())))
       .collect(Collectors.toList());
 
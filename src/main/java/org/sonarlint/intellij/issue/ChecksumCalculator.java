@@ -17,22 +17,21 @@
  * License along with this program; if not, write to the Free Software
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
  */
-package org.sonarlint.intellij.editor;
+package org.sonarlint.intellij.issue;
 
-import java.util.LinkedList;
-import java.util.List;
-import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
-import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
-
-public class AccumulatorIssueListener implements IssueListener {
-  private final List<Issue> issues = new LinkedList<>();
+/**
+ * Computes the hashes of the text ranges and lines of issues, used to match issues between analyses and with server issues.
+ * Implementations must be safe for concurrent use.
+ */
+@FunctionalInterface
+public interface ChecksumCalculator {
 
-  public List<Issue> getIssues() {
-    return issues;
-  }
+  /**
+   * Computes the checksum of {@code content.subSequence(start, end)}, ignoring whitespaces.
+   */
+  int checksum(CharSequence content, int start, int end);
 
-  @Override
-  public void handle(Issue issue) {
-    issues.add(issue);
+  default int checksum(CharSequence content) {
+    return checksum(content, 0, content.length());
   }
 }
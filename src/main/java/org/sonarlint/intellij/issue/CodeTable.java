@@ -0,0 +1,80 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import java.util.Arrays;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Small codes for the values of an enumerated field, such as the severity of issues, so that issues only need a byte to store
+ * them. Known values are registered upfront, and unknown values get a new code the first time they are seen.
+ */
+final class CodeTable {
+  static final CodeTable SEVERITIES = new CodeTable("BLOCKER", "CRITICAL", "MAJOR", "MINOR", "INFO");
+  static final CodeTable TYPES = new CodeTable("BUG", "VULNERABILITY", "CODE_SMELL");
+
+  private static final byte NULL_CODE = 0;
+
+  // code 0 is null
+  private volatile String[] values;
+
+  private CodeTable(String... knownValues) {
+    values = new String[knownValues.length + 1];
+    System.arraycopy(knownValues, 0, values, 1, knownValues.length);
+  }
+
+  byte code(@Nullable String value) {
+    if (value == null) {
+      return NULL_CODE;
+    }
+    byte code = find(values, value);
+    return code != NULL_CODE ? code : register(value);
+  }
+
+  @CheckForNull
+  String value(byte code) {
+    return values[code];
+  }
+
+  private synchronized byte register(String value) {
+    String[] current = values;
+    byte code = find(current, value);
+    if (code != NULL_CODE) {
+      return code;
+    }
+    if (current.length > Byte.MAX_VALUE) {
+      throw new IllegalStateException("Too many distinct values: " + value);
+    }
+    String[] updated = Arrays.copyOf(current, current.length + 1);
+    updated[current.length] = value;
+    values = updated;
+    return (byte) current.length;
+  }
+
+  private static byte find(String[] values, String value) {
+    for (int i = 1; i < values.length; i++) {
+      if (values[i].equals(value)) {
+        return (byte) i;
+      }
+    }
+    return NULL_CODE;
+  }
+}
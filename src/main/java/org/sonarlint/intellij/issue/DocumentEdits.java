@@ -0,0 +1,62 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentAdapter;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.util.text.StringUtil;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javax.annotation.CheckForNull;
+
+/**
+ * Records the lines edited in documents since their issues were last tracked.
+ * Only documents for which {@link #reset(Document)} was called are recorded.
+ */
+class DocumentEdits extends DocumentAdapter {
+  private final Map<Document, EditedLines> editsPerDocument = Collections.synchronizedMap(new WeakHashMap<>());
+
+  /**
+   * Starts recording the edits of the document from now on, forgetting the previous ones.
+   */
+  void reset(Document document) {
+    editsPerDocument.put(document, new EditedLines());
+  }
+
+  /**
+   * The lines edited since the last call to {@link #reset(Document)}, or null if the edits of the document were not recorded.
+   */
+  @CheckForNull
+  EditedLines get(Document document) {
+    return editsPerDocument.get(document);
+  }
+
+  @Override
+  public void documentChanged(DocumentEvent event) {
+    EditedLines edits = editsPerDocument.get(event.getDocument());
+    if (edits == null) {
+      return;
+    }
+    int startLine = event.getDocument().getLineNumber(event.getOffset());
+    edits.edited(startLine, startLine + StringUtil.countNewLines(event.getOldFragment()), startLine + StringUtil.countNewLines(event.getNewFragment()));
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lines of a document that were edited since its issues were last tracked, as disjoint and sorted ranges of line numbers
+ * (starting with 0) in the current version of the document. Ranges that follow an edit are shifted by the number of lines
+ * that it added or removed.
+ * If edits are spread over too many ranges, the whole document is considered as edited.
+ */
+final class EditedLines {
+  static final int MAX_RANGES = 64;
+
+  private List<int[]> ranges = new ArrayList<>();
+  private boolean allEdited = false;
+
+  /**
+   * @param startLine  First line of the edit
+   * @param oldEndLine Last line of the replaced text, before the edit
+   * @param newEndLine Last line of the new text, after the edit
+   */
+  synchronized void edited(int startLine, int oldEndLine, int newEndLine) {
+    if (allEdited) {
+      return;
+    }
+    int delta = newEndLine - oldEndLine;
+    int mergedStart = startLine;
+    int mergedEnd = newEndLine;
+    List<int[]> result = new ArrayList<>(ranges.size() + 1);
+    boolean mergedAdded = false;
+
+    for (int[] r : ranges) {
+      if (r[1] < startLine) {
+        result.add(r);
+      } else if (r[0] > oldEndLine) {
+        if (!mergedAdded) {
+          result.add(new int[] {mergedStart, mergedEnd});
+          mergedAdded = true;
+        }
+        result.add(new int[] {r[0] + delta, r[1] + delta});
+      } else {
+        mergedStart = Math.min(mergedStart, r[0]);
+        mergedEnd = Math.max(mergedEnd, r[1] + delta);
+      }
+    }
+    if (!mergedAdded) {
+      result.add(new int[] {mergedStart, mergedEnd});
+    }
+
+    if (result.size() > MAX_RANGES) {
+      allEdited = true;
+      ranges = new ArrayList<>();
+    } else {
+      ranges = result;
+    }
+  }
+
+  /**
+   * Whether any line between the given lines (inclusive) was edited.
+   */
+  synchronized boolean isEdited(int startLine, int endLine) {
+    if (allEdited) {
+      return true;
+    }
+    for (int[] r : ranges) {
+      if (r[0] > endLine) {
+        return false;
+      }
+      if (r[1] >= startLine) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -19,8 +19,13 @@
  */
 package org.sonarlint.intellij.issue;
 
+import com.google.common.util.concurrent.Striped;
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.AbstractProjectComponent;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -29,14 +34,23 @@ import com.intellij.psi.PsiFile;
 import com.intellij.util.messages.MessageBus;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
+import org.sonarlint.intellij.analysis.AnalysisFingerprint;
 import org.sonarlint.intellij.issue.persistence.IssuePersistence;
 import org.sonarlint.intellij.issue.persistence.LiveIssueCache;
 import org.sonarlint.intellij.issue.tracking.Input;
@@ -44,6 +58,7 @@ import org.sonarlint.intellij.issue.tracking.Trackable;
 import org.sonarlint.intellij.issue.tracking.Tracker;
 import org.sonarlint.intellij.issue.tracking.Tracking;
 import org.sonarlint.intellij.messages.IssueStoreListener;
+import org.sonarlint.intellij.proto.Sonarlint;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
 /**
@@ -53,17 +68,39 @@ import org.sonarlint.intellij.util.SonarLintUtils;
 @ThreadSafe
 public class IssueManager extends AbstractProjectComponent {
   private static final Logger LOGGER = Logger.getInstance(IssueManager.class);
+  private static final int MAX_PARALLELISM = 4;
+  private static final int LOCK_STRIPES = 64;
   private final MessageBus messageBus;
   private final IssuePersistence store;
   private final LiveIssueCache cache;
 
-  private final Lock matchingInProgress = new ReentrantLock();
+  /**
+   * Issues of a file are tracked by one thread at a time, but different files can be tracked concurrently
+   */
+  private final Striped<Lock> fileLocks = Striped.lock(LOCK_STRIPES);
+  private final ForkJoinPool pool;
+  private final DocumentEdits documentEdits = new DocumentEdits();
 
   public IssueManager(Project project, LiveIssueCache cache, IssuePersistence store) {
     super(project);
     this.cache = cache;
     this.messageBus = project.getMessageBus();
     this.store = store;
+    this.pool = new ForkJoinPool(Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors()), p -> {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+      thread.setName("sonarlint-issue-tracker-" + project.getName() + "-" + thread.getPoolIndex());
+      return thread;
+    }, null, false);
+  }
+
+  @Override
+  public void initComponent() {
+    EditorFactory.getInstance().getEventMulticaster().addDocumentListener(documentEdits, myProject);
+  }
+
+  @Override
+  public void disposeComponent() {
+    pool.shutdownNow();
   }
 
   public void clear() {
@@ -101,6 +138,39 @@ public class IssueManager extends AbstractProjectComponent {
     }
   }
 
+  /**
+   * Whether the issues in the live cache for a file were found by an analysis with the given fingerprint.
+   */
+  public boolean isUpToDate(VirtualFile file, String fingerprint) {
+    return fingerprint.equals(cache.getFingerprint(file));
+  }
+
+  /**
+   * Returns the persisted issues of a file, if they were found by an analysis with the given fingerprint.
+   * The live cache has precedence over the store, so nothing is returned for a file that is in the live cache.
+   */
+  @CheckForNull
+  public List<Sonarlint.Issues.Issue> getStoredIssues(VirtualFile file, String fingerprint) {
+    if (cache.contains(file)) {
+      return null;
+    }
+    String storeKey = SonarLintUtils.getRelativePath(myProject, file);
+    try {
+      Sonarlint.Issues issues = store.readIfFingerprintMatches(storeKey, fingerprint);
+      return issues != null ? issues.getIssueList() : null;
+    } catch (IOException e) {
+      LOGGER.warn(String.format("Failed to read issues from store for file %s", file.getPath()), e);
+      return null;
+    }
+  }
+
+  /**
+   * Associates the issues in the live cache with the fingerprints of the analyses that found them.
+   */
+  public void setFingerprints(Map<VirtualFile, AnalysisFingerprint> fingerprints) {
+    fingerprints.forEach(cache::setFingerprint);
+  }
+
   private boolean wasAnalyzed(VirtualFile file) {
     if (cache.contains(file)) {
       return true;
@@ -110,40 +180,208 @@ public class IssueManager extends AbstractProjectComponent {
   }
 
   public void store(Map<VirtualFile, Collection<LiveIssue>> map) {
-    for (Map.Entry<VirtualFile, Collection<LiveIssue>> e : map.entrySet()) {
-      store(e.getKey(), e.getValue());
+    store(map, null);
+  }
+
+  /**
+   * Files are tracked in parallel, and listeners are notified once all of them are stored.
+   * The caller is expected to hold a read lock, which keeps write actions from modifying the documents while the files are tracked.
+   * Only the tracking runs in the pool: the tracked issues are saved in the cache by the calling thread, as saving can evict
+   * entries, which are converted with read access. A pool thread can't get read access while a write action is pending, and the
+   * write action waits for the caller, which would wait for the pool thread.
+   *
+   * @param session If not null, the files might already have issues stored in the session, to which the issues are added
+   */
+  public void store(Map<VirtualFile, Collection<LiveIssue>> map, @Nullable TrackingSession session) {
+    boolean added = false;
+    List<Lock> locked = new ArrayList<>(map.size());
+    Map<VirtualFile, ForkJoinTask<Collection<LiveIssue>>> tasks = new LinkedHashMap<>(map.size());
+    try {
+      // locks are taken in a consistent order, so that they can be held together by several threads
+      for (Lock lock : fileLocks.bulkGet(map.keySet())) {
+        lock.lock();
+        locked.add(lock);
+      }
+      for (Map.Entry<VirtualFile, Collection<LiveIssue>> e : map.entrySet()) {
+        VirtualFile file = e.getKey();
+        Collection<LiveIssue> rawIssues = e.getValue();
+        Supplier<Collection<LiveIssue>> task;
+        if (session != null && session.contains(file)) {
+          task = () -> trackAddedToSession(file, rawIssues, session);
+          added = true;
+        } else {
+          task = () -> trackFile(file, rawIssues, session);
+        }
+        if (map.size() == 1) {
+          cache.save(file, task.get());
+        } else {
+          tasks.put(file, pool.submit(task::get));
+        }
+      }
+      tasks.forEach((file, task) -> cache.save(file, task.join()));
+    } finally {
+      tasks.values().forEach(t -> t.cancel(false));
+      locked.forEach(Lock::unlock);
     }
-    messageBus.syncPublisher(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC).filesChanged(map);
+
+    // if issues were added, files have more issues than the ones in the map
+    Map<VirtualFile, Collection<LiveIssue>> changed = added ? map.keySet().stream().collect(Collectors.toMap(f -> f, this::getForFile)) : map;
+    messageBus.syncPublisher(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC).filesChanged(changed);
   }
 
   void store(VirtualFile file, final Collection<LiveIssue> rawIssues) {
+    Lock lock = fileLocks.get(file);
+    lock.lock();
+    try {
+      cache.save(file, trackFile(file, rawIssues, null));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Tracks the raw issues of a file against its previous issues, and returns the issues to save in the cache.
+   * The lock of the file must be held.
+   */
+  private Collection<LiveIssue> trackFile(VirtualFile file, final Collection<LiveIssue> rawIssues, @Nullable TrackingSession session) {
     boolean firstAnalysis = !wasAnalyzed(file);
+    Collection<LiveIssue> issues;
 
-    // this will also delete all existing issues in the file
+    // saving the issues will also delete all existing issues in the file
     if (firstAnalysis) {
       // don't set creation date, as we don't know when the issue was actually created (SLI-86)
-      cache.save(file, rawIssues);
+      issues = rawIssues;
+      if (session != null) {
+        session.storedFirstAnalysis(file);
+      }
     } else {
-      matchWithPreviousIssues(file, rawIssues);
+      Collection<Trackable> previousIssues = getPreviousIssues(file);
+      if (session != null) {
+        session.storing(file, previousIssues, cache.contains(file));
+      }
+      issues = matchWithPreviousIssues(file, previousIssues, rawIssues, session);
     }
+    rawIssues.stream()
+      .map(LiveIssue::getRange)
+      .filter(r -> r != null && r.isValid())
+      .findFirst()
+      .ifPresent(r -> documentEdits.reset(r.getDocument()));
+    return issues;
   }
 
-  private void matchWithPreviousIssues(VirtualFile file, Collection<LiveIssue> rawIssues) {
-    matchingInProgress.lock();
-    Input<Trackable> baseInput = () -> getPreviousIssues(file);
+  private Collection<LiveIssue> matchWithPreviousIssues(VirtualFile file, Collection<Trackable> previousIssues,
+    Collection<LiveIssue> rawIssues, @Nullable TrackingSession session) {
+    Input<Trackable> baseInput = () -> previousIssues;
     Input<LiveIssue> rawInput = () -> rawIssues;
-    updateTrackedIssues(file, baseInput, rawInput, false);
-    matchingInProgress.unlock();
+    Collection<LiveIssue> trackedIssues = new ArrayList<>();
+    Tracking<LiveIssue, Trackable> tracking = track(baseInput, rawInput, this::unchangedKey, false, trackedIssues);
+    if (session != null) {
+      session.stored(file, tracking.getUnmatchedBases());
+    }
+    return trackedIssues;
+  }
+
+  /**
+   * Puts back the issues that files had before their issues were stored in the session, for files whose analysis failed after
+   * their issues were stored. Like the other files that had errors, they are not refreshed.
+   */
+  public void restore(Collection<VirtualFile> files, TrackingSession session) {
+    for (VirtualFile file : files) {
+      Lock lock = fileLocks.get(file);
+      lock.lock();
+      try {
+        restore(file, session);
+      } finally {
+        lock.unlock();
+      }
+    }
+    Map<VirtualFile, Collection<LiveIssue>> changed = files.stream().collect(Collectors.toMap(f -> f, this::getForFile));
+    messageBus.syncPublisher(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC).filesChanged(changed);
+  }
+
+  private void restore(VirtualFile file, TrackingSession session) {
+    Collection<Trackable> previousIssues = session.getPreviousIssues(file);
+    if (previousIssues != null && session.isPreviousIssuesLive(file)) {
+      cache.save(file, previousIssues.stream().map(LiveIssue.class::cast).collect(Collectors.toList()));
+      return;
+    }
+    if (cache.remove(file)) {
+      // the previous issues, if any, are still persisted
+      return;
+    }
+
+    // the issues stored in the session were evicted from the cache and persisted in place of the previous ones
+    String storeKey = SonarLintUtils.getRelativePath(myProject, file);
+    try {
+      if (previousIssues != null) {
+        store.save(storeKey, previousIssues);
+      } else {
+        store.delete(storeKey);
+      }
+    } catch (IOException e) {
+      LOGGER.warn(String.format("Failed to restore issues of file %s", file.getPath()), e);
+    }
+  }
+
+  /**
+   * Issues located in lines that were not edited since the issues of the file were last tracked get a key, so that a raw issue
+   * is matched directly with a previous issue that has the same rule and whose range marker covers the same text. Only the issues
+   * in edited lines need to go through all the stages of the {@link Tracker}.
+   */
+  @CheckForNull
+  private Object unchangedKey(Trackable trackable) {
+    if (!(trackable instanceof LiveIssue)) {
+      return null;
+    }
+    LiveIssue issue = (LiveIssue) trackable;
+    RangeMarker range = issue.getRange();
+    if (range == null || !range.isValid()) {
+      return null;
+    }
+    Document document = range.getDocument();
+    EditedLines edits = documentEdits.get(document);
+    int start = range.getStartOffset();
+    int end = range.getEndOffset();
+    if (edits == null || edits.isEdited(document.getLineNumber(start), document.getLineNumber(end))) {
+      return null;
+    }
+    return Arrays.asList(document, issue.getRuleKey(), start, end);
+  }
+
+  /**
+   * Issues reported late for a file are tracked against the previous issues that were not matched when the file was stored.
+   * Returns the issues already stored for the file, with the tracked issues added. The lock of the file must be held.
+   */
+  private Collection<LiveIssue> trackAddedToSession(VirtualFile file, Collection<LiveIssue> rawIssues, TrackingSession session) {
+    Collection<LiveIssue> issues = new ArrayList<>(getForFile(file));
+    Collection<Trackable> unmatched = session.getUnmatchedPreviousIssues(file);
+    if (session.isFirstAnalysis(file) || unmatched == null) {
+      issues.addAll(rawIssues);
+    } else {
+      Tracking<LiveIssue, Trackable> tracking = track(() -> unmatched, () -> rawIssues, t -> null, false, issues);
+      session.stored(file, tracking.getUnmatchedBases());
+    }
+    return issues;
   }
 
+  /**
+   * Read access is taken before any lock, as the live issues are read while tracking them, and issues evicted from the cache
+   * are converted with read access, see {@link IssuePersistence#saveAsync(String, Collection, String)}.
+   */
   public void matchWithServerIssues(VirtualFile file, final Collection<Trackable> serverIssues) {
-    matchingInProgress.lock();
-    Collection<LiveIssue> previousIssues = getForFile(file);
-    Input<Trackable> baseInput = () -> serverIssues;
-    Input<LiveIssue> rawInput = () -> previousIssues;
+    AccessToken token = ReadAction.start();
+    Lock lock = fileLocks.get(file);
+    lock.lock();
+    try {
+      Collection<LiveIssue> previousIssues = getForFile(file);
+      Input<Trackable> baseInput = () -> serverIssues;
+      Input<LiveIssue> rawInput = () -> previousIssues;
 
-    updateTrackedIssues(file, baseInput, rawInput, true);
-    matchingInProgress.unlock();
+      updateTrackedIssues(file, baseInput, rawInput, true);
+    } finally {
+      lock.unlock();
+      token.finish();
+    }
 
     Map<VirtualFile, Collection<LiveIssue>> map = Collections.singletonMap(file, cache.getLive(file));
     messageBus.syncPublisher(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC).filesChanged(map);
@@ -151,7 +389,16 @@ public class IssueManager extends AbstractProjectComponent {
 
   private <T extends Trackable> void updateTrackedIssues(VirtualFile file, Input<T> baseInput, Input<LiveIssue> rawInput, boolean isServerIssueMatching) {
     Collection<LiveIssue> trackedIssues = new ArrayList<>();
-    Tracking<LiveIssue, T> tracking = new Tracker<LiveIssue, T>().track(rawInput, baseInput);
+    track(baseInput, rawInput, t -> null, isServerIssueMatching, trackedIssues);
+    cache.save(file, trackedIssues);
+  }
+
+  /**
+   * Tracks the raw issues against the base issues, and adds the tracked raw issues to {@code trackedIssues}.
+   */
+  private static <T extends Trackable> Tracking<LiveIssue, T> track(Input<T> baseInput, Input<LiveIssue> rawInput,
+    Function<Trackable, Object> unchangedKey, boolean isServerIssueMatching, Collection<LiveIssue> trackedIssues) {
+    Tracking<LiveIssue, T> tracking = new Tracker<LiveIssue, T>().track(rawInput, baseInput, unchangedKey);
     for (Map.Entry<LiveIssue, ? extends Trackable> entry : tracking.getMatchedRaws().entrySet()) {
       LiveIssue rawMatched = entry.getKey();
       Trackable previousMatched = entry.getValue();
@@ -168,7 +415,7 @@ public class IssueManager extends AbstractProjectComponent {
       }
       trackedIssues.add(newIssue);
     }
-    cache.save(file, trackedIssues);
+    return tracking;
   }
 
   /**
@@ -28,10 +28,8 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDocumentManager;
-import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
-import com.intellij.psi.PsiWhiteSpace;
 import javax.annotation.Nullable;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueLocation;
 
@@ -59,32 +57,47 @@ public class IssueMatcher extends AbstractProjectComponent {
    * <b>Can only be called with getLive access</b>.
    */
   public RangeMarker match(PsiFile file, IssueLocation issueLocation) throws NoMatchException {
-    ApplicationManager.getApplication().assertReadAccessAllowed();
-    Preconditions.checkArgument(issueLocation.getStartLine() != null);
+    Document doc = findDocument(file);
+    TextRange range = match(doc, issueLocation);
+    return doc.createRangeMarker(range.getStartOffset(), range.getEndOffset());
+  }
 
+  public Document findDocument(PsiFile file) throws NoMatchException {
     Document doc = docManager.getDocument(file);
     if (doc == null) {
       throw new NoMatchException("No document found for file: " + file.getName());
     }
+    return doc;
+  }
 
-    TextRange range = getIssueTextRange(file, doc, issueLocation);
-    return doc.createRangeMarker(range.getStartOffset(), range.getEndOffset());
+  /**
+   * Same as {@link #match(PsiFile, IssueLocation)}, but returns the offsets in the current version of the document instead
+   * of creating a range marker.
+   * Locations are resolved with the line offsets of the document, which are computed once per version of the document and
+   * shared by all the issues of the file, without accessing the PSI.
+   *
+   * <b>Can only be called with getLive access</b>.
+   */
+  public TextRange match(Document doc, IssueLocation issueLocation) throws NoMatchException {
+    ApplicationManager.getApplication().assertReadAccessAllowed();
+    Preconditions.checkArgument(issueLocation.getStartLine() != null);
+    return getIssueTextRange(LineOffsets.of(doc), issueLocation);
   }
 
-  private static TextRange getIssueTextRange(PsiFile file, Document doc, IssueLocation issueLocation) throws NoMatchException {
+  static TextRange getIssueTextRange(LineOffsets lines, IssueLocation issueLocation) throws NoMatchException {
     int ijStartLine = issueLocation.getStartLine() - 1;
     int ijEndLine = issueLocation.getEndLine() - 1;
-    int lineCount = doc.getLineCount();
+    int lineCount = lines.lineCount();
 
-    if (ijStartLine >= doc.getLineCount()) {
+    if (ijStartLine >= lineCount) {
       throw new NoMatchException("Start line number (" + ijStartLine + ") larger than lines in file: " + lineCount);
     }
-    if (ijEndLine >= doc.getLineCount()) {
-      throw new NoMatchException("End line number (" + ijStartLine + ") larger than lines in file: " + lineCount);
+    if (ijEndLine >= lineCount) {
+      throw new NoMatchException("End line number (" + ijEndLine + ") larger than lines in file: " + lineCount);
     }
 
-    int rangeEnd = findEndLineOffset(doc, ijEndLine, issueLocation.getEndLineOffset());
-    int rangeStart = findStartLineOffset(file, doc, ijStartLine, issueLocation.getStartLineOffset(), rangeEnd);
+    int rangeEnd = findEndLineOffset(lines, ijEndLine, issueLocation.getEndLineOffset());
+    int rangeStart = findStartLineOffset(lines, ijStartLine, issueLocation.getStartLineOffset(), rangeEnd);
 
     if (rangeEnd < rangeStart) {
       throw new NoMatchException("Invalid text range  (start: " + rangeStart + ", end: " + rangeEnd);
@@ -92,9 +105,9 @@ public class IssueMatcher extends AbstractProjectComponent {
     return new TextRange(rangeStart, rangeEnd);
   }
 
-  private static int findEndLineOffset(Document doc, int ijLine, @Nullable Integer endOffset) {
-    int lineEnd = doc.getLineEndOffset(ijLine);
-    int lineStart = doc.getLineStartOffset(ijLine);
+  private static int findEndLineOffset(LineOffsets lines, int ijLine, @Nullable Integer endOffset) {
+    int lineEnd = lines.lineEnd(ijLine);
+    int lineStart = lines.lineStart(ijLine);
     int lineLength = lineEnd - lineStart;
 
     if (endOffset == null || endOffset > lineLength) {
@@ -104,9 +117,9 @@ public class IssueMatcher extends AbstractProjectComponent {
     return lineStart + endOffset;
   }
 
-  private static int findStartLineOffset(PsiFile file, Document doc, int ijLine, @Nullable Integer startOffset, int rangeEnd) {
+  private static int findStartLineOffset(LineOffsets lines, int ijLine, @Nullable Integer startOffset, int rangeEnd) {
     int ijStartOffset = (startOffset == null) ? 0 : startOffset;
-    int lineStart = doc.getLineStartOffset(ijLine);
+    int lineStart = lines.lineStart(ijLine);
     int rangeStart = lineStart + ijStartOffset;
 
     if (rangeStart >= rangeEnd) {
@@ -119,27 +132,11 @@ public class IssueMatcher extends AbstractProjectComponent {
       return rangeStart;
     }
 
-    // probably not precise issue location. Try to match next element if it's whitespace.
-    PsiElement el = file.getViewProvider().findElementAt(rangeStart);
-
-    if (!(el instanceof PsiWhiteSpace)) {
-      return rangeStart;
-    }
-
-    PsiElement next = el.getNextSibling();
-    if (next == null) {
-      return rangeStart;
-    }
-
-    int nextRangeStart = next.getTextRange().getStartOffset();
-
-    if (nextRangeStart >= rangeEnd) {
-      // we passed the end, don't use it
-      return rangeStart;
-    }
+    // probably not precise issue location. Skip the indentation of the line.
+    int nextRangeStart = lines.firstNonWhitespace(ijLine);
 
-    if (doc.getLineNumber(nextRangeStart) != ijLine) {
-      // we got to another line, don't use it
+    if (nextRangeStart >= rangeEnd || nextRangeStart == lines.lineEnd(ijLine)) {
+      // we passed the end or the line is blank, don't use it
       return rangeStart;
     }
 
@@ -20,12 +20,19 @@
 package org.sonarlint.intellij.issue;
 
 import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.AbstractProjectComponent;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.EmptyRunnable;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import java.util.ArrayList;
@@ -35,9 +42,17 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import org.sonarlint.intellij.analysis.AnalysisCallback;
+import org.sonarlint.intellij.analysis.AnalysisFingerprint;
+import org.sonarlint.intellij.analysis.ChunkedAnalysisCallback;
 import org.sonarlint.intellij.analysis.SonarLintJob;
 import org.sonarlint.intellij.core.ServerIssueUpdater;
 import org.sonarlint.intellij.trigger.TriggerType;
@@ -48,38 +63,125 @@ import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueLocation;
 
 public class IssueProcessor extends AbstractProjectComponent {
   private static final Logger LOGGER = Logger.getInstance(IssueProcessor.class);
+  private static final int MAX_PARALLELISM = 4;
   private final IssueMatcher matcher;
   private final IssueManager manager;
   private final SonarLintConsole console;
   private final ServerIssueUpdater serverIssueUpdater;
+  private final ForkJoinPool pool;
+  /**
+   * Runs a read action that is canceled when a write action is about to start, and returns whether it completed.
+   */
+  private final Predicate<Runnable> readActionWithWritePriority;
 
   public IssueProcessor(Project project, IssueMatcher matcher, IssueManager manager, ServerIssueUpdater serverIssueUpdater) {
+    this(project, matcher, manager, serverIssueUpdater, ProgressIndicatorUtils::runInReadActionWithWriteActionPriority);
+  }
+
+  IssueProcessor(Project project, IssueMatcher matcher, IssueManager manager, ServerIssueUpdater serverIssueUpdater,
+    Predicate<Runnable> readActionWithWritePriority) {
     super(project);
     this.matcher = matcher;
     this.manager = manager;
     this.console = SonarLintConsole.get(project);
     this.serverIssueUpdater = serverIssueUpdater;
+    this.readActionWithWritePriority = readActionWithWritePriority;
+    this.pool = new ForkJoinPool(Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors()), p -> {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+      thread.setName("sonarlint-issue-processor-" + project.getName() + "-" + thread.getPoolIndex());
+      return thread;
+    }, null, false);
+  }
+
+  @Override
+  public void disposeComponent() {
+    pool.shutdownNow();
   }
 
   public void process(final SonarLintJob job, ProgressIndicator indicator, final Collection<Issue> rawIssues, Collection<ClientInputFile> failedAnalysisFiles) {
-    Map<VirtualFile, Collection<LiveIssue>> transformedIssues;
-    long start = System.currentTimeMillis();
+    process(job, job.allFiles(), indicator, rawIssues, failedAnalysisFiles, Collections.emptyMap());
+  }
+
+  public void process(final SonarLintJob job, Collection<VirtualFile> analyzed, ProgressIndicator indicator, final Collection<Issue> rawIssues,
+    Collection<ClientInputFile> failedAnalysisFiles, Map<VirtualFile, AnalysisFingerprint> fingerprints) {
+    process(job, analyzed, indicator, rawIssues, failedAnalysisFiles, fingerprints, new TrackingSession());
+  }
+
+  /**
+   * Processes the issues of a file while the analysis is still running, so that they are shown as soon as the analyzers are done
+   * with the file. Analyzers might report more issues for the file later, which are then added to them.
+   * Files processed this way are skipped by {@link #process(SonarLintJob, Collection, ProgressIndicator, Collection, Collection, Map, TrackingSession)}.
+   */
+  public void processFile(VirtualFile file, ProgressIndicator indicator, Collection<Issue> rawIssues, TrackingSession session) {
+    Map<VirtualFile, Collection<LiveIssue>> transformedIssues = transformIssues(indicator, rawIssues, Collections.singleton(file), Collections.emptyList());
+    Collection<LiveIssue> fileIssues = transformedIssues.get(file);
+    if (fileIssues == null) {
+      // the issues couldn't be matched with the file, don't refresh it
+      return;
+    }
+
+    AccessToken token = ReadAction.start();
+    try {
+      manager.store(transformedIssues, session);
+    } finally {
+      token.finish();
+    }
+    session.processed(file, rawIssues.size(), fileIssues.size());
+  }
+
+  /**
+   * Puts back the issues that the files processed with {@link #processFile(VirtualFile, ProgressIndicator, Collection, TrackingSession)}
+   * had before, because the analysis was canceled before all their issues were reported.
+   */
+  public void restore(TrackingSession session) {
+    Collection<VirtualFile> processed = new ArrayList<>(session.files());
+    if (processed.isEmpty()) {
+      return;
+    }
     AccessToken token = ReadAction.start();
     try {
-      transformedIssues = transformIssues(rawIssues, job.allFiles(), failedAnalysisFiles);
+      manager.restore(processed, session);
+    } finally {
+      token.finish();
+    }
+  }
+
+  /**
+   * @param analyzed     Files of the job for which issues were found, either by the analyzers or restored from the store
+   * @param fingerprints Fingerprints of the analyses of the files, for the files that have one
+   * @param session      The files already processed with {@link #processFile(VirtualFile, ProgressIndicator, Collection, TrackingSession)}
+   */
+  public void process(final SonarLintJob job, Collection<VirtualFile> analyzed, ProgressIndicator indicator, final Collection<Issue> rawIssues,
+    Collection<ClientInputFile> failedAnalysisFiles, Map<VirtualFile, AnalysisFingerprint> fingerprints, TrackingSession session) {
+    long start = System.currentTimeMillis();
+    Collection<VirtualFile> notProcessed = analyzed.stream().filter(f -> !session.contains(f)).collect(Collectors.toList());
+    Map<VirtualFile, Collection<LiveIssue>> transformedIssues = transformIssues(indicator, rawIssues, notProcessed, failedAnalysisFiles);
+    Set<VirtualFile> failedVirtualFiles = failedAnalysisFiles.stream().map(f -> (VirtualFile) f.getClientObject()).collect(Collectors.toSet());
+    Collection<VirtualFile> failedProcessed = session.files().stream().filter(failedVirtualFiles::contains).collect(Collectors.toList());
+    failedProcessed.forEach(f -> console.info("File won't be refreshed because there were errors during analysis: " + f.getPath()));
 
+    AccessToken token = ReadAction.start();
+    try {
+      // the issues of these files were stored while the analysis was running
+      if (!failedProcessed.isEmpty()) {
+        manager.restore(failedProcessed, session);
+      }
       // this might be updated later after tracking with server issues
       manager.store(transformedIssues);
+      manager.setFingerprints(fingerprints.entrySet().stream()
+        .filter(e -> transformedIssues.containsKey(e.getKey()) || (session.contains(e.getKey()) && !failedVirtualFiles.contains(e.getKey())))
+        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
 
     } finally {
       // closeable only introduced in 2016.2
       token.finish();
     }
 
-    String issueStr = rawIssues.size() == 1 ? "issue" : "issues";
-    console.debug(String.format("Processed %d %s in %d ms", rawIssues.size(), issueStr, System.currentTimeMillis() - start));
+    int rawIssueCount = rawIssues.size() + session.getRawIssueCount();
+    String issueStr = rawIssueCount == 1 ? "issue" : "issues";
+    console.debug(String.format("Processed %d %s in %d ms", rawIssueCount, issueStr, System.currentTimeMillis() - start));
 
-    long issuesToShow = transformedIssues.entrySet().stream()
+    long issuesToShow = session.getIssueCount() + transformedIssues.entrySet().stream()
       .mapToLong(e -> e.getValue().size())
       .sum();
 
@@ -87,6 +189,21 @@ public class IssueProcessor extends AbstractProjectComponent {
       .filter(e -> !e.getValue().isEmpty())
       .map(Map.Entry::getKey)
       .collect(Collectors.toList());
+    session.getFilesWithIssues().stream()
+      .filter(f -> !failedVirtualFiles.contains(f))
+      .forEach(filesWithIssues::add);
+
+    AnalysisCallback callback = job.callback();
+    if (callback instanceof ChunkedAnalysisCallback) {
+      ChunkedAnalysisCallback chunks = (ChunkedAnalysisCallback) callback;
+      if (!chunks.chunkProcessed(filesWithIssues, issuesToShow)) {
+        // the last chunk processed reports the issues of the whole analysis, and fetches the server issues once for all of them
+        callback.onSuccess();
+        return;
+      }
+      issuesToShow = chunks.getIssueCount();
+      filesWithIssues = new ArrayList<>(chunks.getFilesWithIssues());
+    }
 
     String end = issuesToShow == 1 ? " issue" : " issues";
     console.info("Found " + issuesToShow + end);
@@ -95,7 +212,6 @@ public class IssueProcessor extends AbstractProjectComponent {
       serverIssueUpdater.fetchAndMatchServerIssues(filesWithIssues, indicator, job.waitForServerIssues());
     }
 
-    AnalysisCallback callback = job.callback();
     if (callback != null) {
       callback.onSuccess();
     }
@@ -130,12 +246,15 @@ public class IssueProcessor extends AbstractProjectComponent {
   }
 
   /**
-   * Transforms issues and organizes them per file
+   * Transforms issues and organizes them per file.
+   * Files are transformed in parallel, each one in its own read action that gives way to write actions, so that the read lock
+   * isn't held for long when many files were analyzed.
    */
-  private Map<VirtualFile, Collection<LiveIssue>> transformIssues(
+  private Map<VirtualFile, Collection<LiveIssue>> transformIssues(ProgressIndicator indicator,
     Collection<Issue> issues, Collection<VirtualFile> analyzed, Collection<ClientInputFile> failedAnalysisFiles) {
 
     Map<VirtualFile, Collection<LiveIssue>> map = removeFailedFiles(analyzed, failedAnalysisFiles);
+    Map<VirtualFile, List<Issue>> issuesPerFile = new HashMap<>();
 
     for (Issue issue : issues) {
       ClientInputFile inputFile = issue.getInputFile();
@@ -144,50 +263,102 @@ public class IssueProcessor extends AbstractProjectComponent {
         continue;
       }
       VirtualFile vFile = inputFile.getClientObject();
-      if (!vFile.isValid() || !map.containsKey(vFile)) {
-        // file is no longer valid (might have been deleted meanwhile) or there has been an error matching an issue in it
-        continue;
+      if (map.containsKey(vFile)) {
+        issuesPerFile.computeIfAbsent(vFile, f -> new ArrayList<>()).add(issue);
       }
+    }
+
+    Map<VirtualFile, ForkJoinTask<Optional<List<LiveIssue>>>> tasks = new HashMap<>();
+    issuesPerFile.forEach((file, fileIssues) -> tasks.put(file, pool.submit(() -> transformFileIssues(indicator, file, fileIssues))));
+
+    try {
+      for (Map.Entry<VirtualFile, ForkJoinTask<Optional<List<LiveIssue>>>> e : tasks.entrySet()) {
+        Optional<List<LiveIssue>> fileIssues = e.getValue().join();
+        if (fileIssues.isPresent()) {
+          map.get(e.getKey()).addAll(fileIssues.get());
+        } else {
+          map.remove(e.getKey());
+        }
+      }
+    } finally {
+      tasks.values().forEach(t -> t.cancel(false));
+    }
+
+    return map;
+  }
+
+  /**
+   * Transforms the issues of a file in a read action. If a write action interrupts it, the document might have changed, so
+   * the issues of the file are transformed again from the start once the write action is done.
+   *
+   * @return empty if the file won't be refreshed
+   */
+  private Optional<List<LiveIssue>> transformFileIssues(ProgressIndicator indicator, VirtualFile vFile, List<Issue> issues) {
+    while (true) {
+      indicator.checkCanceled();
+      AtomicReference<Optional<List<LiveIssue>>> result = new AtomicReference<>();
+      boolean completed = readActionWithWritePriority.test(() -> result.set(transformFileIssues(vFile, issues)));
+      if (completed) {
+        return result.get();
+      }
+      // wait for the write action to finish
+      ApplicationManager.getApplication().runReadAction(EmptyRunnable.getInstance());
+    }
+  }
+
+  private Optional<List<LiveIssue>> transformFileIssues(VirtualFile vFile, List<Issue> issues) {
+    if (!vFile.isValid()) {
+      // file is no longer valid (might have been deleted meanwhile)
+      return Optional.of(Collections.emptyList());
+    }
+    List<LiveIssue> transformed = new ArrayList<>(issues.size());
+    for (Issue issue : issues) {
+      ProgressManager.checkCanceled();
       try {
-        LiveIssue toStore = transformIssue(issue, vFile);
-        map.get(vFile).add(toStore);
+        transformed.add(transformIssue(issue, vFile));
       } catch (IssueMatcher.NoMatchException e) {
         console.error("Failed to find location of issue for file: '" + vFile.getName() + "'. The file won't be refreshed - " + e.getMessage());
-        map.remove(vFile);
+        return Optional.empty();
+      } catch (ProcessCanceledException e) {
+        throw e;
       } catch (Exception e) {
         LOGGER.error("Error finding location for issue", e);
       }
     }
-
-    return map;
+    return Optional.of(transformed);
   }
 
   private LiveIssue transformIssue(Issue issue, VirtualFile vFile) throws IssueMatcher.NoMatchException {
     PsiFile psiFile = matcher.findFile(vFile);
     if (issue.getStartLine() != null) {
-      RangeMarker rangeMarker = matcher.match(psiFile, issue);
-      List<LiveIssue.Flow> flows = transformFlows(psiFile, issue.flows(), issue.getRuleKey());
-      return new LiveIssue(issue, psiFile, rangeMarker, flows);
+      Document doc = matcher.findDocument(psiFile);
+      TextRange textRange = matcher.match(doc, issue);
+      RangeMarker rangeMarker = doc.createRangeMarker(textRange.getStartOffset(), textRange.getEndOffset());
+      List<LiveIssue.Flow> flows = transformFlows(doc, issue.flows(), issue.getRuleKey());
+      return new LiveIssue(issue, vFile, rangeMarker, flows);
     } else {
-      return new LiveIssue(issue, psiFile);
+      return new LiveIssue(issue, vFile);
     }
   }
 
-  private List<LiveIssue.Flow> transformFlows(PsiFile psiFile, List<Issue.Flow> flows, String rule) {
+  /**
+   * Secondary locations only get a range marker when they are shown, see {@link LiveIssue.IssueLocation}.
+   */
+  private List<LiveIssue.Flow> transformFlows(Document doc, List<Issue.Flow> flows, String rule) {
     List<LiveIssue.Flow> transformedFlows = new LinkedList<>();
 
     for (Issue.Flow f : flows) {
       List<LiveIssue.IssueLocation> newLocations = new LinkedList<>();
       for (IssueLocation loc : f.locations()) {
-        RangeMarker range;
+        TextRange range;
         try {
-          range = matcher.match(psiFile, loc);
+          range = matcher.match(doc, loc);
         } catch (Exception e) {
           LOGGER.error("Error finding secondary location for issue", e, rule,
             String.valueOf(loc.getStartLine()), String.valueOf(loc.getStartLineOffset()), String.valueOf(loc.getEndLine()), String.valueOf(loc.getEndLineOffset()));
           return Collections.emptyList();
         }
-        newLocations.add(new LiveIssue.IssueLocation(range, loc.getMessage()));
+        newLocations.add(new LiveIssue.IssueLocation(doc, range.getStartOffset(), range.getEndOffset(), loc.getMessage()));
       }
       LiveIssue.Flow newFlow = new LiveIssue.Flow(newLocations);
       transformedFlows.add(newFlow);
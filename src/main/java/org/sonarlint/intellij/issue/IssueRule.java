@@ -0,0 +1,99 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Rule of issues, with the severity and type reported by the analyzers. Instances are interned, so that all the issues of a rule
+ * share the same strings.
+ */
+public final class IssueRule {
+  private static final Map<IssueRule, IssueRule> RULES = new ConcurrentHashMap<>();
+
+  private final String key;
+  private final String name;
+  private final byte defaultSeverity;
+  private final byte type;
+
+  private IssueRule(String key, @Nullable String name, byte defaultSeverity, byte type) {
+    this.key = key;
+    this.name = name;
+    this.defaultSeverity = defaultSeverity;
+    this.type = type;
+  }
+
+  public static IssueRule of(String key, @Nullable String name, @Nullable String defaultSeverity, @Nullable String type) {
+    IssueRule rule = new IssueRule(key, name, CodeTable.SEVERITIES.code(defaultSeverity), CodeTable.TYPES.code(type));
+    IssueRule existing = RULES.putIfAbsent(rule, rule);
+    return existing != null ? existing : rule;
+  }
+
+  public String key() {
+    return key;
+  }
+
+  @CheckForNull
+  public String name() {
+    return name;
+  }
+
+  @CheckForNull
+  public String defaultSeverity() {
+    return CodeTable.SEVERITIES.value(defaultSeverity);
+  }
+
+  @CheckForNull
+  public String type() {
+    return CodeTable.TYPES.value(type);
+  }
+
+  byte defaultSeverityCode() {
+    return defaultSeverity;
+  }
+
+  byte typeCode() {
+    return type;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    IssueRule other = (IssueRule) o;
+    return defaultSeverity == other.defaultSeverity
+      && type == other.type
+      && Objects.equals(key, other.key)
+      && Objects.equals(name, other.name);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(key, name, defaultSeverity, type);
+  }
+}
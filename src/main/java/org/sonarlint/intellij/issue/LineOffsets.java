@@ -0,0 +1,116 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.Key;
+
+/**
+ * Offsets of the lines of a given version of a document, computed in a single pass over its content.
+ * For each line, it also keeps the offset of the first character that is not a whitespace, which is where issues without a
+ * precise start offset are moved to.
+ */
+final class LineOffsets {
+  private static final Key<LineOffsets> KEY = Key.create("SonarLintLineOffsets");
+
+  private final long modificationStamp;
+  private final int[] lineStarts;
+  private final int[] lineEnds;
+  private final int[] firstNonWhitespace;
+  private final int lineCount;
+
+  private LineOffsets(long modificationStamp, CharSequence content) {
+    this.modificationStamp = modificationStamp;
+    int lines = 1;
+    for (int i = 0; i < content.length(); i++) {
+      if (content.charAt(i) == '\n') {
+        lines++;
+      }
+    }
+    this.lineCount = lines;
+    this.lineStarts = new int[lines];
+    this.lineEnds = new int[lines];
+    this.firstNonWhitespace = new int[lines];
+
+    int line = 0;
+    boolean nonWhitespaceFound = false;
+    for (int i = 0; i < content.length(); i++) {
+      char c = content.charAt(i);
+      if (c == '\n') {
+        lineEnds[line] = i;
+        if (!nonWhitespaceFound) {
+          firstNonWhitespace[line] = i;
+        }
+        line++;
+        lineStarts[line] = i + 1;
+        nonWhitespaceFound = false;
+      } else if (!nonWhitespaceFound && !Character.isWhitespace(c)) {
+        firstNonWhitespace[line] = i;
+        nonWhitespaceFound = true;
+      }
+    }
+    lineEnds[line] = content.length();
+    if (!nonWhitespaceFound) {
+      firstNonWhitespace[line] = content.length();
+    }
+  }
+
+  /**
+   * Returns the line offsets of the current version of the document, computing them only if the document was modified since
+   * they were last computed.
+   *
+   * <b>Can only be called with read access</b>.
+   */
+  static LineOffsets of(Document doc) {
+    long stamp = doc.getModificationStamp();
+    LineOffsets offsets = doc.getUserData(KEY);
+    if (offsets == null || offsets.modificationStamp != stamp) {
+      offsets = new LineOffsets(stamp, doc.getCharsSequence());
+      doc.putUserData(KEY, offsets);
+    }
+    return offsets;
+  }
+
+  static LineOffsets compute(CharSequence content) {
+    return new LineOffsets(0, content);
+  }
+
+  int lineCount() {
+    return lineCount;
+  }
+
+  int lineStart(int line) {
+    return lineStarts[line];
+  }
+
+  /**
+   * Offset of the end of the line, excluding the line separator
+   */
+  int lineEnd(int line) {
+    return lineEnds[line];
+  }
+
+  /**
+   * Offset of the first character of the line that is not a whitespace, or {@link #lineEnd(int)} if the line is blank.
+   */
+  int firstNonWhitespace(int line) {
+    return firstNonWhitespace[line];
+  }
+}
@@ -21,79 +21,73 @@ package org.sonarlint.intellij.issue;
 
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
-import com.intellij.openapi.util.TextRange;
-import com.intellij.psi.PsiFile;
-import java.security.MessageDigest;
+import com.intellij.openapi.vfs.VirtualFile;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.sonarlint.intellij.issue.tracking.Trackable;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
+/**
+ * An issue found in a file by the last analysis. Since the issues of all the analyzed files are kept in memory, fields are kept
+ * compact: the rule is shared by all its issues, severity and type are stored as codes, hashes and dates are primitives and the
+ * file is referenced by its {@link VirtualFile} rather than by its PSI.
+ */
 public class LiveIssue implements Trackable {
   private static final AtomicLong UID_GEN = new AtomicLong();
-  private static final MessageDigest MD5_DIGEST = DigestUtils.getMd5Digest();
+  private static final long NO_DATE = Long.MIN_VALUE;
+  private static final long NO_STAMP = -1L;
 
   private final long uid;
   private final RangeMarker range;
-  private final PsiFile psiFile;
-  private final Integer textRangeHash;
-  private final Integer lineHash;
-  private final String ruleName;
+  private final VirtualFile file;
+  private final ChecksumCalculator checksumCalculator;
+  private final IssueRule rule;
   private final String message;
-  private final String ruleKey;
   private final List<Flow> flows;
+  // computed when first needed, usually by the tracker, and published by the volatile flags. They are only computed if the document
+  // was not modified since the issue was created, as they must reflect the analyzed content.
+  private final long modificationStamp;
+  private int textRangeHash;
+  private int lineHash;
+  private volatile boolean textRangeHashComputed;
+  private volatile boolean lineHashComputed;
 
   // tracked fields (mutable)
-  private String severity;
-  private String type;
-  private Long creationDate;
+  private byte severity;
+  private byte type;
+  private long creationDate = NO_DATE;
   private String serverIssueKey;
   private boolean resolved;
   private String assignee;
 
-  public LiveIssue(Issue issue, PsiFile psiFile) {
-    this(issue, psiFile, null, Collections.emptyList());
+  public LiveIssue(Issue issue, VirtualFile file) {
+    this(issue, file, null, Collections.emptyList());
+  }
+
+  public LiveIssue(Issue issue, VirtualFile file, @Nullable RangeMarker range, List<Flow> flows) {
+    this(issue, file, range, flows, Md5ChecksumCalculator.INSTANCE);
   }
 
-  public LiveIssue(Issue issue, PsiFile psiFile, @Nullable RangeMarker range, List<Flow> flows) {
+  public LiveIssue(Issue issue, VirtualFile file, @Nullable RangeMarker range, List<Flow> flows, ChecksumCalculator checksumCalculator) {
     this.range = range;
     this.message = issue.getMessage();
-    this.ruleKey = issue.getRuleKey();
-    this.ruleName = issue.getRuleName();
-    this.severity = issue.getSeverity();
-    this.type = issue.getType();
-    this.psiFile = psiFile;
+    this.rule = IssueRule.of(issue.getRuleKey(), issue.getRuleName(), issue.getSeverity(), issue.getType());
+    this.severity = rule.defaultSeverityCode();
+    this.type = rule.typeCode();
+    this.file = file;
     this.assignee = "";
     this.uid = UID_GEN.getAndIncrement();
-    this.flows = flows;
-
-    if (range != null) {
-      Document document = range.getDocument();
-      this.textRangeHash = checksum(document.getText(new TextRange(range.getStartOffset(), range.getEndOffset())));
-
-      int line = range.getDocument().getLineNumber(range.getStartOffset());
-      int lineStartOffset = document.getLineStartOffset(line);
-      int lineEndOffset = document.getLineEndOffset(line);
-      this.lineHash = checksum(document.getText(new TextRange(lineStartOffset, lineEndOffset)));
-    } else {
-      this.textRangeHash = null;
-      this.lineHash = null;
-    }
-  }
-
-  private static int checksum(String content) {
-    return Hex.encodeHexString(MD5_DIGEST.digest(content.replaceAll("[\\s]", "").getBytes(UTF_8))).hashCode();
+    this.flows = flows.isEmpty() ? Collections.emptyList() : flows;
+    this.checksumCalculator = checksumCalculator;
+    this.modificationStamp = range != null && range.isValid() ? range.getDocument().getModificationStamp() : NO_STAMP;
   }
 
   public boolean isValid() {
-    if (!psiFile.isValid()) {
+    if (!file.isValid()) {
       return false;
     }
 
@@ -119,19 +113,45 @@ public class LiveIssue implements Trackable {
     return message;
   }
 
+  @CheckForNull
   @Override
   public Integer getTextRangeHash() {
+    if (!textRangeHashComputed) {
+      if (!isAnalyzedContent()) {
+        return null;
+      }
+      textRangeHash = checksumCalculator.checksum(range.getDocument().getCharsSequence(), range.getStartOffset(), range.getEndOffset());
+      textRangeHashComputed = true;
+    }
     return textRangeHash;
   }
 
+  @CheckForNull
   @Override
   public Integer getLineHash() {
+    if (!lineHashComputed) {
+      if (!isAnalyzedContent()) {
+        return null;
+      }
+      Document document = range.getDocument();
+      int line = document.getLineNumber(range.getStartOffset());
+      lineHash = checksumCalculator.checksum(document.getCharsSequence(), document.getLineStartOffset(line), document.getLineEndOffset(line));
+      lineHashComputed = true;
+    }
     return lineHash;
   }
 
+  private boolean isAnalyzedContent() {
+    return range != null && range.isValid() && modificationStamp != NO_STAMP && range.getDocument().getModificationStamp() == modificationStamp;
+  }
+
   @Override
   public String getRuleKey() {
-    return ruleKey;
+    return rule.key();
+  }
+
+  public IssueRule rule() {
+    return rule;
   }
 
   public long uid() {
@@ -143,27 +163,27 @@ public class LiveIssue implements Trackable {
     return range;
   }
 
-  public PsiFile psiFile() {
-    return psiFile;
+  public VirtualFile file() {
+    return file;
   }
 
   @Override
   public String getSeverity() {
-    return severity;
+    return CodeTable.SEVERITIES.value(severity);
   }
 
   @Override
   public String getType() {
-    return type;
+    return CodeTable.TYPES.value(type);
   }
 
   public String getRuleName() {
-    return ruleName;
+    return rule.name();
   }
 
   @Override
   public Long getCreationDate() {
-    return creationDate;
+    return creationDate != NO_DATE ? creationDate : null;
   }
 
   @Override
@@ -182,7 +202,7 @@ public class LiveIssue implements Trackable {
   }
 
   public void setCreationDate(@Nullable Long creationDate) {
-    this.creationDate = creationDate;
+    this.creationDate = creationDate != null ? creationDate : NO_DATE;
   }
 
   public void setResolved(boolean resolved) {
@@ -194,11 +214,11 @@ public class LiveIssue implements Trackable {
   }
 
   public void setSeverity(String severity) {
-    this.severity = severity;
+    this.severity = CodeTable.SEVERITIES.code(severity);
   }
 
   public void setType(@Nullable String type) {
-    this.type = type;
+    this.type = CodeTable.TYPES.code(type);
   }
 
   public List<Flow> flows() {
@@ -215,14 +235,45 @@ public class LiveIssue implements Trackable {
     public List<IssueLocation> locations() {
       return locations;
     }
+
+    /**
+     * Creates the range markers of the locations of the flows, to show them. Locations that can't be shown anymore are left out,
+     * as well as flows without any location left.
+     */
+    public static List<Flow> promote(List<Flow> flows) {
+      return flows.stream()
+        .map(f -> f.locations.stream()
+          .filter(l -> l != null && l.location() != null)
+          .collect(Collectors.toList()))
+        .filter(locations -> !locations.isEmpty())
+        .map(Flow::new)
+        .collect(Collectors.toList());
+    }
   }
 
+  /**
+   * A secondary location. To avoid having the document update a range marker for each location on every change, the location
+   * is kept as offsets and only gets a range marker when it's shown. Offsets are only valid in the version of the document
+   * in which the location was found.
+   */
   public static class IssueLocation {
-    private final RangeMarker location;
+    private final Document document;
+    private final int startOffset;
+    private final int endOffset;
+    private final long modificationStamp;
     private final String message;
+    private volatile RangeMarker location;
 
-    public IssueLocation(RangeMarker location, String message) {
+    public IssueLocation(RangeMarker location, @Nullable String message) {
+      this(location.getDocument(), location.getStartOffset(), location.getEndOffset(), message);
       this.location = location;
+    }
+
+    public IssueLocation(Document document, int startOffset, int endOffset, @Nullable String message) {
+      this.document = document;
+      this.startOffset = startOffset;
+      this.endOffset = endOffset;
+      this.modificationStamp = document.getModificationStamp();
       this.message = message;
     }
 
@@ -231,8 +282,19 @@ public class LiveIssue implements Trackable {
       return message;
     }
 
+    /**
+     * Returns the range marker of the location, creating it if needed. Should only be called when the location is shown.
+     *
+     * @return null if the document was modified since the location was found, and the location was never shown.
+     */
+    @CheckForNull
     public RangeMarker location() {
-      return location;
+      RangeMarker marker = location;
+      if (marker == null && document.getModificationStamp() == modificationStamp) {
+        marker = document.createRangeMarker(startOffset, endOffset);
+        location = marker;
+      }
+      return marker;
     }
   }
 }
@@ -0,0 +1,141 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * The checksum used by SonarQube: the hash code of the hexadecimal MD5 of the UTF-8 text without whitespaces.
+ * It's computed directly from the characters, without creating intermediate strings. Each thread uses its own digest and buffers.
+ */
+public class Md5ChecksumCalculator implements ChecksumCalculator {
+  public static final Md5ChecksumCalculator INSTANCE = new Md5ChecksumCalculator();
+
+  private static final int BUFFER_SIZE = 1024;
+  private static final int MD5_LENGTH = 16;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+  // encoding of unpaired surrogates, as done by String#getBytes. Surrogates separated by whitespaces form a pair, as whitespaces
+  // used to be removed before encoding.
+  private static final byte REPLACEMENT = (byte) '?';
+
+  private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+  @Override
+  public int checksum(CharSequence content, int start, int end) {
+    State s = state.get();
+    MessageDigest digest = s.digest;
+    // in case a previous computation failed
+    digest.reset();
+    byte[] buffer = s.buffer;
+    int pos = 0;
+    // high surrogate waiting for the next non-whitespace character
+    char pendingHigh = 0;
+
+    for (int i = start; i < end; i++) {
+      char c = content.charAt(i);
+      if (isWhitespace(c)) {
+        continue;
+      }
+      // flush before a replaced surrogate followed by a 4-byte code point could overflow
+      if (pos > BUFFER_SIZE - 6) {
+        digest.update(buffer, 0, pos);
+        pos = 0;
+      }
+      if (pendingHigh != 0) {
+        if (Character.isLowSurrogate(c)) {
+          pos = encode(Character.toCodePoint(pendingHigh, c), buffer, pos);
+          pendingHigh = 0;
+          continue;
+        }
+        buffer[pos++] = REPLACEMENT;
+        pendingHigh = 0;
+      }
+      if (Character.isHighSurrogate(c)) {
+        pendingHigh = c;
+      } else if (Character.isLowSurrogate(c)) {
+        buffer[pos++] = REPLACEMENT;
+      } else {
+        pos = encode(c, buffer, pos);
+      }
+    }
+    if (pendingHigh != 0) {
+      buffer[pos++] = REPLACEMENT;
+    }
+    digest.update(buffer, 0, pos);
+
+    byte[] md5 = s.md5;
+    try {
+      digest.digest(md5, 0, MD5_LENGTH);
+    } catch (DigestException e) {
+      throw new IllegalStateException("Failed to compute checksum", e);
+    }
+    return hexHashCode(md5);
+  }
+
+  /**
+   * Writes the UTF-8 encoding of a code point and returns the next position in the buffer.
+   */
+  private static int encode(int codePoint, byte[] buffer, int pos) {
+    int p = pos;
+    if (codePoint < 0x80) {
+      buffer[p++] = (byte) codePoint;
+    } else if (codePoint < 0x800) {
+      buffer[p++] = (byte) (0xC0 | (codePoint >> 6));
+      buffer[p++] = (byte) (0x80 | (codePoint & 0x3F));
+    } else if (codePoint < 0x10000) {
+      buffer[p++] = (byte) (0xE0 | (codePoint >> 12));
+      buffer[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+      buffer[p++] = (byte) (0x80 | (codePoint & 0x3F));
+    } else {
+      buffer[p++] = (byte) (0xF0 | (codePoint >> 18));
+      buffer[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+      buffer[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+      buffer[p++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+    return p;
+  }
+
+  /**
+   * Same as {@code Hex.encodeHexString(bytes).hashCode()}.
+   */
+  private static int hexHashCode(byte[] bytes) {
+    int h = 0;
+    for (byte b : bytes) {
+      h = 31 * h + HEX_DIGITS[(b >> 4) & 0xF];
+      h = 31 * h + HEX_DIGITS[b & 0xF];
+    }
+    return h;
+  }
+
+  /**
+   * Same characters as {@code \s} in regular expressions.
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private static class State {
+    private final MessageDigest digest = DigestUtils.getMd5Digest();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] md5 = new byte[MD5_LENGTH];
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
+import org.sonarlint.intellij.issue.tracking.Trackable;
+
+/**
+ * State of an analysis whose issues are stored file by file, while the analyzers are still running.
+ * Analyzers might report issues of a file after issues of other files. Those late issues are then tracked against the previous
+ * issues of the file that were not matched yet, and added to the issues already stored for the file.
+ */
+public class TrackingSession {
+  private final Map<VirtualFile, Collection<Trackable>> unmatchedPreviousIssues = new ConcurrentHashMap<>();
+  private final Map<VirtualFile, Collection<Trackable>> previousIssues = new ConcurrentHashMap<>();
+  private final Set<VirtualFile> previousIssuesLive = ConcurrentHashMap.newKeySet();
+  private final Set<VirtualFile> firstAnalysis = ConcurrentHashMap.newKeySet();
+  private final Set<VirtualFile> filesWithIssues = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger rawIssueCount = new AtomicInteger();
+  private final AtomicLong issueCount = new AtomicLong();
+
+  /**
+   * Whether issues of the file were already stored in this session.
+   */
+  public boolean contains(VirtualFile file) {
+    return unmatchedPreviousIssues.containsKey(file);
+  }
+
+  public Set<VirtualFile> files() {
+    return Collections.unmodifiableSet(unmatchedPreviousIssues.keySet());
+  }
+
+  boolean isFirstAnalysis(VirtualFile file) {
+    return firstAnalysis.contains(file);
+  }
+
+  @CheckForNull
+  Collection<Trackable> getUnmatchedPreviousIssues(VirtualFile file) {
+    return unmatchedPreviousIssues.get(file);
+  }
+
+  /**
+   * Issues that the file had before its issues were first stored in this session, so that they can be put back if the analysis
+   * of the file fails. Null if the file was analyzed for the first time.
+   */
+  @CheckForNull
+  Collection<Trackable> getPreviousIssues(VirtualFile file) {
+    return previousIssues.get(file);
+  }
+
+  /**
+   * Whether the previous issues of the file were in the live cache, rather than restored from the store.
+   */
+  boolean isPreviousIssuesLive(VirtualFile file) {
+    return previousIssuesLive.contains(file);
+  }
+
+  void storing(VirtualFile file, Collection<Trackable> previous, boolean live) {
+    previousIssues.put(file, previous);
+    if (live) {
+      previousIssuesLive.add(file);
+    }
+  }
+
+  void stored(VirtualFile file, Iterable<? extends Trackable> unmatched) {
+    Collection<Trackable> issues = new ArrayList<>();
+    unmatched.forEach(issues::add);
+    unmatchedPreviousIssues.put(file, issues);
+  }
+
+  void storedFirstAnalysis(VirtualFile file) {
+    firstAnalysis.add(file);
+    unmatchedPreviousIssues.put(file, Collections.emptyList());
+  }
+
+  void processed(VirtualFile file, int rawIssues, int issues) {
+    rawIssueCount.addAndGet(rawIssues);
+    issueCount.addAndGet(issues);
+    if (issues > 0) {
+      filesWithIssues.add(file);
+    }
+  }
+
+  int getRawIssueCount() {
+    return rawIssueCount.get();
+  }
+
+  long getIssueCount() {
+    return issueCount.get();
+  }
+
+  Set<VirtualFile> getFilesWithIssues() {
+    return filesWithIssues;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Count-min sketch estimating how often elements were recently seen. Each counter is stored in a byte, and saturates at 15.
+ * Counters are periodically halved so that the estimation reflects the recent history.
+ */
+@NotThreadSafe
+class FrequencySketch<E> {
+  private static final int[] SEEDS = {0x97cb3127, 0xb8f4f82b, 0x4b7ab4c5, 0x6e5a4f1d};
+  private static final int MAX_COUNT = 15;
+
+  private final byte[][] table;
+  private final int mask;
+  private final int sampleSize;
+  private int additions;
+
+  FrequencySketch(int width) {
+    int size = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+    this.table = new byte[SEEDS.length][size];
+    this.mask = size - 1;
+    this.sampleSize = 10 * size;
+  }
+
+  void increment(E e) {
+    int hash = spread(e.hashCode());
+    boolean added = false;
+    for (int i = 0; i < SEEDS.length; i++) {
+      int index = index(hash, i);
+      if (table[i][index] < MAX_COUNT) {
+        table[i][index]++;
+        added = true;
+      }
+    }
+    if (added && ++additions >= sampleSize) {
+      reset();
+    }
+  }
+
+  int frequency(E e) {
+    int hash = spread(e.hashCode());
+    int frequency = MAX_COUNT;
+    for (int i = 0; i < SEEDS.length; i++) {
+      frequency = Math.min(frequency, table[i][index(hash, i)]);
+    }
+    return frequency;
+  }
+
+  private void reset() {
+    for (byte[] row : table) {
+      for (int i = 0; i < row.length; i++) {
+        row[i] = (byte) (row[i] >>> 1);
+      }
+    }
+    additions /= 2;
+  }
+
+  private int index(int hash, int row) {
+    int h = hash * SEEDS[row];
+    h ^= h >>> 17;
+    return h & mask;
+  }
+
+  private static int spread(int hash) {
+    int h = hash * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -27,8 +27,11 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
-import org.sonarsource.sonarlint.core.client.api.connected.objectstore.ObjectStore;
+import java.util.Set;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.PathMapper;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Reader;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
@@ -39,7 +42,7 @@ import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
  * @param <K> type of the key to store by and used when reading back; must be hashable
  * @param <V> type of the value to store
  */
-class IndexedObjectStore<K, V> implements ObjectStore<K, V> {
+class IndexedObjectStore<K, V> implements LocalObjectStore<K, V> {
   private static final Logger LOGGER = Logger.getInstance(IndexedObjectStore.class);
   private final StoreIndex<K> index;
   private final PathMapper<K> pathMapper;
@@ -66,6 +69,7 @@ class IndexedObjectStore<K, V> implements ObjectStore<K, V> {
     }
   }
 
+  @Override
   public boolean contains(K key) {
     Path path = pathMapper.apply(key);
     return path.toFile().exists();
@@ -74,6 +78,7 @@ class IndexedObjectStore<K, V> implements ObjectStore<K, V> {
   /**
    * Deletes all entries in the index are no longer valid.
    */
+  @Override
   public void deleteInvalid() {
     int counter = 0;
     Collection<K> keys;
@@ -97,6 +102,25 @@ class IndexedObjectStore<K, V> implements ObjectStore<K, V> {
     LOGGER.debug(String.format("%d entries removed from the store", counter));
   }
 
+  @Override
+  public Collection<K> keys() {
+    return index.keys();
+  }
+
+  @Override
+  public int deleteInvalid(Collection<K> keys) {
+    int counter = 0;
+    for (K k : validator.filterInvalid(keys)) {
+      try {
+        delete(k);
+        counter++;
+      } catch (IOException e) {
+        LOGGER.warn("Failed to delete file in the store", e);
+      }
+    }
+    return counter;
+  }
+
   @Override
   public void delete(K key) throws IOException {
     Path path = pathMapper.apply(key);
@@ -104,6 +128,11 @@ class IndexedObjectStore<K, V> implements ObjectStore<K, V> {
     index.delete(key);
   }
 
+  @Override
+  public void close() {
+    // nothing to release
+  }
+
   @Override
   public void write(K key, V value) throws IOException {
     Path path = pathMapper.apply(key);
@@ -116,4 +145,34 @@ class IndexedObjectStore<K, V> implements ObjectStore<K, V> {
       writer.accept(out, value);
     }
   }
+
+  /**
+   * The values are all written before the index is updated in one batch, so that the index never refers to files that weren't
+   * written. If writing fails, the files already written are still indexed.
+   */
+  @Override
+  public void writeAll(Map<K, V> values) throws IOException {
+    Map<K, byte[]> buffers = LocalObjectStore.serialize(values, writer);
+    Map<K, Path> paths = new LinkedHashMap<>();
+    Set<Path> parents = new HashSet<>();
+    for (K key : values.keySet()) {
+      Path path = pathMapper.apply(key);
+      paths.put(key, path);
+      parents.add(path.getParent());
+    }
+    for (Path parent : parents) {
+      Files.createDirectories(parent);
+    }
+    Map<K, Path> written = new LinkedHashMap<>();
+    try {
+      for (Map.Entry<K, Path> e : paths.entrySet()) {
+        Files.write(e.getValue(), buffers.get(e.getKey()));
+        written.put(e.getKey(), e.getValue());
+      }
+    } finally {
+      if (!written.isEmpty()) {
+        index.saveAll(written);
+      }
+    }
+  }
 }
@@ -19,16 +19,36 @@
  */
 package org.sonarlint.intellij.issue.persistence;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.AbstractProjectComponent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
+import org.sonarlint.intellij.issue.LiveIssue;
 import org.sonarlint.intellij.issue.LocalIssueTrackable;
 import org.sonarlint.intellij.issue.tracking.Trackable;
 import org.sonarlint.intellij.proto.Sonarlint;
@@ -39,60 +59,231 @@ import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
 import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
 
 public class IssuePersistence extends AbstractProjectComponent {
+  private static final Logger LOGGER = Logger.getInstance(IssuePersistence.class);
+  static final int FORMAT_VERSION = 2;
+  static final String SEGMENTS_DIR = "segments";
+  static final int MAX_PENDING_WRITES = 1_000;
+  static final String SWEEP_CURSOR_FILENAME = "sweep.cursor";
   private final Path storeBasePath;
-  private final IndexedObjectStore<String, Sonarlint.Issues> store;
+  private final SonarLintProjectSettings settings;
+  private final WriteBehindQueue<String, Sonarlint.Issues> pendingWrites;
+  private LocalObjectStore<String, Sonarlint.Issues> store;
 
-  protected IssuePersistence(Project project) {
+  protected IssuePersistence(Project project, SonarLintProjectSettings settings) {
     super(project);
+    this.settings = settings;
     storeBasePath = getBasePath();
     FileUtils.mkdirs(storeBasePath);
+    store = createStore();
+    pendingWrites = new WriteBehindQueue<>("sonarlint-issue-store-" + project.getName(), MAX_PENDING_WRITES, this::writePending);
+  }
+
+  @Override
+  public void projectOpened() {
+    clean();
+  }
+
+  /**
+   * Creates the store in the layout selected for the project, migrating the issues that were persisted in the other layout,
+   * in either direction.
+   */
+  private LocalObjectStore<String, Sonarlint.Issues> createStore() {
     StoreIndex<String> index = new StringStoreIndex(storeBasePath);
     PathMapper<String> mapper = new HashingPathMapper(storeBasePath, 2);
-    StoreKeyValidator<String> validator = new PathStoreKeyValidator(project.getBaseDir());
+    StoreKeyValidator<String> validator = new PathStoreKeyValidator(myProject.getBaseDir());
     Reader<Sonarlint.Issues> reader = is -> {
       try {
-        return Sonarlint.Issues.parseFrom(is);
+        return transform(ByteString.readFrom(is));
       } catch (IOException e) {
         throw new IllegalStateException("Failed to read issues", e);
       }
     };
     Writer<Sonarlint.Issues> writer = (os, issues) -> {
       try {
-        issues.writeTo(os);
+        compact(issues).writeTo(os);
       } catch (IOException e) {
         throw new IllegalStateException("Failed to save issues", e);
       }
     };
-    store = new IndexedObjectStore<>(index, mapper, reader, writer, validator);
-    store.deleteInvalid();
+    IndexedObjectStore<String, Sonarlint.Issues> indexedStore = new IndexedObjectStore<>(index, mapper, reader, writer, validator);
+    Path segmentsDir = storeBasePath.resolve(SEGMENTS_DIR);
+    if (!settings.isSegmentedIssueStoreEnabled()) {
+      if (segmentsDir.toFile().exists()) {
+        LOGGER.info("Migrating local issue store from a segmented store");
+        SegmentedObjectStore<Sonarlint.Issues> segmentedStore = new SegmentedObjectStore<>(segmentsDir, reader, writer, validator);
+        migrate(segmentedStore.keys(), segmentedStore, indexedStore);
+        segmentedStore.close();
+        FileUtils.deleteRecursively(segmentsDir);
+      }
+      return indexedStore;
+    }
+
+    SegmentedObjectStore<Sonarlint.Issues> segmentedStore = new SegmentedObjectStore<>(segmentsDir, reader, writer, validator);
+    if (storeBasePath.resolve(StringStoreIndex.INDEX_FILENAME).toFile().exists()) {
+      LOGGER.info("Migrating local issue store to a segmented store");
+      migrate(index.keys(), indexedStore, segmentedStore);
+      deleteIndexedStore();
+    }
+    return segmentedStore;
+  }
+
+  private static void migrate(Collection<String> keys, LocalObjectStore<String, Sonarlint.Issues> from, LocalObjectStore<String, Sonarlint.Issues> to) {
+    for (String key : keys) {
+      try {
+        Optional<Sonarlint.Issues> issues = from.read(key);
+        if (issues.isPresent()) {
+          to.write(key, issues.get());
+        }
+      } catch (Exception e) {
+        LOGGER.warn("Failed to migrate issues of " + key, e);
+      }
+    }
+  }
+
+  private void deleteIndexedStore() {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(storeBasePath)) {
+      for (Path path : stream) {
+        if (!path.getFileName().toString().equals(SEGMENTS_DIR)) {
+          FileUtils.deleteRecursively(path);
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Failed to delete the previous local issue store", e);
+    }
   }
 
   public synchronized boolean contains(String key) {
-    return store.contains(key);
+    return pendingWrites.get(key) != null || store.contains(key);
+  }
+
+  public void save(String key, Collection<? extends Trackable> issues) throws IOException {
+    Sonarlint.Issues transformed = transformInReadAction(issues, null);
+    synchronized (this) {
+      pendingWrites.remove(key);
+      store.write(key, transformed);
+    }
+  }
+
+  public void saveAll(Map<String, ? extends Collection<? extends Trackable>> issuesByKey) throws IOException {
+    saveAll(issuesByKey, Collections.emptyMap());
+  }
+
+  /**
+   * Saves the issues of several keys, transforming them in parallel and updating the store in a single batch.
+   * Each key is transformed in its own read action. If the caller already has read access, the keys are transformed by the caller,
+   * as other threads can't get read access while a write action is waiting for the caller to release it.
+   *
+   * @param fingerprintByKey Fingerprints of the analyses that found the issues, for the keys that have one
+   */
+  public void saveAll(Map<String, ? extends Collection<? extends Trackable>> issuesByKey, Map<String, String> fingerprintByKey) throws IOException {
+    Stream<? extends Map.Entry<String, ? extends Collection<? extends Trackable>>> entries = ApplicationManager.getApplication().isReadAccessAllowed()
+      ? issuesByKey.entrySet().stream()
+      : issuesByKey.entrySet().parallelStream();
+    Map<String, Sonarlint.Issues> transformed = entries
+      .collect(Collectors.toMap(Map.Entry::getKey, e -> transformInReadAction(e.getValue(), fingerprintByKey.get(e.getKey()))));
+    synchronized (this) {
+      transformed.keySet().forEach(pendingWrites::remove);
+      store.writeAll(transformed);
+    }
+  }
+
+  /**
+   * Queues the issues to be saved by a background thread. Until then, they are returned by {@link #read(String)}.
+   * The issues are converted right away, as their locations can only be read with read access, which the background thread doesn't have.
+   * Blocks if too many writes are already pending.
+   */
+  public void saveAsync(String key, Collection<? extends Trackable> issues) {
+    saveAsync(key, issues, null);
+  }
+
+  /**
+   * Same as {@link #saveAsync(String, Collection)}, keeping the fingerprint of the analysis that found the issues.
+   */
+  public void saveAsync(String key, Collection<? extends Trackable> issues, @Nullable String fingerprint) {
+    saveAsync(key, transformInReadAction(issues, fingerprint));
+  }
+
+  /**
+   * Same as {@link #saveAsync(String, Collection, String)}, with issues already converted by {@link #transformInReadAction(Collection, String)}.
+   */
+  void saveAsync(String key, Sonarlint.Issues issues) {
+    pendingWrites.put(key, issues);
+  }
+
+  /**
+   * Blocks until all issues queued with {@link #saveAsync(String, Collection, String)} are saved.
+   */
+  public void flushPending() {
+    pendingWrites.awaitEmpty();
+  }
+
+  private synchronized void writePending(String key, Sonarlint.Issues pending) throws IOException {
+    // skip if issues were saved synchronously or cleared in the meantime
+    if (pendingWrites.get(key) == pending) {
+      store.write(key, pending);
+    }
   }
 
-  public synchronized void save(String key, Collection<? extends Trackable> issues) throws IOException {
-    store.write(key, transform(issues));
+  public synchronized void delete(String key) throws IOException {
+    pendingWrites.remove(key);
+    store.delete(key);
   }
 
   @CheckForNull
   public synchronized Collection<LocalIssueTrackable> read(String key) throws IOException {
+    Sonarlint.Issues pending = pendingWrites.get(key);
+    if (pending != null) {
+      return transform(pending);
+    }
     Optional<Sonarlint.Issues> issues = store.read(key);
     return issues.map(IssuePersistence::transform).orElse(null);
   }
 
+  /**
+   * Returns the issues persisted for a key, only if they were found by an analysis with the given fingerprint.
+   */
+  @CheckForNull
+  public synchronized Sonarlint.Issues readIfFingerprintMatches(String key, String fingerprint) throws IOException {
+    Sonarlint.Issues pending = pendingWrites.get(key);
+    Optional<Sonarlint.Issues> issues = pending != null ? Optional.of(pending) : store.read(key);
+    return issues.filter(i -> !i.getFingerprint().isEmpty() && i.getFingerprint().equals(fingerprint)).orElse(null);
+  }
+
   private Path getBasePath() {
     Path ideaDir = new File(myProject.getBaseDir().getPath(), Project.DIRECTORY_STORE_FOLDER).toPath();
     return ideaDir.resolve("sonarlint").resolve("issuestore");
   }
 
-  public synchronized void clean() {
-    store.deleteInvalid();
+  /**
+   * Stale entries are removed in the background, as checking all of them might take a while.
+   */
+  public void clean() {
+    ProgressManager.getInstance().run(new StaleEntriesSweepTask(myProject, this, storeBasePath.resolve(SWEEP_CURSOR_FILENAME)));
+  }
+
+  synchronized Collection<String> keys() {
+    return store.keys();
+  }
+
+  synchronized int deleteInvalid(Collection<String> keys) {
+    return store.deleteInvalid(keys);
   }
 
   public synchronized void clear() {
+    pendingWrites.clear();
+    store.close();
     FileUtils.deleteRecursively(storeBasePath);
     FileUtils.mkdirs(storeBasePath);
+    store = createStore();
+  }
+
+  @Override
+  public void disposeComponent() {
+    // don't hold the lock while the pending writes are flushed, as the flusher thread needs it
+    pendingWrites.shutdown();
+    synchronized (this) {
+      store.close();
+    }
   }
 
   private static Collection<LocalIssueTrackable> transform(Sonarlint.Issues protoIssues) {
@@ -102,13 +293,102 @@ public class IssuePersistence extends AbstractProjectComponent {
       .collect(Collectors.toList());
   }
 
-  private static Sonarlint.Issues transform(Collection<? extends Trackable> localIssues) {
+  static Sonarlint.Issues transformInReadAction(Collection<? extends Trackable> localIssues, @Nullable String fingerprint) {
+    AccessToken token = ReadAction.start();
+    try {
+      return transform(localIssues, fingerprint);
+    } finally {
+      token.finish();
+    }
+  }
+
+  /**
+   * The fingerprint is only kept if all issues can be restored from the store, which is not the case of secondary locations.
+   */
+  private static Sonarlint.Issues transform(Collection<? extends Trackable> localIssues, @Nullable String fingerprint) {
     Sonarlint.Issues.Builder builder = Sonarlint.Issues.newBuilder();
     localIssues.stream()
       .map(IssuePersistence::transform)
       .filter(Objects::nonNull)
       .forEach(builder::addIssue);
 
+    if (fingerprint != null && localIssues.stream().noneMatch(IssuePersistence::hasFlows)) {
+      builder.setFingerprint(fingerprint);
+    }
+    return builder.build();
+  }
+
+  private static boolean hasFlows(Trackable issue) {
+    return issue instanceof LiveIssue && !((LiveIssue) issue).flows().isEmpty();
+  }
+
+  /**
+   * Reads issues stored in either version of the format. Issues are always stored in the latest version, see {@link #compact(Sonarlint.Issues)}.
+   */
+  static Sonarlint.Issues transform(ByteString bytes) throws InvalidProtocolBufferException {
+    Sonarlint.IssuesV2 issues = Sonarlint.IssuesV2.parseFrom(bytes);
+    if (issues.getVersion() == FORMAT_VERSION) {
+      return transform(issues);
+    }
+    return Sonarlint.Issues.parseFrom(bytes);
+  }
+
+  private static Sonarlint.Issues transform(Sonarlint.IssuesV2 issues) {
+    List<String> strings = issues.getStringsList();
+    Sonarlint.Issues.Builder builder = Sonarlint.Issues.newBuilder()
+      .setFingerprint(issues.getFingerprint());
+    for (Sonarlint.IssuesV2.Issue issue : issues.getIssueList()) {
+      builder.addIssueBuilder()
+        .setServerIssueKey(strings.get(issue.getServerIssueKey()))
+        .setRuleKey(strings.get(issue.getRuleKey()))
+        .setLine(issue.getLine())
+        .setMessage(strings.get(issue.getMessage()))
+        .setChecksum(issue.getChecksum())
+        .setAssignee(strings.get(issue.getAssignee()))
+        .setCreationDate(issue.getCreationDate())
+        .setResolved(issue.getResolved())
+        .setRuleName(strings.get(issue.getRuleName()))
+        .setSeverity(strings.get(issue.getSeverity()))
+        .setType(strings.get(issue.getType()))
+        .setStartLineOffset(issue.getStartLineOffset())
+        .setEndLine(issue.getEndLine())
+        .setEndLineOffset(issue.getEndLineOffset());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Converts issues to the latest version of the format, in which each distinct string is stored only once.
+   */
+  static Sonarlint.IssuesV2 compact(Sonarlint.Issues issues) {
+    Sonarlint.IssuesV2.Builder builder = Sonarlint.IssuesV2.newBuilder()
+      .setVersion(FORMAT_VERSION)
+      .setFingerprint(issues.getFingerprint())
+      .addStrings("");
+    Map<String, Integer> indexes = new HashMap<>();
+    indexes.put("", 0);
+    ToIntFunction<String> ref = str -> indexes.computeIfAbsent(str, k -> {
+      builder.addStrings(k);
+      return indexes.size();
+    });
+
+    for (Sonarlint.Issues.Issue issue : issues.getIssueList()) {
+      builder.addIssueBuilder()
+        .setServerIssueKey(ref.applyAsInt(issue.getServerIssueKey()))
+        .setRuleKey(ref.applyAsInt(issue.getRuleKey()))
+        .setLine(issue.getLine())
+        .setMessage(ref.applyAsInt(issue.getMessage()))
+        .setChecksum(issue.getChecksum())
+        .setAssignee(ref.applyAsInt(issue.getAssignee()))
+        .setCreationDate(issue.getCreationDate())
+        .setResolved(issue.getResolved())
+        .setRuleName(ref.applyAsInt(issue.getRuleName()))
+        .setSeverity(ref.applyAsInt(issue.getSeverity()))
+        .setType(ref.applyAsInt(issue.getType()))
+        .setStartLineOffset(issue.getStartLineOffset())
+        .setEndLine(issue.getEndLine())
+        .setEndLineOffset(issue.getEndLineOffset());
+    }
     return builder.build();
   }
 
@@ -138,6 +418,30 @@ public class IssuePersistence extends AbstractProjectComponent {
     if (localIssue.getLine() != null) {
       builder.setLine(localIssue.getLine());
     }
+    if (localIssue instanceof LiveIssue) {
+      setLocation(builder, (LiveIssue) localIssue);
+    }
     return builder.build();
   }
+
+  private static void setLocation(Sonarlint.Issues.Issue.Builder builder, LiveIssue liveIssue) {
+    if (liveIssue.getRuleName() != null) {
+      builder.setRuleName(liveIssue.getRuleName());
+    }
+    if (liveIssue.getSeverity() != null) {
+      builder.setSeverity(liveIssue.getSeverity());
+    }
+    if (liveIssue.getType() != null) {
+      builder.setType(liveIssue.getType());
+    }
+    RangeMarker range = liveIssue.getRange();
+    if (range != null && range.isValid()) {
+      Document doc = range.getDocument();
+      int startLine = doc.getLineNumber(range.getStartOffset());
+      int endLine = doc.getLineNumber(range.getEndOffset());
+      builder.setStartLineOffset(range.getStartOffset() - doc.getLineStartOffset(startLine))
+        .setEndLine(endLine + 1)
+        .setEndLineOffset(range.getEndOffset() - doc.getLineStartOffset(endLine));
+    }
+  }
 }
@@ -21,67 +21,255 @@ package org.sonarlint.intellij.issue.persistence;
 
 import com.intellij.openapi.components.AbstractProjectComponent;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonarlint.intellij.analysis.AnalysisFingerprint;
 import org.sonarlint.intellij.issue.LiveIssue;
+import org.sonarlint.intellij.proto.Sonarlint;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
+/**
+ * Keeps the issues of files in memory, within a budget of estimated heap usage (see {@link LiveIssueWeigher}).
+ * When the budget is exceeded, entries are evicted and queued to be persisted in the background. They are converted and queued
+ * after the cache is unlocked, as it takes read access and might wait for space in the queue. Until then, they are still returned
+ * by the cache.
+ * <p>
+ * The eviction follows the W-TinyLFU policy: new entries are first kept in a small LRU window. When they leave the window,
+ * they are only admitted in the main LRU region if they were accessed more frequently than the entry that would be evicted
+ * to make room for them. That way, a scan of many files doesn't evict the files being frequently looked at in the editors.
+ */
 public class LiveIssueCache extends AbstractProjectComponent {
   private static final Logger LOGGER = Logger.getInstance(LiveIssueCache.class);
-  static final int MAX_ENTRIES = 10_000;
-  private final Map<VirtualFile, Collection<LiveIssue>> cache;
+  static final String MAX_MEMORY_PROPERTY_KEY = "sonarlint.issueCache.maxMemoryMb";
+  static final int DEFAULT_MAX_MEMORY_MB = 64;
+  private static final int WINDOW_PERCENT = 1;
+  private static final int SKETCH_WIDTH = 4096;
+
   private final IssuePersistence store;
+  private final long maxWeight;
+  private final long maxWindowWeight;
+  private final Map<VirtualFile, CacheEntry> window = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<VirtualFile, CacheEntry> main = new LinkedHashMap<>(16, 0.75f, true);
+  // evicted entries that are not queued in the store yet
+  private final Map<VirtualFile, CacheEntry> evicting = new HashMap<>();
+  private final FrequencySketch<VirtualFile> sketch = new FrequencySketch<>(SKETCH_WIDTH);
+  private long windowWeight;
+  private long mainWeight;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
 
   public LiveIssueCache(Project project, IssuePersistence store) {
+    this(project, store, Integer.getInteger(MAX_MEMORY_PROPERTY_KEY, DEFAULT_MAX_MEMORY_MB) * 1024L * 1024L);
+  }
+
+  /**
+   * For unit testing (pico container won't be able to inject maxWeight)
+   */
+  LiveIssueCache(Project project, IssuePersistence store, long maxWeight) {
     super(project);
     this.store = store;
-    this.cache = new LimitedSizeLinkedHashMap();
+    this.maxWeight = maxWeight;
+    this.maxWindowWeight = maxWeight * WINDOW_PERCENT / 100;
+  }
+
+  private static class CacheEntry {
+    private final Collection<LiveIssue> issues;
+    private final long weight;
+    @Nullable
+    private volatile AnalysisFingerprint fingerprint;
+
+    private CacheEntry(Collection<LiveIssue> issues) {
+      this.issues = issues;
+      this.weight = LiveIssueWeigher.weigh(issues);
+    }
   }
 
   /**
-   * Keeps a maximum number of entries in the map. On insertion, if the limit is passed, the entry accessed the longest time ago
-   * is flushed into cache and removed from the map.
+   * Read issues from a file that are cached. On cache miss, it won't fallback to the persistent store.
    */
-  private class LimitedSizeLinkedHashMap extends LinkedHashMap<VirtualFile, Collection<LiveIssue>> {
-    LimitedSizeLinkedHashMap() {
-      super(MAX_ENTRIES, 0.75f, true);
+  @CheckForNull
+  public synchronized Collection<LiveIssue> getLive(VirtualFile virtualFile) {
+    sketch.increment(virtualFile);
+    CacheEntry entry = find(virtualFile);
+    if (entry == null) {
+      missCount++;
+      return null;
     }
+    hitCount++;
+    return entry.issues;
+  }
 
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<VirtualFile, Collection<LiveIssue>> eldest) {
-      if (size() <= MAX_ENTRIES) {
-        return false;
+  /**
+   * The fingerprint of the previous issues is kept. It remains valid as long as the file is not modified.
+   * Entries evicted to make room are persisted by the caller, once the cache is unlocked.
+   */
+  public void save(VirtualFile virtualFile, Collection<LiveIssue> issues) {
+    List<VirtualFile> evicted = new ArrayList<>();
+    synchronized (this) {
+      sketch.increment(virtualFile);
+      CacheEntry entry = new CacheEntry(Collections.unmodifiableCollection(issues));
+      CacheEntry previous = main.get(virtualFile);
+      if (previous != null) {
+        main.put(virtualFile, entry);
+        mainWeight += entry.weight - previous.weight;
+      } else {
+        previous = window.put(virtualFile, entry);
+        windowWeight += entry.weight - (previous != null ? previous.weight : 0);
       }
+      if (previous != null) {
+        entry.fingerprint = previous.fingerprint;
+      }
+      evictIfNeeded(evicted);
+    }
+    evicted.forEach(this::persistEvicted);
+  }
 
-      if (eldest.getKey().isValid()) {
-        String key = createKey(eldest.getKey());
-        try {
-          LOGGER.debug("Persisting issues for " + key);
-          store.save(key, eldest.getValue());
-        } catch (IOException e) {
-          throw new IllegalStateException(String.format("Error persisting issues for %s", key), e);
-        }
+  /**
+   * Associates the cached issues of a file with the fingerprint of the analysis that found them.
+   */
+  public synchronized void setFingerprint(VirtualFile virtualFile, AnalysisFingerprint fingerprint) {
+    CacheEntry entry = find(virtualFile);
+    if (entry != null) {
+      entry.fingerprint = fingerprint;
+    }
+  }
+
+  /**
+   * Returns the fingerprint of the analysis that found the cached issues of a file, if the file wasn't modified since then.
+   */
+  @CheckForNull
+  public synchronized String getFingerprint(VirtualFile virtualFile) {
+    CacheEntry entry = find(virtualFile);
+    return entry != null ? upToDateFingerprint(virtualFile, entry) : null;
+  }
+
+  @CheckForNull
+  private static String upToDateFingerprint(VirtualFile virtualFile, CacheEntry entry) {
+    AnalysisFingerprint fingerprint = entry.fingerprint;
+    if (fingerprint == null || !fingerprint.isUpToDate(FileDocumentManager.getInstance(), virtualFile)) {
+      return null;
+    }
+    return fingerprint.value();
+  }
+
+  @CheckForNull
+  private CacheEntry find(VirtualFile virtualFile) {
+    CacheEntry entry = window.get(virtualFile);
+    if (entry == null) {
+      entry = main.get(virtualFile);
+    }
+    return entry != null ? entry : evicting.get(virtualFile);
+  }
+
+  private void evictIfNeeded(List<VirtualFile> evicted) {
+    while (windowWeight > maxWindowWeight && !window.isEmpty()) {
+      Map.Entry<VirtualFile, CacheEntry> candidate = removeEldest(window);
+      windowWeight -= candidate.getValue().weight;
+      admit(candidate.getKey(), candidate.getValue(), evicted);
+    }
+    while (windowWeight + mainWeight > maxWeight && !main.isEmpty()) {
+      Map.Entry<VirtualFile, CacheEntry> victim = removeEldest(main);
+      mainWeight -= victim.getValue().weight;
+      evict(victim.getKey(), victim.getValue(), evicted);
+    }
+  }
+
+  /**
+   * Moves an entry leaving the window to the main region, if it was accessed more frequently than the entries that need to be
+   * evicted to make room for it. Otherwise the entry itself is evicted.
+   */
+  private void admit(VirtualFile candidate, CacheEntry entry, List<VirtualFile> evicted) {
+    long maxMainWeight = maxWeight - maxWindowWeight;
+    int candidateFrequency = sketch.frequency(candidate);
+    while (mainWeight + entry.weight > maxMainWeight && !main.isEmpty()) {
+      Map.Entry<VirtualFile, CacheEntry> victim = main.entrySet().iterator().next();
+      if (candidateFrequency <= sketch.frequency(victim.getKey())) {
+        evict(candidate, entry, evicted);
+        return;
       }
-      return true;
+      removeEldest(main);
+      mainWeight -= victim.getValue().weight;
+      evict(victim.getKey(), victim.getValue(), evicted);
     }
+    main.put(candidate, entry);
+    mainWeight += entry.weight;
+  }
+
+  private static Map.Entry<VirtualFile, CacheEntry> removeEldest(Map<VirtualFile, CacheEntry> region) {
+    Iterator<Map.Entry<VirtualFile, CacheEntry>> it = region.entrySet().iterator();
+    Map.Entry<VirtualFile, CacheEntry> eldest = it.next();
+    it.remove();
+    return eldest;
   }
 
   /**
-   * Read issues from a file that are cached. On cache miss, it won't fallback to the persistent store.
+   * The evicted entry is kept until it's persisted. If an older entry of the same file is still being persisted, the thread persisting
+   * it persists this one next, so that the entries of a file are queued in order.
+   *
+   * @param evicted Files to be persisted by the caller once the cache is unlocked
    */
+  private void evict(VirtualFile virtualFile, CacheEntry entry, List<VirtualFile> evicted) {
+    evictionCount++;
+    if (evicting.put(virtualFile, entry) == null) {
+      evicted.add(virtualFile);
+    }
+  }
+
+  private void persistEvicted(VirtualFile virtualFile) {
+    CacheEntry entry = getEvicting(virtualFile);
+    while (entry != null) {
+      CacheEntry next;
+      try {
+        persist(virtualFile, entry);
+      } finally {
+        next = doneEvicting(virtualFile, entry);
+      }
+      entry = next;
+    }
+  }
+
+  private void persist(VirtualFile virtualFile, CacheEntry entry) {
+    if (!virtualFile.isValid()) {
+      return;
+    }
+    String key = createKey(virtualFile);
+    Sonarlint.Issues issues = IssuePersistence.transformInReadAction(entry.issues, upToDateFingerprint(virtualFile, entry));
+    // see remove(), the issues must not be queued once the entry was removed
+    synchronized (entry) {
+      if (getEvicting(virtualFile) == entry) {
+        LOGGER.debug("Persisting issues for " + key);
+        store.saveAsync(key, issues);
+      }
+    }
+  }
+
   @CheckForNull
-  public synchronized Collection<LiveIssue> getLive(VirtualFile virtualFile) {
-    return cache.get(virtualFile);
+  private synchronized CacheEntry getEvicting(VirtualFile virtualFile) {
+    return evicting.get(virtualFile);
   }
 
-  public synchronized void save(VirtualFile virtualFile, Collection<LiveIssue> issues) {
-    cache.put(virtualFile, Collections.unmodifiableCollection(issues));
+  /**
+   * @return the entry of the file that was evicted in the meantime, if any
+   */
+  @CheckForNull
+  private synchronized CacheEntry doneEvicting(VirtualFile virtualFile, CacheEntry entry) {
+    if (evicting.remove(virtualFile, entry)) {
+      return null;
+    }
+    return evicting.get(virtualFile);
   }
 
   /**
@@ -90,13 +278,26 @@ public class LiveIssueCache extends AbstractProjectComponent {
    */
   public synchronized void flushAll() {
     LOGGER.debug("Persisting all issues");
-    cache.forEach((virtualFile, trackableIssues) -> {
+    Map<String, Collection<LiveIssue>> issuesByKey = new HashMap<>();
+    Map<String, String> fingerprintByKey = new HashMap<>();
+    collectValid(evicting, issuesByKey, fingerprintByKey);
+    collectValid(window, issuesByKey, fingerprintByKey);
+    collectValid(main, issuesByKey, fingerprintByKey);
+    try {
+      store.saveAll(issuesByKey, fingerprintByKey);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to flush cache", e);
+    }
+  }
+
+  private void collectValid(Map<VirtualFile, CacheEntry> region, Map<String, Collection<LiveIssue>> issuesByKey, Map<String, String> fingerprintByKey) {
+    region.forEach((virtualFile, entry) -> {
       if (virtualFile.isValid()) {
         String key = createKey(virtualFile);
-        try {
-          store.save(key, trackableIssues);
-        } catch (IOException e) {
-          throw new IllegalStateException("Failed to flush cache", e);
+        issuesByKey.put(key, entry.issues);
+        String fingerprint = upToDateFingerprint(virtualFile, entry);
+        if (fingerprint != null) {
+          fingerprintByKey.put(key, fingerprint);
         }
       }
     });
@@ -105,15 +306,67 @@ public class LiveIssueCache extends AbstractProjectComponent {
   @Override
   public synchronized void disposeComponent() {
     flushAll();
+    store.flushPending();
   }
 
   public synchronized void clear() {
     store.clear();
-    cache.clear();
+    window.clear();
+    main.clear();
+    evicting.clear();
+    windowWeight = 0;
+    mainWeight = 0;
+  }
+
+  /**
+   * Removes the issues of a file from the cache, without persisting them.
+   * If the file was evicted, its issues might already be queued in the store. In that case, this method waits until they are queued,
+   * so that the caller can overwrite them.
+   *
+   * @return whether the file was in the cache and its issues were not persisted
+   */
+  public boolean remove(VirtualFile virtualFile) {
+    CacheEntry evicted;
+    synchronized (this) {
+      CacheEntry entry = window.remove(virtualFile);
+      if (entry != null) {
+        windowWeight -= entry.weight;
+        return true;
+      }
+      entry = main.remove(virtualFile);
+      if (entry != null) {
+        mainWeight -= entry.weight;
+        return true;
+      }
+      evicted = evicting.remove(virtualFile);
+    }
+    if (evicted != null) {
+      synchronized (evicted) {
+        // the thread persisting the entry checks that it's still evicting before queueing it, while holding this lock
+        LOGGER.debug("Removed issues of a file being persisted");
+      }
+    }
+    return false;
   }
 
   public synchronized boolean contains(VirtualFile virtualFile) {
-    return getLive(virtualFile) != null;
+    return find(virtualFile) != null;
+  }
+
+  public synchronized long getWeight() {
+    return windowWeight + mainWeight;
+  }
+
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  public synchronized long getEvictionCount() {
+    return evictionCount;
   }
 
   private String createKey(VirtualFile virtualFile) {
@@ -0,0 +1,64 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import java.util.Collection;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.sonarlint.intellij.issue.LiveIssue;
+
+/**
+ * Roughly estimates the heap retained by the issues of a file, in bytes.
+ */
+final class LiveIssueWeigher {
+  static final int ENTRY_OVERHEAD = 64;
+  // the LiveIssue and its range marker; rules are interned and shared between issues
+  static final int ISSUE_OVERHEAD = 112;
+  // the IssueLocation and its range marker, once the location was shown
+  static final int LOCATION_OVERHEAD = 80;
+  private static final int STRING_OVERHEAD = 40;
+
+  private LiveIssueWeigher() {
+    // only static stuff
+  }
+
+  static long weigh(Collection<LiveIssue> issues) {
+    long weight = ENTRY_OVERHEAD;
+    for (LiveIssue issue : issues) {
+      weight += ISSUE_OVERHEAD
+        + weigh(issue.getMessage())
+        + weigh(issue.getAssignee())
+        + weigh(issue.getServerIssueKey());
+      List<LiveIssue.Flow> flows = issue.flows();
+      if (flows != null) {
+        for (LiveIssue.Flow flow : flows) {
+          for (LiveIssue.IssueLocation location : flow.locations()) {
+            weight += LOCATION_OVERHEAD + weigh(location.message());
+          }
+        }
+      }
+    }
+    return weight;
+  }
+
+  private static long weigh(@Nullable String str) {
+    return str == null ? 0 : (STRING_OVERHEAD + 2L * str.length());
+  }
+}
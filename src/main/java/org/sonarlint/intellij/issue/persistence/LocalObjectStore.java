@@ -0,0 +1,74 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.ObjectStore;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
+
+/**
+ * An ObjectStore persisted in the local filesystem, which entries can be checked and invalidated.
+ *
+ * @param <K> type of the key to store by and used when reading back; must be hashable
+ * @param <V> type of the value to store
+ */
+interface LocalObjectStore<K, V> extends ObjectStore<K, V> {
+  boolean contains(K key);
+
+  /**
+   * Writes several entries at once, which is cheaper than writing them one by one.
+   */
+  void writeAll(Map<K, V> values) throws IOException;
+
+  Collection<K> keys();
+
+  /**
+   * Deletes all entries that are no longer valid.
+   */
+  void deleteInvalid();
+
+  /**
+   * Deletes the given entries that are no longer valid, validating them all at once.
+   *
+   * @return the number of deleted entries
+   */
+  int deleteInvalid(Collection<K> keys);
+
+  /**
+   * Releases the resources held by the store. The store can't be used afterwards.
+   */
+  void close();
+
+  /**
+   * Serializes values in parallel, in memory.
+   */
+  static <K, V> Map<K, byte[]> serialize(Map<K, V> values, Writer<V> writer) {
+    return values.entrySet().parallelStream()
+      .collect(Collectors.toMap(Map.Entry::getKey, e -> {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.accept(out, e.getValue());
+        return out.toByteArray();
+      }));
+  }
+}
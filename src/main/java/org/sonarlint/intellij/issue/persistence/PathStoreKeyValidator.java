@@ -20,6 +20,14 @@
 package org.sonarlint.intellij.issue.persistence;
 
 import com.intellij.openapi.vfs.VirtualFile;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 class PathStoreKeyValidator implements StoreKeyValidator<String> {
   private final VirtualFile projectBaseDir;
@@ -29,7 +37,36 @@ class PathStoreKeyValidator implements StoreKeyValidator<String> {
   }
 
   @Override public Boolean apply(String relativeFilePath) {
-    VirtualFile virtualFile = projectBaseDir.findFileByRelativePath(relativeFilePath);
-    return virtualFile != null && virtualFile.isValid();
+    return isValid(projectBaseDir.findFileByRelativePath(relativeFilePath));
+  }
+
+  /**
+   * Checks the files in the VFS, like {@link #apply(String)}, but looking up each directory only once.
+   */
+  @Override public Collection<String> filterInvalid(Collection<String> relativeFilePaths) {
+    Map<String, List<String>> keysByDir = relativeFilePaths.stream()
+      .collect(Collectors.groupingBy(PathStoreKeyValidator::parentDir));
+
+    List<String> invalid = new ArrayList<>();
+    keysByDir.forEach((dirPath, keys) -> {
+      VirtualFile dir = dirPath.isEmpty() ? projectBaseDir : projectBaseDir.findFileByRelativePath(dirPath);
+      if (dir == null || !dir.isValid()) {
+        invalid.addAll(keys);
+        return;
+      }
+      keys.stream()
+        .filter(key -> !isValid(dir.findChild(Paths.get(key).getFileName().toString())))
+        .forEach(invalid::add);
+    });
+    return invalid;
+  }
+
+  private static boolean isValid(@Nullable VirtualFile file) {
+    return file != null && file.isValid();
+  }
+
+  private static String parentDir(String relativeFilePath) {
+    Path parent = Paths.get(relativeFilePath).getParent();
+    return parent != null ? parent.toString() : "";
   }
 }
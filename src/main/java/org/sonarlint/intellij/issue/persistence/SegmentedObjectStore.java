@@ -0,0 +1,514 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Reader;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
+import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
+
+/**
+ * An ObjectStore keeping all values in a few append-only segment files, instead of one file per key.
+ * An offset index of the live records is kept in memory and rebuilt by scanning the segments when the store is opened.
+ * Values are read through memory-mapped segments.
+ * <p>
+ * Each segment starts with a header, followed by records made of the key length, the value length (-1 for a deletion),
+ * the key and the value. Records are always appended to the last segment. When the space used by overwritten or deleted
+ * records exceeds the live data, all live records are copied into a new compacted segment which supersedes all the previous ones.
+ * The compacted segment is written to a temporary file which is only renamed once it is complete and synced to the disk, so that
+ * a crash during the compaction leaves the previous segments untouched.
+ *
+ * @param <V> type of the value to store
+ */
+class SegmentedObjectStore<V> implements LocalObjectStore<String, V> {
+  private static final Logger LOGGER = Logger.getInstance(SegmentedObjectStore.class);
+  private static final Pattern SEGMENT_FILENAME = Pattern.compile("segment-(\\d+)\\.log");
+  private static final String TMP_SUFFIX = ".tmp";
+  private static final int MAGIC = 0x534c4953;
+  private static final byte VERSION = 1;
+  private static final byte FLAG_COMPACTED = 1;
+  private static final int SEGMENT_HEADER_SIZE = 6;
+  private static final int RECORD_HEADER_SIZE = 8;
+  private static final int DELETED = -1;
+  static final long MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+  static final long MIN_GARBAGE_BEFORE_COMPACTION = 4L * 1024 * 1024;
+
+  private final Path segmentsDir;
+  private final Reader<V> reader;
+  private final Writer<V> writer;
+  private final StoreKeyValidator<String> validator;
+  private final Map<String, Location> locationByKey = new HashMap<>();
+  private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+  private Segment active;
+  private long liveBytes;
+  private long garbageBytes;
+
+  SegmentedObjectStore(Path segmentsDir, Reader<V> reader, Writer<V> writer, StoreKeyValidator<String> validator) {
+    this.segmentsDir = segmentsDir;
+    this.reader = reader;
+    this.writer = writer;
+    this.validator = validator;
+    try {
+      open();
+    } catch (IOException e) {
+      close();
+      throw new IllegalStateException("Failed to open local issue store", e);
+    }
+  }
+
+  @Override
+  public synchronized Optional<V> read(String key) throws IOException {
+    Location location = locationByKey.get(key);
+    if (location == null) {
+      return Optional.empty();
+    }
+    ByteBuffer value = segments.get(location.segmentId).slice(location.valueOffset, location.valueLength);
+    return Optional.of(reader.apply(new ByteBufferInputStream(value)));
+  }
+
+  @Override
+  public synchronized boolean contains(String key) {
+    return locationByKey.containsKey(key);
+  }
+
+  @Override
+  public synchronized void write(String key, V value) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writer.accept(out, value);
+    append(key, out.toByteArray());
+    compactIfNeeded();
+  }
+
+  @Override
+  public synchronized void writeAll(Map<String, V> values) throws IOException {
+    for (Map.Entry<String, byte[]> e : LocalObjectStore.serialize(values, writer).entrySet()) {
+      append(e.getKey(), e.getValue());
+    }
+    compactIfNeeded();
+  }
+
+  @Override
+  public synchronized void delete(String key) throws IOException {
+    if (!locationByKey.containsKey(key)) {
+      return;
+    }
+    append(key, null);
+    compactIfNeeded();
+  }
+
+  @Override
+  public synchronized void deleteInvalid() {
+    int counter = 0;
+    for (String key : new ArrayList<>(locationByKey.keySet())) {
+      if (!validator.apply(key)) {
+        try {
+          delete(key);
+          counter++;
+        } catch (IOException e) {
+          LOGGER.warn("Failed to delete entry in the store", e);
+        }
+      }
+    }
+    LOGGER.debug(String.format("%d entries removed from the store", counter));
+  }
+
+  @Override
+  public synchronized Collection<String> keys() {
+    return new ArrayList<>(locationByKey.keySet());
+  }
+
+  @Override
+  public synchronized int deleteInvalid(Collection<String> keys) {
+    int counter = 0;
+    for (String key : validator.filterInvalid(keys)) {
+      try {
+        delete(key);
+        counter++;
+      } catch (IOException e) {
+        LOGGER.warn("Failed to delete entry in the store", e);
+      }
+    }
+    return counter;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (active != null) {
+      active.force();
+    }
+    segments.values().forEach(Segment::close);
+    segments.clear();
+    locationByKey.clear();
+    active = null;
+  }
+
+  synchronized long getGarbageBytes() {
+    return garbageBytes;
+  }
+
+  synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * Copies all live records in a new segment, and deletes all the previous segments.
+   * The previous segments are only superseded once the new segment is complete.
+   */
+  synchronized void compact() throws IOException {
+    int id = segments.lastKey() + 1;
+    Path path = getSegmentPath(id);
+    Path tmpPath = path.resolveSibling(path.getFileName() + TMP_SUFFIX);
+    Map<String, Location> newLocations = new HashMap<>();
+    Segment tmp = new Segment(id, tmpPath);
+    try {
+      tmp.writeHeader(FLAG_COMPACTED);
+      for (Map.Entry<String, Location> entry : locationByKey.entrySet()) {
+        Location location = entry.getValue();
+        ByteBuffer value = segments.get(location.segmentId).slice(location.valueOffset, location.valueLength);
+        newLocations.put(entry.getKey(), tmp.append(entry.getKey().getBytes(StandardCharsets.UTF_8), value));
+      }
+      tmp.channel.force(true);
+    } catch (IOException e) {
+      tmp.close();
+      Files.deleteIfExists(tmpPath);
+      throw e;
+    }
+    tmp.close();
+    Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE);
+    syncDirectory();
+    Segment compacted = new Segment(id, path);
+
+    List<Segment> previous = new ArrayList<>(segments.values());
+    segments.clear();
+    segments.put(compacted.id, compacted);
+    active = compacted;
+    locationByKey.clear();
+    locationByKey.putAll(newLocations);
+    garbageBytes = 0;
+    previous.forEach(SegmentedObjectStore::deleteSegment);
+  }
+
+  private static void deleteSegment(Segment segment) {
+    segment.close();
+    try {
+      Files.deleteIfExists(segment.path);
+    } catch (IOException e) {
+      // the segment might still be mapped. As it is superseded, it will be deleted when the store is opened again
+      LOGGER.debug("Failed to delete segment " + segment.path, e);
+    }
+  }
+
+  private void compactIfNeeded() throws IOException {
+    if (garbageBytes > MIN_GARBAGE_BEFORE_COMPACTION && garbageBytes > liveBytes) {
+      compact();
+    }
+  }
+
+  private void append(String key, @Nullable byte[] value) throws IOException {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    if (active.size >= MAX_SEGMENT_SIZE) {
+      active = createSegment(active.id + 1, (byte) 0);
+      segments.put(active.id, active);
+    }
+    Location location = active.append(keyBytes, value == null ? null : ByteBuffer.wrap(value));
+    if (value == null) {
+      garbageBytes += location.recordSize;
+    }
+    apply(key, value == null ? null : location);
+  }
+
+  private void apply(String key, @Nullable Location location) {
+    Location previous = location == null ? locationByKey.remove(key) : locationByKey.put(key, location);
+    if (previous != null) {
+      liveBytes -= previous.recordSize;
+      garbageBytes += previous.recordSize;
+    }
+    if (location != null) {
+      liveBytes += location.recordSize;
+    }
+  }
+
+  /**
+   * Makes the rename of a compacted segment durable, where the platform allows syncing a directory.
+   */
+  private void syncDirectory() {
+    try (FileChannel dir = FileChannel.open(segmentsDir, StandardOpenOption.READ)) {
+      dir.force(true);
+    } catch (IOException e) {
+      LOGGER.debug("Failed to sync " + segmentsDir, e);
+    }
+  }
+
+  private void open() throws IOException {
+    FileUtils.mkdirs(segmentsDir);
+    TreeMap<Integer, Path> paths = new TreeMap<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(segmentsDir)) {
+      for (Path path : stream) {
+        String filename = path.getFileName().toString();
+        if (filename.endsWith(TMP_SUFFIX)) {
+          // compaction that didn't complete, the previous segments are still valid
+          LOGGER.info("Deleting incomplete compacted segment " + path);
+          Files.deleteIfExists(path);
+          continue;
+        }
+        Matcher matcher = SEGMENT_FILENAME.matcher(filename);
+        if (matcher.matches()) {
+          paths.put(Integer.parseInt(matcher.group(1)), path);
+        }
+      }
+    }
+
+    for (Map.Entry<Integer, Path> entry : paths.entrySet()) {
+      Segment segment = new Segment(entry.getKey(), entry.getValue());
+      if (segment.readFlags() == FLAG_COMPACTED) {
+        // all previous segments are superseded
+        segments.values().forEach(SegmentedObjectStore::deleteSegment);
+        segments.clear();
+      }
+      segments.put(segment.id, segment);
+    }
+
+    for (Segment segment : segments.values()) {
+      scan(segment, segment.id == segments.lastKey());
+    }
+
+    if (segments.isEmpty()) {
+      active = createSegment(1, (byte) 0);
+      segments.put(active.id, active);
+    } else {
+      active = segments.lastEntry().getValue();
+    }
+  }
+
+  /**
+   * Rebuilds the index with the records of a segment. An incomplete record at the end of the last segment, for example after a crash,
+   * is truncated so that new records are appended after valid ones.
+   */
+  private void scan(Segment segment, boolean last) throws IOException {
+    long position = SEGMENT_HEADER_SIZE;
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    while (position < segment.size) {
+      header.clear();
+      if (segment.read(header, position) < RECORD_HEADER_SIZE) {
+        break;
+      }
+      header.flip();
+      int keyLength = header.getInt();
+      int valueLength = header.getInt();
+      long recordSize = (long) RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+      if (keyLength <= 0 || valueLength < DELETED || position + recordSize > segment.size) {
+        break;
+      }
+      ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+      segment.read(keyBuffer, position + RECORD_HEADER_SIZE);
+      String key = new String(keyBuffer.array(), StandardCharsets.UTF_8);
+      if (valueLength == DELETED) {
+        garbageBytes += recordSize;
+        apply(key, null);
+      } else {
+        apply(key, new Location(segment.id, position + RECORD_HEADER_SIZE + keyLength, valueLength, (int) recordSize));
+      }
+      position += recordSize;
+    }
+
+    if (position < segment.size) {
+      LOGGER.warn(String.format("Ignoring %d bytes of incomplete records at the end of %s", segment.size - position, segment.path));
+      if (last) {
+        segment.truncate(position);
+      }
+    }
+  }
+
+  private Segment createSegment(int id, byte flags) throws IOException {
+    Segment segment = new Segment(id, getSegmentPath(id));
+    segment.writeHeader(flags);
+    return segment;
+  }
+
+  private Path getSegmentPath(int id) {
+    return segmentsDir.resolve("segment-" + id + ".log");
+  }
+
+  private static class Location {
+    private final int segmentId;
+    private final long valueOffset;
+    private final int valueLength;
+    private final int recordSize;
+
+    private Location(int segmentId, long valueOffset, int valueLength, int recordSize) {
+      this.segmentId = segmentId;
+      this.valueOffset = valueOffset;
+      this.valueLength = valueLength;
+      this.recordSize = recordSize;
+    }
+  }
+
+  private static class Segment {
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private long size;
+    private MappedByteBuffer mapped;
+
+    private Segment(int id, Path path) throws IOException {
+      this.id = id;
+      this.path = path;
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      this.size = channel.size();
+    }
+
+    private byte readFlags() throws IOException {
+      ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+      if (read(header, 0) < SEGMENT_HEADER_SIZE) {
+        writeHeader((byte) 0);
+        return 0;
+      }
+      header.flip();
+      if (header.getInt() != MAGIC || header.get() != VERSION) {
+        throw new IOException("Unsupported segment format: " + path);
+      }
+      return header.get();
+    }
+
+    private void writeHeader(byte flags) throws IOException {
+      ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+      header.putInt(MAGIC).put(VERSION).put(flags).flip();
+      channel.truncate(0);
+      writeFully(header, 0);
+      size = SEGMENT_HEADER_SIZE;
+    }
+
+    private Location append(byte[] key, @Nullable ByteBuffer value) throws IOException {
+      int valueLength = value == null ? DELETED : value.remaining();
+      ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + key.length);
+      header.putInt(key.length).putInt(valueLength).put(key).flip();
+      long recordOffset = size;
+      writeFully(header, recordOffset);
+      if (value != null) {
+        writeFully(value, recordOffset + RECORD_HEADER_SIZE + key.length);
+      }
+      int recordSize = RECORD_HEADER_SIZE + key.length + Math.max(valueLength, 0);
+      size += recordSize;
+      return new Location(id, recordOffset + RECORD_HEADER_SIZE + key.length, valueLength, recordSize);
+    }
+
+    private int read(ByteBuffer buffer, long position) throws IOException {
+      int total = 0;
+      while (buffer.hasRemaining()) {
+        int read = channel.read(buffer, position + total);
+        if (read < 0) {
+          break;
+        }
+        total += read;
+      }
+      return total;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+      long offset = position;
+      while (buffer.hasRemaining()) {
+        offset += channel.write(buffer, offset);
+      }
+    }
+
+    private ByteBuffer slice(long offset, int length) throws IOException {
+      if (mapped == null || mapped.capacity() < offset + length) {
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      ByteBuffer buffer = mapped.duplicate();
+      buffer.position((int) offset);
+      buffer.limit((int) offset + length);
+      return buffer.slice();
+    }
+
+    private void truncate(long newSize) throws IOException {
+      channel.truncate(newSize);
+      size = newSize;
+      mapped = null;
+    }
+
+    private void force() {
+      try {
+        channel.force(false);
+      } catch (IOException e) {
+        LOGGER.debug("Failed to sync segment " + path, e);
+      }
+    }
+
+    private void close() {
+      mapped = null;
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOGGER.debug("Failed to close segment " + path, e);
+      }
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(len, buffer.remaining());
+      buffer.get(bytes, off, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.PerformInBackgroundOption;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Deletes the entries of the issue store that are no longer valid, in the background.
+ * Keys are checked in sorted order, in small chunks so that the store is not locked for long, and the last checked key is persisted
+ * after each time slice. If the task is cancelled, for example because the project is closed, the next sweep resumes from there.
+ * Time slices are separated by pauses of the same length, so that the sweep never takes more than half of a thread.
+ */
+class StaleEntriesSweepTask extends Task.Backgroundable {
+  private static final Logger LOGGER = Logger.getInstance(StaleEntriesSweepTask.class);
+  static final int CHUNK_SIZE = 50;
+  static final long TIME_SLICE_MS = 50;
+  static final long PAUSE_MS = TIME_SLICE_MS;
+
+  private final IssuePersistence persistence;
+  private final Path cursorPath;
+
+  StaleEntriesSweepTask(Project project, IssuePersistence persistence, Path cursorPath) {
+    super(project, "Cleaning CodeScan issue store", true, PerformInBackgroundOption.ALWAYS_BACKGROUND);
+    this.persistence = persistence;
+    this.cursorPath = cursorPath;
+  }
+
+  @Override
+  public void run(@NotNull ProgressIndicator indicator) {
+    indicator.setText("Removing stale entries from the issue store");
+    indicator.setIndeterminate(false);
+
+    List<String> keys = new ArrayList<>(persistence.keys());
+    Collections.sort(keys);
+    int i = startIndex(keys, readCursor());
+    int removed = 0;
+
+    while (i < keys.size()) {
+      indicator.checkCanceled();
+      long sliceEnd = System.currentTimeMillis() + TIME_SLICE_MS;
+      while (i < keys.size() && System.currentTimeMillis() < sliceEnd) {
+        int to = Math.min(i + CHUNK_SIZE, keys.size());
+        removed += deleteInvalid(keys.subList(i, to));
+        i = to;
+      }
+      writeCursor(keys.get(i - 1));
+      indicator.setFraction((double) i / keys.size());
+      if (i < keys.size()) {
+        pause();
+      }
+    }
+
+    deleteCursor();
+    LOGGER.debug(String.format("%d entries removed from the store", removed));
+  }
+
+  /**
+   * Keys are validated by looking up their files in the VFS, which requires read access. It's taken for each chunk only, so that
+   * write actions don't wait for long, and before the store is locked, like analyses do.
+   */
+  private int deleteInvalid(List<String> chunk) {
+    AccessToken token = ReadAction.start();
+    try {
+      return persistence.deleteInvalid(chunk);
+    } finally {
+      token.finish();
+    }
+  }
+
+  private static void pause() {
+    try {
+      Thread.sleep(PAUSE_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessCanceledException();
+    }
+  }
+
+  private static int startIndex(List<String> sortedKeys, @CheckForNull String cursor) {
+    if (cursor == null) {
+      return 0;
+    }
+    int index = Collections.binarySearch(sortedKeys, cursor);
+    return index >= 0 ? (index + 1) : (-index - 1);
+  }
+
+  @CheckForNull
+  private String readCursor() {
+    if (!cursorPath.toFile().exists()) {
+      return null;
+    }
+    try {
+      return new String(Files.readAllBytes(cursorPath), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      LOGGER.warn("Failed to read the position of the last issue store cleaning", e);
+      return null;
+    }
+  }
+
+  private void writeCursor(String key) {
+    try {
+      Files.write(cursorPath, key.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      LOGGER.warn("Failed to save the position of the issue store cleaning", e);
+    }
+  }
+
+  private void deleteCursor() {
+    try {
+      Files.deleteIfExists(cursorPath);
+    } catch (IOException e) {
+      LOGGER.warn("Failed to delete the position of the issue store cleaning", e);
+    }
+  }
+}
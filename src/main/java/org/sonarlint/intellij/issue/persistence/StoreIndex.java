@@ -21,11 +21,14 @@ package org.sonarlint.intellij.issue.persistence;
 
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Map;
 
 interface StoreIndex<T> {
   Collection<T> keys();
 
   void save(T key, Path path);
 
+  void saveAll(Map<T, Path> pathByKey);
+
   void delete(T key);
 }
@@ -19,7 +19,17 @@
  */
 package org.sonarlint.intellij.issue.persistence;
 
+import java.util.Collection;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 interface StoreKeyValidator<K> extends Function<K, Boolean> {
+  /**
+   * Returns the keys that are no longer valid. Implementations might check all the keys at once more efficiently.
+   */
+  default Collection<K> filterInvalid(Collection<K> keys) {
+    return keys.stream()
+      .filter(k -> !apply(k))
+      .collect(Collectors.toList());
+  }
 }
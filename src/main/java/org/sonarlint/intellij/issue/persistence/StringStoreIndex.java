@@ -19,34 +19,134 @@
  */
 package org.sonarlint.intellij.issue.persistence;
 
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.sonarlint.intellij.proto.Sonarlint;
 
+/**
+ * Index of the store kept in memory and persisted as a snapshot ({@link #INDEX_FILENAME}) plus an append-only
+ * journal ({@link #JOURNAL_FILENAME}) of the changes made since that snapshot.
+ * Saving or deleting a key only appends a record to the journal. Once the journal grows bigger than the index itself,
+ * it is compacted into a new snapshot, so that the cost of each change stays constant when amortized.
+ */
 class StringStoreIndex implements StoreIndex<String> {
+  private static final Logger LOGGER = Logger.getInstance(StringStoreIndex.class);
   public static final String INDEX_FILENAME = "index.pb";
+  public static final String JOURNAL_FILENAME = "index.journal";
+  static final int MIN_ENTRIES_BEFORE_COMPACTION = 1_000;
+
   private final Path storeBasePath;
   private final Path indexFilePath;
+  private final Path journalFilePath;
+  private Map<String, String> mappedPathByKey;
+  private int journalEntries;
 
   public StringStoreIndex(Path storeBasePath) {
     this.storeBasePath = storeBasePath;
     this.indexFilePath = storeBasePath.resolve(INDEX_FILENAME);
+    this.journalFilePath = storeBasePath.resolve(JOURNAL_FILENAME);
+  }
+
+  @Override
+  public synchronized Collection<String> keys() {
+    return new ArrayList<>(load().keySet());
   }
 
   @Override
-  public Collection<String> keys() {
-    return load().keySet();
+  public synchronized void save(String storageKey, Path path) {
+    saveAll(Collections.singletonMap(storageKey, path));
+  }
+
+  @Override
+  public synchronized void saveAll(Map<String, Path> pathByKey) {
+    List<Sonarlint.StorageIndexEntry> entries = new ArrayList<>();
+    for (Map.Entry<String, Path> e : pathByKey.entrySet()) {
+      String relativeMappedPath = storeBasePath.relativize(e.getValue()).toString();
+      if (!relativeMappedPath.equals(load().get(e.getKey()))) {
+        entries.add(Sonarlint.StorageIndexEntry.newBuilder()
+          .setKey(e.getKey())
+          .setMappedPath(relativeMappedPath)
+          .build());
+      }
+    }
+    if (entries.isEmpty()) {
+      return;
+    }
+    append(entries);
+    entries.forEach(this::apply);
+    compactIfNeeded();
+  }
+
+  @Override
+  public synchronized void delete(String storageKey) {
+    if (!load().containsKey(storageKey)) {
+      return;
+    }
+    append(Collections.singletonList(Sonarlint.StorageIndexEntry.newBuilder()
+      .setKey(storageKey)
+      .setDeleted(true)
+      .build()));
+    mappedPathByKey.remove(storageKey);
+    compactIfNeeded();
+  }
+
+  /**
+   * Writes the current state of the index in a new snapshot and truncates the journal.
+   */
+  synchronized void compact() {
+    Sonarlint.StorageIndex index = Sonarlint.StorageIndex.newBuilder()
+      .putAllMappedPathByKey(load())
+      .build();
+    Path tmpFilePath = storeBasePath.resolve(INDEX_FILENAME + ".tmp");
+    try {
+      try (OutputStream stream = Files.newOutputStream(tmpFilePath)) {
+        index.writeTo(stream);
+      }
+      Files.move(tmpFilePath, indexFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      Files.deleteIfExists(journalFilePath);
+      journalEntries = 0;
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to write local issue store index", e);
+    }
+  }
+
+  private void compactIfNeeded() {
+    if (!indexFilePath.toFile().exists() || journalEntries > Math.max(MIN_ENTRIES_BEFORE_COMPACTION, mappedPathByKey.size())) {
+      compact();
+    }
   }
 
   private Map<String, String> load() {
+    if (mappedPathByKey != null) {
+      return mappedPathByKey;
+    }
+    mappedPathByKey = new HashMap<>(readSnapshot());
+    journalEntries = 0;
+    if (!replayJournal()) {
+      // drop the truncated tail so that new records are appended after valid ones
+      compact();
+    }
+    return mappedPathByKey;
+  }
+
+  private Map<String, String> readSnapshot() {
     if (!indexFilePath.toFile().exists()) {
-      return Collections.emptyMap();
+      return new HashMap<>();
     }
     try (InputStream stream = Files.newInputStream(indexFilePath)) {
       return Sonarlint.StorageIndex.parseFrom(stream).getMappedPathByKeyMap();
@@ -55,28 +155,46 @@ class StringStoreIndex implements StoreIndex<String> {
     }
   }
 
-  @Override
-  public void save(String storageKey, Path path) {
-    String relativeMappedPath = storeBasePath.relativize(path).toString();
-    Sonarlint.StorageIndex.Builder builder = Sonarlint.StorageIndex.newBuilder();
-    builder.putAllMappedPathByKey(load());
-    builder.putMappedPathByKey(storageKey, relativeMappedPath);
-    save(builder.build());
+  /**
+   * Applies the journal records to the loaded snapshot.
+   *
+   * @return false if the journal ends with an incomplete record, for example after a crash while appending to it
+   */
+  private boolean replayJournal() {
+    if (!journalFilePath.toFile().exists()) {
+      return true;
+    }
+    try (InputStream stream = new BufferedInputStream(Files.newInputStream(journalFilePath))) {
+      Sonarlint.StorageIndexEntry entry;
+      while ((entry = Sonarlint.StorageIndexEntry.parseDelimitedFrom(stream)) != null) {
+        apply(entry);
+        journalEntries++;
+      }
+      return true;
+    } catch (InvalidProtocolBufferException e) {
+      LOGGER.warn("Ignoring incomplete record at the end of the local issue store index journal", e);
+      return false;
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read local issue store index journal", e);
+    }
   }
 
-  @Override
-  public void delete(String storageKey) {
-    Sonarlint.StorageIndex.Builder builder = Sonarlint.StorageIndex.newBuilder();
-    builder.putAllMappedPathByKey(load());
-    builder.removeMappedPathByKey(storageKey);
-    save(builder.build());
+  private void apply(Sonarlint.StorageIndexEntry entry) {
+    if (entry.getDeleted()) {
+      mappedPathByKey.remove(entry.getKey());
+    } else {
+      mappedPathByKey.put(entry.getKey(), entry.getMappedPath());
+    }
   }
 
-  private void save(Sonarlint.StorageIndex index) {
-    try (OutputStream stream = Files.newOutputStream(indexFilePath)) {
-      index.writeTo(stream);
+  private void append(Collection<Sonarlint.StorageIndexEntry> entries) {
+    try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(journalFilePath, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+      for (Sonarlint.StorageIndexEntry entry : entries) {
+        entry.writeDelimitedTo(stream);
+        journalEntries++;
+      }
     } catch (IOException e) {
-      throw new IllegalStateException("Failed to write local issue store index", e);
+      throw new IllegalStateException("Failed to write local issue store index journal", e);
     }
   }
 }
@@ -0,0 +1,172 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded queue of values waiting to be written by a dedicated low priority thread.
+ * Writes for a key that is already queued replace the queued value, so only the latest value of a key is written.
+ * A value stays visible with {@link #get(Object)} until it was written.
+ * When the queue is full, {@link #put(Object, Object)} blocks until the flusher thread writes some values.
+ * Once the queue is shut down, values are written synchronously by the thread that puts them.
+ */
+@ThreadSafe
+class WriteBehindQueue<K, V> {
+  private static final Logger LOGGER = Logger.getInstance(WriteBehindQueue.class);
+
+  @FunctionalInterface
+  interface Sink<K, V> {
+    void write(K key, V value) throws IOException;
+  }
+
+  private final Map<K, V> pending = new LinkedHashMap<>();
+  private final int capacity;
+  private final Sink<K, V> sink;
+  private final Thread flusher;
+  private boolean stopped = false;
+
+  WriteBehindQueue(String name, int capacity, Sink<K, V> sink) {
+    this.capacity = capacity;
+    this.sink = sink;
+    this.flusher = new Thread(this::flush, name);
+    flusher.setDaemon(true);
+    flusher.setPriority(Thread.MIN_PRIORITY);
+    flusher.start();
+  }
+
+  void put(K key, V value) {
+    synchronized (this) {
+      while (!stopped && pending.size() >= capacity && !pending.containsKey(key)) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          // accept the value anyway, above capacity
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      pending.put(key, value);
+      notifyAll();
+      if (!stopped) {
+        return;
+      }
+    }
+    // the flusher thread might be gone already
+    LOGGER.debug(String.format("Write-behind queue is stopped, persisting %s synchronously", key));
+    write(key, value);
+  }
+
+  /**
+   * Returns the value queued for a key, or null if there is nothing left to write for it.
+   */
+  @CheckForNull
+  synchronized V get(K key) {
+    return pending.get(key);
+  }
+
+  synchronized void remove(K key) {
+    pending.remove(key);
+    notifyAll();
+  }
+
+  synchronized void clear() {
+    pending.clear();
+    notifyAll();
+  }
+
+  synchronized int size() {
+    return pending.size();
+  }
+
+  /**
+   * Blocks until all queued values are written.
+   */
+  synchronized void awaitEmpty() {
+    while (!pending.isEmpty()) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Writes all the queued values and stops the flusher thread.
+   */
+  void shutdown() {
+    synchronized (this) {
+      stopped = true;
+      notifyAll();
+    }
+    try {
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void flush() {
+    while (true) {
+      K key;
+      V value;
+      synchronized (this) {
+        while (pending.isEmpty() && !stopped) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            // only a shutdown stops the flusher
+          }
+        }
+        if (pending.isEmpty()) {
+          return;
+        }
+        Map.Entry<K, V> eldest = pending.entrySet().iterator().next();
+        key = eldest.getKey();
+        value = eldest.getValue();
+      }
+      write(key, value);
+    }
+  }
+
+  /**
+   * Writes a value that is in the queue, without holding the lock, as the sink may read the queue.
+   */
+  private void write(K key, V value) {
+    try {
+      sink.write(key, value);
+    } catch (Exception e) {
+      LOGGER.warn(String.format("Error persisting %s", key), e);
+    }
+
+    synchronized (this) {
+      // if the value was replaced meanwhile, the new one still needs to be written
+      pending.remove(key, value);
+      notifyAll();
+    }
+  }
+}
@@ -19,389 +19,503 @@
  */
 package org.sonarlint.intellij.issue.tracking;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
+/**
+ * Matches raw issues with base issues in several stages, from the most to the least strict criteria.
+ * <p>
+ * The search keys are computed as primitive hashes, at the start of each stage and only for the issues that are still unmatched.
+ * Text range hashes and line hashes, which might be expensive to compute, are only requested from the issues when a stage that
+ * needs them is reached. Each stage indexes the unmatched base issues
+ * in an open-addressing table, where issues with the same hash are chained in their original order. Hash collisions are
+ * resolved by comparing the actual fields, so the results are the same as comparing keys with equals().
+ * <p>
+ * When several raw and base issues share a search key, they are paired by increasing cost, where issues with the same message
+ * are preferred and then issues on closer lines. Ties are broken by the original order of the issues. At most
+ * {@link #MAX_CANDIDATES} issues of each side are considered at once, so that large buckets are paired in successive windows.
+ */
 public class Tracker<RAW extends Trackable, BASE extends Trackable> {
+  // 1. match issues with same rule, same line and same text range hash, but not necessarily with same message
+  private static final int LINE_AND_TEXT_RANGE_HASH = 0;
+  // 2. match issues with same rule, same message and same text range hash
+  private static final int TEXT_RANGE_HASH_AND_MESSAGE = 1;
+  // 3. match issues with same rule, same line and same message
+  private static final int LINE_AND_MESSAGE = 2;
+  // 4. match issues with same rule and same text range hash but different line and different message.
+  // See SONAR-2812
+  private static final int TEXT_RANGE_HASH = 3;
+  // 5. match issues with same rule, same line and same line hash
+  private static final int LINE_AND_LINE_HASH = 4;
+  // 6. match issues with same rule and same same line hash
+  private static final int LINE_HASH = 5;
+  // 7. match issues with same server issue key
+  private static final int SERVER_ISSUE_KEY = 6;
+  private static final int STAGES = 7;
+
+  static final int MAX_CANDIDATES = 16;
 
   public Tracking<RAW, BASE> track(Input<RAW> rawInput, Input<BASE> baseInput) {
-    Tracking<RAW, BASE> tracking = new Tracking<>(rawInput, baseInput);
-
-    // 1. match issues with same rule, same line and same text range hash, but not necessarily with same message
-    match(tracking, LineAndTextRangeHashKeyFactory.INSTANCE);
-
-    // 2. match issues with same rule, same message and same text range hash
-    match(tracking, TextRangeHashAndMessageKeyFactory.INSTANCE);
-
-    // 3. match issues with same rule, same line and same message
-    match(tracking, LineAndMessageKeyFactory.INSTANCE);
-
-    // 4. match issues with same rule and same text range hash but different line and different message.
-    // See SONAR-2812
-    match(tracking, TextRangeHashKeyFactory.INSTANCE);
-
-    // 5. match issues with same rule, same line and same line hash
-    match(tracking, LineAndLineHashKeyFactory.INSTANCE);
-
-    // 6. match issues with same rule and same same line hash
-    match(tracking, LineHashKeyFactory.INSTANCE);
+    return track(rawInput, baseInput, t -> null);
+  }
 
-    // 7. match issues with same server issue key
-    match(tracking, ServerIssueSearchKeyFactory.INSTANCE);
+  /**
+   * Same as {@link #track(Input, Input)}, but issues known to be unchanged since the base issues were found are matched first,
+   * without going through the stages.
+   *
+   * @param unchangedKey Returns a key for the issues that are unchanged, or null. A raw issue is matched with the first
+   *                     unmatched base issue that has an equal key.
+   */
+  public Tracking<RAW, BASE> track(Input<RAW> rawInput, Input<BASE> baseInput, Function<Trackable, Object> unchangedKey) {
+    Tracking<RAW, BASE> tracking = new Tracking<>(rawInput, baseInput);
+    Trackable[] raws = tracking.getRaws().toArray(new Trackable[0]);
+    Trackable[] bases = tracking.getBases().toArray(new Trackable[0]);
+    boolean[] rawMatched = new boolean[raws.length];
+    boolean[] baseMatched = new boolean[bases.length];
+    matchUnchanged(tracking, raws, bases, rawMatched, baseMatched, unchangedKey);
+
+    SearchKeys rawKeys = new SearchKeys(raws, rawMatched);
+    SearchKeys baseKeys = new SearchKeys(bases, baseMatched);
+    IssueIndex index = new IssueIndex(bases.length, raws.length);
+    Bucket bucket = new Bucket();
+
+    for (int stage = 0; stage < STAGES; stage++) {
+      if (tracking.isComplete()) {
+        break;
+      }
+      rawKeys.prepare(stage, rawMatched);
+      baseKeys.prepare(stage, baseMatched);
+      index.clear();
+      for (int b = 0; b < bases.length; b++) {
+        if (!baseMatched[b] && baseKeys.isSearchable(stage, b)) {
+          index.addBase(baseKeys.hash(b), b);
+        }
+      }
+      for (int r = 0; r < raws.length; r++) {
+        if (!rawMatched[r] && rawKeys.isSearchable(stage, r)) {
+          index.addRaw(rawKeys.hash(r), r);
+        }
+      }
+      for (int r = 0; r < raws.length; r++) {
+        if (rawMatched[r] || !index.collect(stage, rawKeys, r, baseKeys, rawMatched, baseMatched, bucket)) {
+          continue;
+        }
+        int numPairs = bucket.assign(rawKeys, baseKeys);
+        for (int p = 0; p < numPairs; p++) {
+          int raw = bucket.pairedRaws[p];
+          int base = bucket.pairedBases[p];
+          rawMatched[raw] = true;
+          baseMatched[base] = true;
+          match(tracking, raws[raw], bases[base]);
+        }
+      }
+    }
 
     return tracking;
   }
 
-  private void match(Tracking<RAW, BASE> tracking, SearchKeyFactory factory) {
-    if (tracking.isComplete()) {
-      return;
-    }
-
-    Map<SearchKey, List<BASE>> baseSearch = new HashMap<>();
-    for (BASE base : tracking.getUnmatchedBases()) {
-      SearchKey searchKey = factory.apply(base);
-      if (!baseSearch.containsKey(searchKey)) {
-        baseSearch.put(searchKey, new ArrayList<>());
+  private void matchUnchanged(Tracking<RAW, BASE> tracking, Trackable[] raws, Trackable[] bases, boolean[] rawMatched, boolean[] baseMatched,
+    Function<Trackable, Object> unchangedKey) {
+    Map<Object, Deque<Integer>> unchangedBases = new HashMap<>();
+    for (int b = 0; b < bases.length; b++) {
+      Object key = unchangedKey.apply(bases[b]);
+      if (key != null) {
+        unchangedBases.computeIfAbsent(key, k -> new ArrayDeque<>()).add(b);
       }
-      baseSearch.get(searchKey).add(base);
     }
-
-    for (RAW raw : tracking.getUnmatchedRaws()) {
-      SearchKey rawKey = factory.apply(raw);
-      Collection<BASE> bases = baseSearch.get(rawKey);
-      if (bases != null && !bases.isEmpty()) {
-        // TODO taking the first one. Could be improved if there are more than 2 issues on the same line.
-        // Message could be checked to take the best one.
-        BASE match = bases.iterator().next();
-        tracking.match(raw, match);
-        baseSearch.get(rawKey).remove(match);
+    if (unchangedBases.isEmpty()) {
+      return;
+    }
+    for (int r = 0; r < raws.length; r++) {
+      Object key = unchangedKey.apply(raws[r]);
+      Deque<Integer> candidates = key != null ? unchangedBases.get(key) : null;
+      if (candidates != null && !candidates.isEmpty()) {
+        int b = candidates.poll();
+        rawMatched[r] = true;
+        baseMatched[b] = true;
+        match(tracking, raws[r], bases[b]);
       }
     }
   }
 
-  private interface SearchKey {
-  }
-
-  @FunctionalInterface
-  private interface SearchKeyFactory extends Function<Trackable, SearchKey> {
-    @Override
-    SearchKey apply(Trackable trackable);
+  @SuppressWarnings("unchecked")
+  private void match(Tracking<RAW, BASE> tracking, Trackable raw, Trackable base) {
+    tracking.match((RAW) raw, (BASE) base);
   }
 
-  private static class LineAndTextRangeHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer textRangeHash;
-    private final Integer line;
-
-    LineAndTextRangeHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.line = trackable.getLine();
-      this.textRangeHash = trackable.getTextRangeHash();
-    }
-
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null) {
-        return false;
+  /**
+   * Fields of the issues used in search keys, and the hashes of the search keys of the current stage.
+   * Null integers are represented by {@link #NULL}, which is out of the range of integers.
+   */
+  private static final class SearchKeys {
+    private static final long NULL = Long.MIN_VALUE;
+    private static final long MAX_DISTANCE = (1 << 24) - 1;
+
+    private final Trackable[] trackables;
+    private final String[] ruleKeys;
+    private final String[] messages;
+    private final String[] serverIssueKeys;
+    private final long[] lines;
+    private final long[] textRangeHashes;
+    private final long[] lineHashes;
+    private final long[] hashes;
+    private boolean textRangeHashesLoaded;
+    private boolean lineHashesLoaded;
+
+    /**
+     * @param matched Issues already matched, for which the fields are not loaded
+     */
+    private SearchKeys(Trackable[] trackables, boolean[] matched) {
+      this.trackables = trackables;
+      int size = trackables.length;
+      ruleKeys = new String[size];
+      messages = new String[size];
+      serverIssueKeys = new String[size];
+      lines = new long[size];
+      textRangeHashes = new long[size];
+      lineHashes = new long[size];
+      hashes = new long[size];
+
+      for (int i = 0; i < size; i++) {
+        if (matched[i]) {
+          continue;
+        }
+        Trackable t = trackables[i];
+        ruleKeys[i] = t.getRuleKey();
+        messages[i] = t.getMessage();
+        serverIssueKeys[i] = t.getServerIssueKey();
+        lines[i] = toLong(t.getLine());
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
-      }
-      LineAndTextRangeHashKey that = (LineAndTextRangeHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && Objects.equals(textRangeHash, that.textRangeHash)
-        && ruleKey.equals(that.ruleKey);
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (textRangeHash != null ? textRangeHash.hashCode() : 0);
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
+    private static long toLong(@Nullable Integer value) {
+      return value != null ? value : NULL;
     }
-  }
-
-  private enum LineAndTextRangeHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
 
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new LineAndTextRangeHashKey(t);
+    /**
+     * Loads the fields needed by the stage and computes the hashes of its search keys, for the issues that are not matched yet.
+     */
+    private void prepare(int stage, boolean[] matched) {
+      boolean loadTextRangeHashes = !textRangeHashesLoaded && usesTextRangeHash(stage);
+      boolean loadLineHashes = !lineHashesLoaded && usesLineHash(stage);
+      textRangeHashesLoaded |= loadTextRangeHashes;
+      lineHashesLoaded |= loadLineHashes;
+
+      for (int i = 0; i < trackables.length; i++) {
+        if (matched[i]) {
+          continue;
+        }
+        if (loadTextRangeHashes) {
+          textRangeHashes[i] = toLong(trackables[i].getTextRangeHash());
+        }
+        if (loadLineHashes) {
+          lineHashes[i] = toLong(trackables[i].getLineHash());
+        }
+        hashes[i] = computeHash(stage, i);
+      }
     }
-  }
-
-  private static class LineAndLineHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer line;
-    private final Integer lineHash;
 
-    LineAndLineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.line = trackable.getLine();
-      this.lineHash = trackable.getLineHash();
+    private static boolean usesTextRangeHash(int stage) {
+      return stage == LINE_AND_TEXT_RANGE_HASH || stage == TEXT_RANGE_HASH_AND_MESSAGE || stage == TEXT_RANGE_HASH;
     }
 
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null) {
-        return false;
-      }
-      if (this.getClass() != o.getClass()) {
-        return false;
-      }
-      LineAndLineHashKey that = (LineAndLineHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && Objects.equals(lineHash, that.lineHash)
-        && ruleKey.equals(that.ruleKey);
+    private static boolean usesLineHash(int stage) {
+      return stage == LINE_AND_LINE_HASH || stage == LINE_HASH;
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (lineHash != null ? lineHash.hashCode() : 0);
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
+    private long computeHash(int stage, int i) {
+      long rule = Objects.hashCode(ruleKeys[i]);
+      switch (stage) {
+        case LINE_AND_TEXT_RANGE_HASH:
+          return mix(mix(rule, lines[i]), textRangeHashes[i]);
+        case TEXT_RANGE_HASH_AND_MESSAGE:
+          return mix(mix(rule, Objects.hashCode(messages[i])), textRangeHashes[i]);
+        case LINE_AND_MESSAGE:
+          return mix(mix(rule, Objects.hashCode(messages[i])), lines[i]);
+        case TEXT_RANGE_HASH:
+          return mix(rule, textRangeHashes[i]);
+        case LINE_AND_LINE_HASH:
+          return mix(mix(rule, lines[i]), lineHashes[i]);
+        case LINE_HASH:
+          return mix(rule, lineHashes[i]);
+        case SERVER_ISSUE_KEY:
+          return serverIssueKeys[i] != null ? mix(0, serverIssueKeys[i].hashCode()) : 0;
+        default:
+          throw new IllegalArgumentException("Invalid stage: " + stage);
+      }
     }
-  }
-
-  private enum LineAndLineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
 
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new LineAndLineHashKey(t);
+    private static long mix(long hash, long value) {
+      long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+      return h ^ (h >>> 32);
     }
-  }
-
-  private static class LineHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer lineHash;
 
-    LineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.lineHash = trackable.getLineHash();
+    private long hash(int i) {
+      return hashes[i];
     }
 
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null) {
-        return false;
-      }
-      if (this.getClass() != o.getClass()) {
-        return false;
+    /**
+     * Cost of pairing two issues having the same search key: issues with different messages cost more than issues with the same
+     * message, whatever their distance.
+     */
+    private long cost(int i, SearchKeys other, int j) {
+      long distance;
+      if (lines[i] == NULL || other.lines[j] == NULL) {
+        distance = lines[i] == other.lines[j] ? 0 : MAX_DISTANCE;
+      } else {
+        distance = Math.min(Math.abs(lines[i] - other.lines[j]), MAX_DISTANCE);
       }
-      LineHashKey that = (LineHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(lineHash, that.lineHash)
-        && ruleKey.equals(that.ruleKey);
+      return Objects.equals(messages[i], other.messages[j]) ? distance : (MAX_DISTANCE + 1 + distance);
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (lineHash != null ? lineHash.hashCode() : 0);
-      return result;
+    /**
+     * Issues without server issue key never match in the last stage.
+     */
+    private boolean isSearchable(int stage, int i) {
+      return stage != SERVER_ISSUE_KEY || !SonarLintUtils.isBlank(serverIssueKeys[i]);
     }
-  }
 
-  private enum LineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new LineHashKey(t);
+    /**
+     * Same as comparing the search keys of the stage with equals(), starting with the most discriminant field.
+     */
+    private boolean sameKey(int stage, int i, SearchKeys other, int j) {
+      switch (stage) {
+        case LINE_AND_TEXT_RANGE_HASH:
+          return lines[i] == other.lines[j] && textRangeHashes[i] == other.textRangeHashes[j] && Objects.equals(ruleKeys[i], other.ruleKeys[j]);
+        case TEXT_RANGE_HASH_AND_MESSAGE:
+          return textRangeHashes[i] == other.textRangeHashes[j] && Objects.equals(messages[i], other.messages[j]) && Objects.equals(ruleKeys[i], other.ruleKeys[j]);
+        case LINE_AND_MESSAGE:
+          return lines[i] == other.lines[j] && Objects.equals(messages[i], other.messages[j]) && Objects.equals(ruleKeys[i], other.ruleKeys[j]);
+        case TEXT_RANGE_HASH:
+          return textRangeHashes[i] == other.textRangeHashes[j] && Objects.equals(ruleKeys[i], other.ruleKeys[j]);
+        case LINE_AND_LINE_HASH:
+          return lines[i] == other.lines[j] && lineHashes[i] == other.lineHashes[j] && Objects.equals(ruleKeys[i], other.ruleKeys[j]);
+        case LINE_HASH:
+          return lineHashes[i] == other.lineHashes[j] && Objects.equals(ruleKeys[i], other.ruleKeys[j]);
+        case SERVER_ISSUE_KEY:
+          return serverIssueKeys[i].equals(other.serverIssueKeys[j]);
+        default:
+          throw new IllegalArgumentException("Invalid stage: " + stage);
+      }
     }
   }
 
-  private static class TextRangeHashAndMessageKey implements SearchKey {
-    private final String ruleKey;
-    private final String message;
-    private final Integer textRangeHash;
-
-    TextRangeHashAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.textRangeHash = trackable.getTextRangeHash();
-    }
-
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
+  /**
+   * Raw and base issues of a bucket, and the pairs chosen between them. Pairs are chosen greedily by increasing cost, which takes
+   * O(k log k) for k candidate pairs, where k is bounded by the square of {@link #MAX_CANDIDATES}.
+   */
+  private static final class Bucket {
+    private static final int INDEX_BITS = 4;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+
+    private final int[] raws = new int[MAX_CANDIDATES];
+    private final int[] bases = new int[MAX_CANDIDATES];
+    private final int[] pairedRaws = new int[MAX_CANDIDATES];
+    private final int[] pairedBases = new int[MAX_CANDIDATES];
+    private final long[] pairs = new long[MAX_CANDIDATES * MAX_CANDIDATES];
+    private final boolean[] rawPaired = new boolean[MAX_CANDIDATES];
+    private final boolean[] basePaired = new boolean[MAX_CANDIDATES];
+    private int numRaws;
+    private int numBases;
+
+    /**
+     * @return the number of pairs, stored in {@link #pairedRaws} and {@link #pairedBases}
+     */
+    private int assign(SearchKeys rawKeys, SearchKeys baseKeys) {
+      if (numRaws == 1 && numBases == 1) {
+        // most common case, nothing to choose
+        pairedRaws[0] = raws[0];
+        pairedBases[0] = bases[0];
+        return 1;
       }
-      if (o == null) {
-        return false;
+      int numPairs = 0;
+      for (int r = 0; r < numRaws; r++) {
+        rawPaired[r] = false;
+        for (int b = 0; b < numBases; b++) {
+          // the cost is in the high bits, and the positions of the issues break ties in their original order
+          pairs[numPairs++] = (rawKeys.cost(raws[r], baseKeys, bases[b]) << (2 * INDEX_BITS)) | (r << INDEX_BITS) | b;
+        }
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
+      Arrays.fill(basePaired, 0, numBases, false);
+      Arrays.sort(pairs, 0, numPairs);
+
+      int expected = Math.min(numRaws, numBases);
+      int paired = 0;
+      for (int p = 0; p < numPairs && paired < expected; p++) {
+        int r = (int) (pairs[p] >>> INDEX_BITS) & INDEX_MASK;
+        int b = (int) pairs[p] & INDEX_MASK;
+        if (!rawPaired[r] && !basePaired[b]) {
+          rawPaired[r] = true;
+          basePaired[b] = true;
+          pairedRaws[paired] = raws[r];
+          pairedBases[paired] = bases[b];
+          paired++;
+        }
       }
-      TextRangeHashAndMessageKey that = (TextRangeHashAndMessageKey) o;
-      // start with most discriminant field
-      return Objects.equals(textRangeHash, that.textRangeHash)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
-    }
-
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + (textRangeHash != null ? textRangeHash.hashCode() : 0);
-      return result;
+      return paired;
     }
   }
 
-  private enum TextRangeHashAndMessageKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new TextRangeHashAndMessageKey(t);
+  /**
+   * Open-addressing table from the hash of a search key to the chain of base issues with that hash, in their original order.
+   * Raw issues are only indexed when there are base issues with the same hash, and they are only chained, in their original
+   * order, if there are several of them for some hash. The arrays are allocated once and reused by all stages. Matched issues are
+   * unlinked from the chains lazily, when they are found while walking a chain.
+   */
+  private static final class IssueIndex {
+    private final int mask;
+    private final boolean[] used;
+    private final long[] slotHashes;
+    private final int[] heads;
+    private final int[] tails;
+    private final int[] next;
+    // slot of each raw issue, or -1 if it is not indexed
+    private final int[] rawSlots;
+    private final int[] rawCounts;
+    private final int[] rawHeads;
+    private final int[] rawTails;
+    private final int[] rawNext;
+    private boolean rawsChained;
+
+    private IssueIndex(int numBases, int numRaws) {
+      int capacity = Integer.highestOneBit(Math.max(1, numBases) * 2 - 1) << 1;
+      mask = capacity - 1;
+      used = new boolean[capacity];
+      slotHashes = new long[capacity];
+      heads = new int[capacity];
+      tails = new int[capacity];
+      next = new int[numBases];
+      rawSlots = new int[numRaws];
+      rawCounts = new int[capacity];
+      rawHeads = new int[capacity];
+      rawTails = new int[capacity];
+      rawNext = new int[numRaws];
     }
-  }
-
-  private static class LineAndMessageKey implements SearchKey {
-    private final String ruleKey;
-    private final String message;
-    private final Integer line;
 
-    LineAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.line = trackable.getLine();
+    private void clear() {
+      Arrays.fill(used, false);
+      Arrays.fill(rawSlots, -1);
+      rawsChained = false;
     }
 
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null) {
-        return false;
-      }
-      if (this.getClass() != o.getClass()) {
-        return false;
+    private int slot(long hash) {
+      int slot = (int) hash & mask;
+      while (used[slot] && slotHashes[slot] != hash) {
+        slot = (slot + 1) & mask;
       }
-      LineAndMessageKey that = (LineAndMessageKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
+      return slot;
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
-    }
-  }
-
-  private enum LineAndMessageKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new LineAndMessageKey(t);
+    private void addBase(long hash, int base) {
+      int slot = slot(hash);
+      next[base] = -1;
+      if (!used[slot]) {
+        used[slot] = true;
+        slotHashes[slot] = hash;
+        heads[slot] = base;
+        rawCounts[slot] = 0;
+      } else {
+        next[tails[slot]] = base;
+      }
+      tails[slot] = base;
     }
-  }
 
-  private static class TextRangeHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer textRangeHash;
-
-    TextRangeHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.textRangeHash = trackable.getTextRangeHash();
+    private void addRaw(long hash, int raw) {
+      int slot = slot(hash);
+      if (used[slot]) {
+        rawSlots[raw] = slot;
+        rawCounts[slot]++;
+      }
     }
 
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null) {
+    /**
+     * Collects in the bucket the first unmatched base and raw issues having the same search key as the given raw issue.
+     *
+     * @return false if the raw issue is not indexed in this stage, or if there is no base issue to match
+     */
+    private boolean collect(int stage, SearchKeys rawKeys, int raw, SearchKeys baseKeys, boolean[] rawMatched, boolean[] baseMatched,
+      Bucket bucket) {
+      int slot = rawSlots[raw];
+      if (slot < 0) {
         return false;
       }
-      if (this.getClass() != o.getClass()) {
+      bucket.numBases = 0;
+      int previous = -1;
+      for (int base = heads[slot]; base >= 0 && bucket.numBases < MAX_CANDIDATES; base = next[base]) {
+        if (baseMatched[base]) {
+          unlink(heads, tails, next, slot, previous, base);
+        } else {
+          previous = base;
+          if (rawKeys.sameKey(stage, raw, baseKeys, base)) {
+            bucket.bases[bucket.numBases++] = base;
+          }
+        }
+      }
+      if (bucket.numBases == 0) {
         return false;
       }
-      TextRangeHashKey that = (TextRangeHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(textRangeHash, that.textRangeHash)
-        && ruleKey.equals(that.ruleKey);
-    }
-
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (textRangeHash != null ? textRangeHash.hashCode() : 0);
-      return result;
-    }
-  }
-
-  private enum TextRangeHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new TextRangeHashKey(t);
-    }
-  }
 
-  private static class ServerIssueSearchKey implements SearchKey {
-    private final String serverIssueKey;
-
-    ServerIssueSearchKey(Trackable trackable) {
-      serverIssueKey = trackable.getServerIssueKey();
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
+      bucket.numRaws = 0;
+      if (rawCounts[slot] == 1) {
+        // most common case, no other raw issue with the same hash
+        bucket.raws[bucket.numRaws++] = raw;
         return true;
       }
-      if (o == null || getClass() != o.getClass()) {
-        return false;
+      chainRaws(rawMatched);
+      previous = -1;
+      for (int other = rawHeads[slot]; other >= 0 && bucket.numRaws < MAX_CANDIDATES; other = rawNext[other]) {
+        if (rawMatched[other]) {
+          unlink(rawHeads, rawTails, rawNext, slot, previous, other);
+        } else {
+          previous = other;
+          if (other == raw || rawKeys.sameKey(stage, raw, rawKeys, other)) {
+            bucket.raws[bucket.numRaws++] = other;
+          }
+        }
       }
-
-      ServerIssueSearchKey that = (ServerIssueSearchKey) o;
-
-      return !SonarLintUtils.isBlank(serverIssueKey) && !SonarLintUtils.isBlank(that.serverIssueKey) && serverIssueKey.equals(that.serverIssueKey);
+      return true;
     }
 
-    @Override
-    public int hashCode() {
-      return serverIssueKey != null ? serverIssueKey.hashCode() : 0;
+    /**
+     * Chains the unmatched raw issues of each slot, the first time it is needed in a stage.
+     */
+    private void chainRaws(boolean[] rawMatched) {
+      if (rawsChained) {
+        return;
+      }
+      rawsChained = true;
+      Arrays.fill(rawHeads, -1);
+      for (int raw = 0; raw < rawSlots.length; raw++) {
+        int slot = rawSlots[raw];
+        if (slot < 0 || rawMatched[raw]) {
+          continue;
+        }
+        rawNext[raw] = -1;
+        if (rawHeads[slot] < 0) {
+          rawHeads[slot] = raw;
+        } else {
+          rawNext[rawTails[slot]] = raw;
+        }
+        rawTails[slot] = raw;
+      }
     }
-  }
 
-  private enum ServerIssueSearchKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey apply(Trackable trackable) {
-      return new ServerIssueSearchKey(trackable);
+    private static void unlink(int[] heads, int[] tails, int[] next, int slot, int previous, int entry) {
+      if (previous < 0) {
+        heads[slot] = next[entry];
+      } else {
+        next[previous] = next[entry];
+      }
+      if (tails[slot] == entry) {
+        tails[slot] = previous;
+      }
     }
   }
 }
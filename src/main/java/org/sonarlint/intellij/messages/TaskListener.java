@@ -30,6 +30,12 @@ public interface TaskListener {
 
   void started(SonarLintJob job);
 
+  /**
+   * Called before {@link #ended(SonarLintJob)}, only if the issues of all the files of the job were processed: not for jobs that
+   * were canceled, failed or skipped.
+   */
+  void completed(SonarLintJob job);
+
   void ended(SonarLintJob job);
 
   abstract class Adapter implements TaskListener {
@@ -38,6 +44,11 @@ public interface TaskListener {
       // can be optionally implemented
     }
 
+    @Override
+    public void completed(SonarLintJob job) {
+      // can be optionally implemented
+    }
+
     @Override
     public void ended(SonarLintJob job) {
       // can be optionally implemented
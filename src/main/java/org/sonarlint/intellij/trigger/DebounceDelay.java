@@ -0,0 +1,68 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.trigger;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Delay between the last edit of a file and its automatic analysis.
+ * It starts from an initial delay, and then follows the recent analysis durations and pauses between edits:
+ * <ul>
+ * <li>analyses triggered sooner than they take to run would be canceled by the next edits most of the time</li>
+ * <li>analyses triggered during short pauses while typing would be outdated by the next keystrokes</li>
+ * </ul>
+ * The delay is kept between a quarter and four times the initial delay.
+ */
+@ThreadSafe
+class DebounceDelay {
+  private static final double SMOOTHING = 0.2;
+  private static final int TYPING_PAUSE_FACTOR = 3;
+
+  private final long minMs;
+  private final long maxMs;
+  private double analysisMs;
+  private double typingPauseMs;
+
+  DebounceDelay(long initialMs) {
+    this.minMs = initialMs / 4;
+    this.maxMs = initialMs * 4;
+    this.analysisMs = initialMs;
+    this.typingPauseMs = (double) initialMs / TYPING_PAUSE_FACTOR;
+  }
+
+  /**
+   * Time between two edits of a file, while it was waiting to be analyzed.
+   */
+  synchronized void typed(long pauseMs) {
+    typingPauseMs += SMOOTHING * (pauseMs - typingPauseMs);
+  }
+
+  /**
+   * Time between the submission of an analysis triggered by edits and its end, for analyses that completed.
+   */
+  synchronized void analyzed(long durationMs) {
+    analysisMs += SMOOTHING * (durationMs - analysisMs);
+  }
+
+  synchronized long get() {
+    long delay = (long) Math.max(analysisMs, TYPING_PAUSE_FACTOR * typingPauseMs);
+    return Math.min(maxMs, Math.max(minMs, delay));
+  }
+}
@@ -19,6 +19,7 @@
  */
 package org.sonarlint.intellij.trigger;
 
+import com.intellij.concurrency.JobScheduler;
 import com.intellij.openapi.components.AbstractProjectComponent;
 import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.editor.event.DocumentEvent;
@@ -28,49 +29,62 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.concurrent.ThreadSafe;
 import org.sonarlint.intellij.analysis.SonarLintJob;
+import org.sonarlint.intellij.analysis.SonarLintJobManager;
 import org.sonarlint.intellij.config.global.SonarLintGlobalSettings;
 import org.sonarlint.intellij.messages.TaskListener;
 import org.sonarlint.intellij.util.SonarLintAppUtils;
 
+/**
+ * Triggers the analysis of a file once it wasn't edited for some time.
+ * Each edited file has a timer in the shared scheduler of the application. When it expires, the timer is rescheduled if the file
+ * was edited in the meantime, so that there is no timer for each keystroke, and no timer at all while nothing is edited.
+ */
 @ThreadSafe
 public class SonarDocumentListener extends AbstractProjectComponent implements DocumentListener {
   private static final int DEFAULT_TIMER_MS = 2000;
 
   private final SonarLintGlobalSettings globalSettings;
   private final SonarLintSubmitter submitter;
+  private final SonarLintJobManager jobManager;
   private final EditorFactory editorFactory;
   private final SonarLintAppUtils utils;
   private final FileDocumentManager docManager;
+  private final ScheduledExecutorService scheduler;
 
   // entries in this map mean that the file is "dirty"
   private final Map<VirtualFile, Long> eventMap;
-  private final EventWatcher watcher;
-  private final int timerMs;
+  private final Map<VirtualFile, ScheduledFuture<?>> timers;
+  private final DebounceDelay delay;
 
   public SonarDocumentListener(Project project, SonarLintGlobalSettings globalSettings, SonarLintSubmitter submitter,
-    EditorFactory editorFactory, SonarLintAppUtils utils, FileDocumentManager docManager) {
-    this(project, globalSettings, submitter, editorFactory, utils, docManager, DEFAULT_TIMER_MS);
+    SonarLintJobManager jobManager, EditorFactory editorFactory, SonarLintAppUtils utils, FileDocumentManager docManager) {
+    this(project, globalSettings, submitter, jobManager, editorFactory, utils, docManager, DEFAULT_TIMER_MS);
   }
 
   /**
    * For unit testing (pico container won't be able to inject timerMs)
    */
   public SonarDocumentListener(Project project, SonarLintGlobalSettings globalSettings, SonarLintSubmitter submitter,
-    EditorFactory editorFactory, SonarLintAppUtils utils, FileDocumentManager docManager, int timerMs) {
+    SonarLintJobManager jobManager, EditorFactory editorFactory, SonarLintAppUtils utils, FileDocumentManager docManager, int timerMs) {
     super(project);
     this.submitter = submitter;
+    this.jobManager = jobManager;
     this.editorFactory = editorFactory;
     this.utils = utils;
     this.docManager = docManager;
+    this.scheduler = JobScheduler.getScheduler();
     this.eventMap = new ConcurrentHashMap<>();
+    this.timers = new ConcurrentHashMap<>();
     this.globalSettings = globalSettings;
-    this.watcher = new EventWatcher();
-    this.timerMs = timerMs;
+    this.delay = new DebounceDelay(timerMs);
   }
 
   @Override
@@ -81,8 +95,14 @@ public class SonarDocumentListener extends AbstractProjectComponent implements D
         @Override public void started(SonarLintJob job) {
           removeFiles(job.allFiles());
         }
+
+        @Override public void completed(SonarLintJob job) {
+          // canceled and skipped analyses say nothing about how long an analysis takes
+          if (job.trigger() == TriggerType.EDITOR_CHANGE) {
+            delay.analyzed(System.currentTimeMillis() - job.creationTime());
+          }
+        }
       });
-    watcher.start();
     editorFactory.getEventMulticaster().addDocumentListener(this);
   }
 
@@ -105,7 +125,13 @@ public class SonarDocumentListener extends AbstractProjectComponent implements D
       return;
     }
 
-    eventMap.put(file, System.currentTimeMillis());
+    long now = System.currentTimeMillis();
+    Long previous = eventMap.put(file, now);
+    if (previous != null) {
+      delay.typed(now - previous);
+    }
+    timers.computeIfAbsent(file, f -> schedule(f, delay.get()));
+    jobManager.cancelOutdatedAnalysis(file);
   }
 
   /**
@@ -119,62 +145,55 @@ public class SonarDocumentListener extends AbstractProjectComponent implements D
     return Collections.unmodifiableMap(eventMap);
   }
 
-  private class EventWatcher extends Thread {
-    private boolean stop = false;
-
-    EventWatcher() {
-      this.setDaemon(true);
-      this.setName("sonarlint-auto-trigger-" + myProject.getName());
-    }
+  long getDelay() {
+    return delay.get();
+  }
 
-    public void stopWatcher() {
-      stop = true;
-      this.interrupt();
-    }
+  private ScheduledFuture<?> schedule(VirtualFile file, long delayMs) {
+    return scheduler.schedule(() -> checkTimer(file), delayMs, TimeUnit.MILLISECONDS);
+  }
 
-    @Override
-    public void run() {
-      while (!stop) {
-        checkTimers();
-        try {
-          Thread.sleep(200);
-        } catch (InterruptedException e) {
-          // continue until stop flag is set
-        }
+  /**
+   * Called when the timer of a file expires: the file is either analyzed, or its timer rescheduled until the delay passed since its
+   * last edit.
+   */
+  private void checkTimer(VirtualFile file) {
+    AtomicBoolean trigger = new AtomicBoolean(false);
+    timers.compute(file, (f, timer) -> {
+      Long lastEdit = eventMap.get(f);
+      if (lastEdit == null) {
+        // already analyzed
+        return null;
       }
-    }
-
-    private void triggerFile(VirtualFile file) {
-      if (utils.isOpenFile(myProject, file) && globalSettings.isAutoTrigger()) {
-        submitter.submitFiles(Collections.singleton(file), TriggerType.EDITOR_CHANGE, true);
+      if (!f.isValid()) {
+        eventMap.remove(f, lastEdit);
+        return null;
+      }
+      long remaining = lastEdit + delay.get() - System.currentTimeMillis();
+      if (remaining > 0) {
+        return schedule(f, remaining);
       }
+      // keep the file dirty if it was edited again in the meantime
+      eventMap.remove(f, lastEdit);
+      trigger.set(true);
+      return null;
+    });
+    if (trigger.get()) {
+      triggerFile(file);
     }
+  }
 
-    private void checkTimers() {
-      long t = System.currentTimeMillis();
-
-      Iterator<Map.Entry<VirtualFile, Long>> it = eventMap.entrySet().iterator();
-      while (it.hasNext()) {
-        Map.Entry<VirtualFile, Long> e = it.next();
-        if (!e.getKey().isValid()) {
-          it.remove();
-          continue;
-        }
-        // don't trigger if file currently has errors?
-        // filter files opened in the editor
-        // use some heuristics based on analysis time or average pauses? Or make it configurable?
-        if (e.getValue() + timerMs < t) {
-          triggerFile(e.getKey());
-          it.remove();
-        }
-      }
+  private void triggerFile(VirtualFile file) {
+    if (utils.isOpenFile(myProject, file) && globalSettings.isAutoTrigger()) {
+      submitter.submitFiles(Collections.singleton(file), TriggerType.EDITOR_CHANGE, true);
     }
   }
 
   @Override
   public void disposeComponent() {
     editorFactory.getEventMulticaster().removeDocumentListener(this);
-    watcher.stopWatcher();
+    timers.values().forEach(t -> t.cancel(false));
+    timers.clear();
     eventMap.clear();
   }
 }
@@ -220,7 +220,7 @@ abstract class AbstractIssuesPanel extends SimpleToolWindowPanel implements Occu
     RangeMarker range = node.issue().getRange();
     int startOffset = (range != null) ? range.getStartOffset() : 0;
     return new OccurenceNavigator.OccurenceInfo(
-      new OpenFileDescriptor(project, node.issue().psiFile().getVirtualFile(), startOffset),
+      new OpenFileDescriptor(project, node.issue().file(), startOffset),
       -1,
       -1);
   }
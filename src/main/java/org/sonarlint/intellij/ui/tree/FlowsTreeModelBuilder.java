@@ -51,7 +51,8 @@ public class FlowsTreeModelBuilder {
     return flows.stream().flatMap(f -> f.locations().stream()).findAny().isPresent();
   }
 
-  public void setFlows(List<LiveIssue.Flow> flows, @Nullable RangeMarker rangeMarker, @Nullable String message) {
+  public void setFlows(List<LiveIssue.Flow> issueFlows, @Nullable RangeMarker rangeMarker, @Nullable String message) {
+    List<LiveIssue.Flow> flows = LiveIssue.Flow.promote(issueFlows);
     if (rangeMarker == null || !containsLocations(flows)) {
       clearFlows();
       return;
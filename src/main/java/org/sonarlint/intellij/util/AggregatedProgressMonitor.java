@@ -0,0 +1,134 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.util;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import javax.annotation.concurrent.ThreadSafe;
+import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
+
+/**
+ * Reports the progress of several analyses running at the same time to the indicator of their task.
+ * The fraction shown is the average of the fractions reported by each analysis, and the text is the last message received.
+ * Canceling the indicator, or calling {@link #cancel()}, stops all the analyses.
+ */
+@ThreadSafe
+public class AggregatedProgressMonitor {
+  private final ProgressIndicator indicator;
+  private final float[] fractions;
+  private int nonCancelableSections = 0;
+  private volatile boolean canceled = false;
+
+  public AggregatedProgressMonitor(ProgressIndicator indicator, int parts) {
+    this.indicator = indicator;
+    this.fractions = new float[parts];
+  }
+
+  /**
+   * Monitor to give to the analysis with the given index, between 0 and the number of parts (excluded).
+   */
+  public ProgressMonitor part(int index) {
+    return new Part(index);
+  }
+
+  /**
+   * Stops all the analyses, for example because one of them failed.
+   */
+  public void cancel() {
+    canceled = true;
+  }
+
+  public boolean isCanceled() {
+    return canceled || indicator.isCanceled();
+  }
+
+  /**
+   * Marks the analysis with the given index as complete, whatever fraction it reported last.
+   */
+  public void done(int index) {
+    setFraction(index, 1.0f);
+  }
+
+  private synchronized void setFraction(int index, float fraction) {
+    fractions[index] = fraction;
+    float sum = 0;
+    for (float f : fractions) {
+      sum += f;
+    }
+    indicator.setIndeterminate(false);
+    indicator.setFraction(sum / fractions.length);
+  }
+
+  /**
+   * Non-cancelable sections of the analyses can overlap, but the indicator doesn't support nested sections. Only the first one
+   * to start and the last one to finish are forwarded to it.
+   */
+  private synchronized void startNonCancelableSection() {
+    if (nonCancelableSections++ == 0) {
+      indicator.startNonCancelableSection();
+    }
+  }
+
+  private synchronized void finishNonCancelableSection() {
+    if (nonCancelableSections > 0 && --nonCancelableSections == 0) {
+      indicator.finishNonCancelableSection();
+    }
+  }
+
+  private class Part extends ProgressMonitor {
+    private final int index;
+
+    private Part(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return AggregatedProgressMonitor.this.isCanceled();
+    }
+
+    @Override
+    public void setMessage(String msg) {
+      indicator.setText(msg);
+    }
+
+    @Override
+    public void setFraction(float fraction) {
+      AggregatedProgressMonitor.this.setFraction(index, fraction);
+    }
+
+    /**
+     * The indicator stays indeterminate until an analysis reports a fraction, since the others might not report any.
+     */
+    @Override
+    public void setIndeterminate(boolean indeterminate) {
+      // ignored
+    }
+
+    @Override
+    public void startNonCancelableSection() {
+      AggregatedProgressMonitor.this.startNonCancelableSection();
+    }
+
+    @Override
+    public void finishNonCancelableSection() {
+      AggregatedProgressMonitor.this.finishNonCancelableSection();
+    }
+  }
+}
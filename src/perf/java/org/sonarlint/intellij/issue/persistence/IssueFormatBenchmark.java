@@ -0,0 +1,82 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonarlint.intellij.perf.SyntheticIssues;
+import org.sonarlint.intellij.proto.Sonarlint;
+
+/**
+ * Compares the cost of reading and writing the issues of a file in both format versions of the store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class IssueFormatBenchmark {
+  @Param({"10", "100", "1000"})
+  public int issueCount;
+
+  private Sonarlint.Issues issues;
+  private ByteString v1;
+  private ByteString v2;
+
+  @Setup
+  public void setUp() {
+    issues = SyntheticIssues.protoIssues(issueCount, 42);
+    v1 = issues.toByteString();
+    v2 = IssuePersistence.compact(issues).toByteString();
+  }
+
+  @Benchmark
+  public Sonarlint.Issues readV1() throws InvalidProtocolBufferException {
+    return IssuePersistence.transform(v1);
+  }
+
+  @Benchmark
+  public Sonarlint.Issues readV2() throws InvalidProtocolBufferException {
+    return IssuePersistence.transform(v2);
+  }
+
+  @Benchmark
+  public ByteString writeV1() {
+    return issues.toByteString();
+  }
+
+  @Benchmark
+  public ByteString writeV2() {
+    return IssuePersistence.compact(issues).toByteString();
+  }
+}
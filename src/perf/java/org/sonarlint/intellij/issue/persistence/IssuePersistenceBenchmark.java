@@ -0,0 +1,105 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import com.intellij.openapi.project.Project;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
+import org.sonarlint.intellij.issue.tracking.Trackable;
+import org.sonarlint.intellij.perf.Stubs;
+import org.sonarlint.intellij.perf.SyntheticIssues;
+import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class IssuePersistenceBenchmark {
+  @Param({"100", "1000"})
+  public int fileCount;
+
+  @Param({"10", "100"})
+  public int issuesPerFile;
+
+  @Param({"false", "true"})
+  public boolean segmented;
+
+  private Path baseDir;
+  private IssuePersistence persistence;
+  private Map<String, List<Trackable>> issuesByKey;
+
+  @Setup(Level.Iteration)
+  public void setUp() throws IOException {
+    baseDir = Files.createTempDirectory("sonarlint-perf");
+    Project project = Stubs.project("perf", Stubs.file(baseDir));
+    SonarLintProjectSettings settings = new SonarLintProjectSettings();
+    settings.setSegmentedIssueStoreEnabled(segmented);
+    persistence = new IssuePersistence(project, settings);
+
+    issuesByKey = new LinkedHashMap<>();
+    for (int i = 0; i < fileCount; i++) {
+      issuesByKey.put("src/main/java/org/example/module" + (i % 20) + "/File" + i + ".java",
+        SyntheticIssues.trackables(issuesPerFile, 0.0, i).bases());
+    }
+    persistence.saveAll(issuesByKey);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    persistence.disposeComponent();
+    FileUtils.deleteRecursively(baseDir);
+  }
+
+  @Benchmark
+  public void saveAll() throws IOException {
+    persistence.saveAll(issuesByKey);
+  }
+
+  @Benchmark
+  public void readAll(Blackhole blackhole) throws IOException {
+    for (String key : issuesByKey.keySet()) {
+      Collection<?> issues = persistence.read(key);
+      blackhole.consume(issues);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StringStoreIndexBenchmark {
+  @Param({"100", "10000"})
+  public int fileCount;
+
+  private Path basePath;
+  private Map<String, Path> pathByKey;
+  private Map<String, Path> movedPathByKey;
+  private StringStoreIndex index;
+  private int counter;
+
+  @Setup(Level.Iteration)
+  public void setUp() throws IOException {
+    basePath = Files.createTempDirectory("sonarlint-perf");
+    pathByKey = new LinkedHashMap<>();
+    movedPathByKey = new LinkedHashMap<>();
+    for (int i = 0; i < fileCount; i++) {
+      String key = key(i);
+      pathByKey.put(key, basePath.resolve(Paths.get("ab", "cdef" + i)));
+      movedPathByKey.put(key, basePath.resolve(Paths.get("cd", "efab" + i)));
+    }
+    index = new StringStoreIndex(basePath);
+    index.saveAll(pathByKey);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    FileUtils.deleteRecursively(basePath);
+  }
+
+  private static String key(int i) {
+    return "src/main/java/org/example/module" + (i % 20) + "/File" + i + ".java";
+  }
+
+  /**
+   * Each invocation changes the mapped path of one key, otherwise nothing would be written.
+   */
+  @Benchmark
+  public void save() {
+    int i = counter++;
+    Map<String, Path> paths = (i / fileCount) % 2 == 0 ? movedPathByKey : pathByKey;
+    String key = key(i % fileCount);
+    index.save(key, paths.get(key));
+  }
+
+  @Benchmark
+  public void saveAll() {
+    index.saveAll(counter++ % 2 == 0 ? movedPathByKey : pathByKey);
+  }
+
+  @Benchmark
+  public int reload() {
+    return new StringStoreIndex(basePath).keys().size();
+  }
+}
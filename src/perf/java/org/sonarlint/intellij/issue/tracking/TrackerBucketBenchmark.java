@@ -0,0 +1,67 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.tracking;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonarlint.intellij.perf.SyntheticIssues;
+
+/**
+ * Tracks issues sharing their search keys. Buckets of one issue are the common case, where choosing the best candidate must not
+ * cost more than taking the first one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TrackerBucketBenchmark {
+  @Param({"1000", "10000"})
+  public int issueCount;
+
+  @Param({"1", "4", "16", "64"})
+  public int bucketSize;
+
+  private Input<Trackable> raws;
+  private Input<Trackable> bases;
+
+  @Setup
+  public void setUp() {
+    SyntheticIssues.Pair pair = SyntheticIssues.bucketedTrackables(issueCount, bucketSize, 42);
+    raws = pair::raws;
+    bases = pair::bases;
+  }
+
+  @Benchmark
+  public Tracking<Trackable, Trackable> track() {
+    return new Tracker<>().track(raws, bases);
+  }
+}
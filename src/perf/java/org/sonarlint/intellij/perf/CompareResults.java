@@ -0,0 +1,118 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.perf;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Prints the difference between two JMH result files in JSON format, typically the baseline and the results of the last run.
+ * Differences above {@link #THRESHOLD_PERCENT} in the wrong direction are reported as regressions.
+ */
+public final class CompareResults {
+  private static final double THRESHOLD_PERCENT = 10.0;
+
+  private CompareResults() {
+    // only static methods
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: CompareResults <baseline.json> <results.json>");
+      System.exit(2);
+    }
+    Map<String, Result> baseline = read(Paths.get(args[0]));
+    Map<String, Result> current = read(Paths.get(args[1]));
+    if (baseline.isEmpty()) {
+      System.out.println("No baseline recorded in " + args[0] + ", run the perfBaseline task on a reference machine to record one");
+    }
+
+    int regressions = 0;
+    for (Map.Entry<String, Result> e : current.entrySet()) {
+      Result before = baseline.get(e.getKey());
+      Result after = e.getValue();
+      if (before == null) {
+        System.out.println(String.format("%-100s %12s %12.3f %s  (new)", e.getKey(), "-", after.score, after.unit));
+        continue;
+      }
+      double delta = (after.score - before.score) * 100.0 / before.score;
+      boolean regression = after.higherIsBetter ? (delta < -THRESHOLD_PERCENT) : (delta > THRESHOLD_PERCENT);
+      if (regression) {
+        regressions++;
+      }
+      System.out.println(String.format("%-100s %12.3f %12.3f %s %+7.1f%%%s", e.getKey(), before.score, after.score, after.unit, delta,
+        regression ? "  REGRESSION" : ""));
+    }
+    System.out.println(regressions + " regression(s) over " + THRESHOLD_PERCENT + "%");
+  }
+
+  private static Map<String, Result> read(Path path) throws IOException {
+    Map<String, Result> results = new LinkedHashMap<>();
+    if (!path.toFile().exists()) {
+      return results;
+    }
+    try (Reader reader = Files.newBufferedReader(path, UTF_8)) {
+      JsonArray array = new JsonParser().parse(reader).getAsJsonArray();
+      for (JsonElement element : array) {
+        JsonObject benchmark = element.getAsJsonObject();
+        JsonObject metric = benchmark.getAsJsonObject("primaryMetric");
+        String mode = benchmark.get("mode").getAsString();
+        results.put(key(benchmark), new Result(metric.get("score").getAsDouble(), metric.get("scoreUnit").getAsString(), "thrpt".equals(mode)));
+      }
+    }
+    return results;
+  }
+
+  private static String key(JsonObject benchmark) {
+    StringBuilder key = new StringBuilder(benchmark.get("benchmark").getAsString());
+    if (benchmark.has("params")) {
+      Map<String, String> params = new TreeMap<>();
+      for (Map.Entry<String, JsonElement> p : benchmark.getAsJsonObject("params").entrySet()) {
+        params.put(p.getKey(), p.getValue().getAsString());
+      }
+      key.append(params);
+    }
+    return key.toString();
+  }
+
+  private static class Result {
+    private final double score;
+    private final String unit;
+    private final boolean higherIsBetter;
+
+    Result(double score, String unit, boolean higherIsBetter) {
+      this.score = score;
+      this.unit = unit;
+      this.higherIsBetter = higherIsBetter;
+    }
+  }
+}
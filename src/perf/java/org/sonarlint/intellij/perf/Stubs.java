@@ -0,0 +1,171 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.perf;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Function;
+import javax.annotation.CheckForNull;
+
+/**
+ * Minimal implementations of the IntelliJ interfaces used by the code being measured, so that benchmarks run without an IDE.
+ * Only the methods listed in each stub are implemented, the others return default values.
+ */
+public final class Stubs {
+  private Stubs() {
+    // only static methods
+  }
+
+  public static Project project(String name, VirtualFile baseDir) {
+    return stub(Project.class, method -> {
+      switch (method) {
+        case "getName":
+          return args -> name;
+        case "getBaseDir":
+          return args -> baseDir;
+        case "getBasePath":
+          return args -> baseDir.getPath();
+        case "isDisposed":
+          return args -> false;
+        default:
+          return null;
+      }
+    });
+  }
+
+  /**
+   * A valid file with the given path, which can be a real directory.
+   */
+  public static VirtualFile file(Path path) {
+    return new LightVirtualFile(path.getFileName().toString()) {
+      @Override public String getPath() {
+        return path.toString();
+      }
+
+      @Override public VirtualFile findFileByRelativePath(String relPath) {
+        return this;
+      }
+    };
+  }
+
+  public static Document document(CharSequence text) {
+    int[] lineStarts = lineStarts(text);
+    return stub(Document.class, method -> {
+      switch (method) {
+        case "getText":
+          return args -> args == null || args.length == 0 ? text.toString() : ((TextRange) args[0]).subSequence(text).toString();
+        case "getCharsSequence":
+        case "getImmutableCharSequence":
+          return args -> text;
+        case "getTextLength":
+          return args -> text.length();
+        case "getLineCount":
+          return args -> lineStarts.length;
+        case "getLineNumber":
+          return args -> lineNumber(lineStarts, (int) args[0]);
+        case "getLineStartOffset":
+          return args -> lineStarts[(int) args[0]];
+        case "getLineEndOffset":
+          return args -> lineEnd(text, lineStarts, (int) args[0]);
+        default:
+          return null;
+      }
+    });
+  }
+
+  public static RangeMarker rangeMarker(Document document, int start, int end) {
+    return stub(RangeMarker.class, method -> {
+      switch (method) {
+        case "getDocument":
+          return args -> document;
+        case "getStartOffset":
+          return args -> start;
+        case "getEndOffset":
+          return args -> end;
+        case "isValid":
+          return args -> true;
+        default:
+          return null;
+      }
+    });
+  }
+
+  private static int[] lineStarts(CharSequence text) {
+    int[] starts = new int[16];
+    int count = 1;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = i + 1;
+      }
+    }
+    return Arrays.copyOf(starts, count);
+  }
+
+  private static int lineNumber(int[] lineStarts, int offset) {
+    int idx = Arrays.binarySearch(lineStarts, offset);
+    return idx >= 0 ? idx : (-idx - 2);
+  }
+
+  private static int lineEnd(CharSequence text, int[] lineStarts, int line) {
+    return line + 1 < lineStarts.length ? lineStarts[line + 1] - 1 : text.length();
+  }
+
+  /**
+   * @param implementation Returns the implementation of a method given its name, or null to return a default value
+   */
+  private static <T> T stub(Class<T> type, Function<String, Function<Object[], Object>> implementation) {
+    Object proxy = Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] {type}, (self, method, args) -> {
+      switch (method.getName()) {
+        case "equals":
+          return self == args[0];
+        case "hashCode":
+          return System.identityHashCode(self);
+        case "toString":
+          return type.getSimpleName() + " stub";
+        default:
+          Function<Object[], Object> impl = implementation.apply(method.getName());
+          return impl != null ? impl.apply(args) : defaultValue(method.getReturnType());
+      }
+    });
+    return type.cast(proxy);
+  }
+
+  @CheckForNull
+  private static Object defaultValue(Class<?> type) {
+    if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,343 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.perf;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonarlint.intellij.issue.LiveIssue;
+import org.sonarlint.intellij.issue.tracking.Trackable;
+import org.sonarlint.intellij.proto.Sonarlint;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+/**
+ * Generates issues that look like the ones found by the analyzers: a few rules, repetitive messages and clustered lines.
+ * The generation is deterministic for a given seed, so that results can be compared between runs.
+ */
+public final class SyntheticIssues {
+  private static final String[] SEVERITIES = {"BLOCKER", "CRITICAL", "MAJOR", "MINOR", "INFO"};
+  private static final String[] TYPES = {"BUG", "VULNERABILITY", "CODE_SMELL"};
+  private static final int RULE_COUNT = 50;
+  private static final int LINE_LENGTH = 40;
+
+  private SyntheticIssues() {
+    // only static methods
+  }
+
+  /**
+   * Creates the issues of a previous analysis and the issues of a new analysis, of which approximately {@code matchRatio} can be
+   * matched with the previous ones. The matching issues are spread over all the matching stages of the tracker.
+   */
+  public static Pair trackables(int count, double matchRatio, long seed) {
+    Random random = new Random(seed);
+    List<Trackable> bases = new ArrayList<>(count);
+    List<Trackable> raws = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      SyntheticTrackable base = trackable(random, i);
+      bases.add(base);
+      if (random.nextDouble() < matchRatio) {
+        raws.add(moved(random, base));
+      } else {
+        raws.add(trackable(random, count + i));
+      }
+    }
+    Collections.shuffle(raws, random);
+    return new Pair(raws, bases);
+  }
+
+  /**
+   * Same as {@link #trackables(int, double, long)}, but issues come in buckets of {@code bucketSize} issues having the same rule,
+   * message and text range hash, on close lines. All the issues are matched, after lines were inserted above some of them.
+   */
+  public static Pair bucketedTrackables(int count, int bucketSize, long seed) {
+    Random random = new Random(seed);
+    List<Trackable> bases = new ArrayList<>(count);
+    List<Trackable> raws = new ArrayList<>(count);
+    for (int i = 0; i < count; i += bucketSize) {
+      int line = 1 + random.nextInt(2_000);
+      String ruleKey = ruleKey(random.nextInt(RULE_COUNT));
+      String message = message(ruleKey, i);
+      int textRangeHash = random.nextInt();
+      for (int j = i; j < Math.min(count, i + bucketSize); j++) {
+        SyntheticTrackable base = new SyntheticTrackable(line + random.nextInt(3), message, textRangeHash, random.nextInt(), ruleKey, null);
+        bases.add(base);
+        raws.add(base.copy(base.line + random.nextInt(3), base.message, base.lineHash));
+      }
+    }
+    Collections.shuffle(raws, random);
+    return new Pair(raws, bases);
+  }
+
+  private static SyntheticTrackable trackable(Random random, int id) {
+    int line = 1 + random.nextInt(2_000);
+    String ruleKey = ruleKey(random.nextInt(RULE_COUNT));
+    return new SyntheticTrackable(line, message(ruleKey, id), random.nextInt(), random.nextInt(), ruleKey,
+      random.nextInt(4) == 0 ? ("AX" + id) : null);
+  }
+
+  /**
+   * The same issue, after some change in the file.
+   */
+  private static SyntheticTrackable moved(Random random, SyntheticTrackable base) {
+    switch (random.nextInt(4)) {
+      case 0:
+        // not changed
+        return base.copy(base.line, base.message, base.lineHash);
+      case 1:
+        // lines were inserted above
+        return base.copy(base.line + 1 + random.nextInt(10), base.message, base.lineHash);
+      case 2:
+        // message changed
+        return base.copy(base.line, base.message + " (updated)", base.lineHash);
+      default:
+        // line changed
+        return base.copy(base.line, base.message, random.nextInt());
+    }
+  }
+
+  /**
+   * Issues as stored by {@link org.sonarlint.intellij.issue.persistence.IssuePersistence}.
+   */
+  public static Sonarlint.Issues protoIssues(int count, long seed) {
+    Random random = new Random(seed);
+    Sonarlint.Issues.Builder builder = Sonarlint.Issues.newBuilder();
+    for (int i = 0; i < count; i++) {
+      String ruleKey = ruleKey(random.nextInt(RULE_COUNT));
+      int line = 1 + random.nextInt(2_000);
+      builder.addIssue(Sonarlint.Issues.Issue.newBuilder()
+        .setRuleKey(ruleKey)
+        .setRuleName("Rule " + ruleKey)
+        .setMessage(message(ruleKey, i))
+        .setSeverity(SEVERITIES[random.nextInt(SEVERITIES.length)])
+        .setType(TYPES[random.nextInt(TYPES.length)])
+        .setLine(line)
+        .setStartLineOffset(random.nextInt(LINE_LENGTH / 2))
+        .setEndLine(line)
+        .setEndLineOffset(LINE_LENGTH / 2 + random.nextInt(LINE_LENGTH / 2))
+        .setChecksum(random.nextInt())
+        .setServerIssueKey(random.nextInt(4) == 0 ? ("AX" + i) : "")
+        .setCreationDate(1_500_000_000_000L + random.nextInt(1_000_000))
+        .setResolved(random.nextInt(20) == 0)
+        .setAssignee(random.nextInt(10) == 0 ? "jdoe" : "")
+        .build());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Issues with a range in a document where every line is {@value LINE_LENGTH} characters long.
+   */
+  public static List<LiveIssue> liveIssues(VirtualFile file, Document document, int count, long seed) {
+    Random random = new Random(seed);
+    int lineCount = document.getLineCount();
+    List<LiveIssue> issues = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String ruleKey = ruleKey(random.nextInt(RULE_COUNT));
+      int line = random.nextInt(lineCount);
+      int start = document.getLineStartOffset(line) + random.nextInt(LINE_LENGTH / 2);
+      int end = start + 1 + random.nextInt(LINE_LENGTH / 2);
+      Issue issue = new SyntheticIssue(ruleKey, message(ruleKey, i), SEVERITIES[random.nextInt(SEVERITIES.length)],
+        TYPES[random.nextInt(TYPES.length)], line + 1);
+      issues.add(new LiveIssue(issue, file, Stubs.rangeMarker(document, start, end), Collections.emptyList()));
+    }
+    return issues;
+  }
+
+  /**
+   * A document with {@code lineCount} lines looking like source code.
+   */
+  public static Document document(int lineCount) {
+    StringBuilder text = new StringBuilder(lineCount * (LINE_LENGTH + 1));
+    for (int i = 0; i < lineCount; i++) {
+      String line = "    int field" + i + " = compute(" + (i * 31) + ");";
+      text.append(line);
+      for (int j = line.length(); j < LINE_LENGTH; j++) {
+        text.append(' ');
+      }
+      text.append('\n');
+    }
+    return Stubs.document(text);
+  }
+
+  private static String ruleKey(int idx) {
+    return "java:S" + (100 + idx);
+  }
+
+  private static String message(String ruleKey, int id) {
+    // most messages only depend on the rule
+    return id % 5 == 0 ? ("Rename \"field" + id + "\" to match the regular expression '^[a-z][a-zA-Z0-9]*$'.")
+      : ("Fix the issue reported by rule " + ruleKey + ".");
+  }
+
+  public static class Pair {
+    private final List<Trackable> raws;
+    private final List<Trackable> bases;
+
+    Pair(List<Trackable> raws, List<Trackable> bases) {
+      this.raws = raws;
+      this.bases = bases;
+    }
+
+    public List<Trackable> raws() {
+      return raws;
+    }
+
+    public List<Trackable> bases() {
+      return bases;
+    }
+  }
+
+  private static class SyntheticTrackable implements Trackable {
+    private final int line;
+    private final String message;
+    private final int textRangeHash;
+    private final int lineHash;
+    private final String ruleKey;
+    private final String serverIssueKey;
+
+    SyntheticTrackable(int line, String message, int textRangeHash, int lineHash, String ruleKey, @Nullable String serverIssueKey) {
+      this.line = line;
+      this.message = message;
+      this.textRangeHash = textRangeHash;
+      this.lineHash = lineHash;
+      this.ruleKey = ruleKey;
+      this.serverIssueKey = serverIssueKey;
+    }
+
+    SyntheticTrackable copy(int newLine, String newMessage, int newLineHash) {
+      return new SyntheticTrackable(newLine, newMessage, textRangeHash, newLineHash, ruleKey, serverIssueKey);
+    }
+
+    @Override public Integer getLine() {
+      return line;
+    }
+
+    @Override public String getMessage() {
+      return message;
+    }
+
+    @Override public Integer getTextRangeHash() {
+      return textRangeHash;
+    }
+
+    @Override public Integer getLineHash() {
+      return lineHash;
+    }
+
+    @Override public String getRuleKey() {
+      return ruleKey;
+    }
+
+    @CheckForNull
+    @Override public String getServerIssueKey() {
+      return serverIssueKey;
+    }
+
+    @CheckForNull
+    @Override public Long getCreationDate() {
+      return null;
+    }
+
+    @Override public boolean isResolved() {
+      return false;
+    }
+
+    @Override public String getAssignee() {
+      return "";
+    }
+
+    @Override public String getSeverity() {
+      return "MAJOR";
+    }
+
+    @Override public String getType() {
+      return "CODE_SMELL";
+    }
+  }
+
+  private static class SyntheticIssue implements Issue {
+    private final String ruleKey;
+    private final String message;
+    private final String severity;
+    private final String type;
+    private final int line;
+
+    SyntheticIssue(String ruleKey, String message, String severity, String type, int line) {
+      this.ruleKey = ruleKey;
+      this.message = message;
+      this.severity = severity;
+      this.type = type;
+      this.line = line;
+    }
+
+    @Override public String getSeverity() {
+      return severity;
+    }
+
+    @Override public String getType() {
+      return type;
+    }
+
+    @Override public String getRuleKey() {
+      return ruleKey;
+    }
+
+    @Override public String getRuleName() {
+      return "Rule " + ruleKey;
+    }
+
+    @Override public List<Flow> flows() {
+      return Collections.emptyList();
+    }
+
+    @CheckForNull
+    @Override public ClientInputFile getInputFile() {
+      return null;
+    }
+
+    @Override public Integer getStartLine() {
+      return line;
+    }
+
+    @CheckForNull
+    @Override public Integer getStartLineOffset() {
+      return null;
+    }
+
+    @Override public Integer getEndLine() {
+      return line;
+    }
+
+    @CheckForNull
+    @Override public Integer getEndLineOffset() {
+      return null;
+    }
+
+    @Override public String getMessage() {
+      return message;
+    }
+  }
+}
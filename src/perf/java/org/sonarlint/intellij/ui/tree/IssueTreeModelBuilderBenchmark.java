@@ -0,0 +1,99 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.ui.tree;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.swing.tree.DefaultTreeModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonarlint.intellij.issue.LiveIssue;
+import org.sonarlint.intellij.perf.Stubs;
+import org.sonarlint.intellij.perf.SyntheticIssues;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class IssueTreeModelBuilderBenchmark {
+  @Param({"10", "1000"})
+  public int fileCount;
+
+  @Param({"10", "100"})
+  public int issuesPerFile;
+
+  private Map<VirtualFile, Collection<LiveIssue>> issuesByFile;
+  private Map<VirtualFile, Collection<LiveIssue>> oneFileChanged;
+  private IssueTreeModelBuilder populatedBuilder;
+
+  @Setup
+  public void setUp() {
+    Document document = SyntheticIssues.document(500);
+    issuesByFile = new HashMap<>();
+    for (int i = 0; i < fileCount; i++) {
+      VirtualFile file = Stubs.file(Paths.get("src", "File" + i + ".java"));
+      issuesByFile.put(file, SyntheticIssues.liveIssues(file, document, issuesPerFile, i));
+    }
+    VirtualFile changed = issuesByFile.keySet().iterator().next();
+    oneFileChanged = new HashMap<>(issuesByFile);
+    oneFileChanged.put(changed, SyntheticIssues.liveIssues(changed, document, issuesPerFile, -1));
+
+    populatedBuilder = new IssueTreeModelBuilder();
+    populatedBuilder.createModel();
+    populatedBuilder.updateModel(issuesByFile, "");
+  }
+
+  /**
+   * Shows all the issues in a new tree.
+   */
+  @Benchmark
+  public DefaultTreeModel populate() {
+    IssueTreeModelBuilder builder = new IssueTreeModelBuilder();
+    DefaultTreeModel model = builder.createModel();
+    builder.updateModel(issuesByFile, "");
+    return model;
+  }
+
+  /**
+   * Updates the tree after one file was analyzed again. Both maps are applied alternately so that the tree always changes.
+   */
+  @Benchmark
+  public int update() {
+    populatedBuilder.updateModel(oneFileChanged, "");
+    populatedBuilder.updateModel(issuesByFile, "");
+    return populatedBuilder.numberIssues();
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import org.sonarlint.intellij.trigger.TriggerType;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class AnalysisQueueTest {
+  private Module module = mock(Module.class);
+  private VirtualFile file1 = mock(VirtualFile.class);
+  private VirtualFile file2 = mock(VirtualFile.class);
+  private AnalysisQueue queue = new AnalysisQueue();
+
+  @Test
+  public void should_move_files_submitted_again_to_newest_job() {
+    SonarLintJob job1 = new SonarLintJob(module, Arrays.asList(file1, file2), TriggerType.COMPILATION);
+    SonarLintJob job2 = new SonarLintJob(module, Collections.singleton(file2), TriggerType.EDITOR_CHANGE);
+
+    AnalysisQueue.Pending pending1 = queue.add(job1);
+    AnalysisQueue.Pending pending2 = queue.add(job2);
+
+    SonarLintJob started1 = queue.start(pending1);
+    assertThat(started1.allFiles()).containsOnly(file1);
+    assertThat(started1.trigger()).isEqualTo(TriggerType.COMPILATION);
+    assertThat(queue.start(pending2)).isSameAs(job2);
+    assertThat(pending2.superseded()).isEqualTo(1);
+    assertThat(queue.savedAnalyses()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_skip_job_without_files_and_keep_its_flags_and_callback() {
+    AnalysisCallback callback1 = mock(AnalysisCallback.class);
+    AnalysisCallback callback2 = mock(AnalysisCallback.class);
+    SonarLintJob job1 = new SonarLintJob(Collections.singletonMap(module, Collections.singleton(file1)), TriggerType.ACTION, true, callback1);
+    SonarLintJob job2 = new SonarLintJob(Collections.singletonMap(module, Collections.singleton(file1)), TriggerType.EDITOR_CHANGE, false, callback2);
+
+    AnalysisQueue.Pending pending1 = queue.add(job1);
+    AnalysisQueue.Pending pending2 = queue.add(job2);
+
+    assertThat(queue.start(pending1)).isNull();
+    SonarLintJob started2 = queue.start(pending2);
+    assertThat(started2.allFiles()).containsOnly(file1);
+    assertThat(started2.trigger()).isEqualTo(TriggerType.EDITOR_CHANGE);
+    assertThat(started2.waitForServerIssues()).isTrue();
+
+    started2.callback().onSuccess();
+    verify(callback1).onSuccess();
+    verify(callback2).onSuccess();
+  }
+
+  @Test
+  public void should_not_supersede_started_jobs() {
+    SonarLintJob job1 = new SonarLintJob(module, Collections.singleton(file1), TriggerType.EDITOR_CHANGE);
+    SonarLintJob job2 = new SonarLintJob(module, Collections.singleton(file1), TriggerType.EDITOR_CHANGE);
+
+    AnalysisQueue.Pending pending1 = queue.add(job1);
+    assertThat(queue.start(pending1)).isSameAs(job1);
+    AnalysisQueue.Pending pending2 = queue.add(job2);
+
+    assertThat(queue.start(pending2)).isSameAs(job2);
+    assertThat(queue.savedAnalyses()).isZero();
+  }
+}
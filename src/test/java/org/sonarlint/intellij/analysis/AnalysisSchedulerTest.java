@@ -0,0 +1,83 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.sonarlint.intellij.analysis.AnalysisScheduler.Priority;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AnalysisSchedulerTest {
+  private AnalysisScheduler scheduler = new AnalysisScheduler();
+
+  @After
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void should_run_by_priority_then_in_order() throws InterruptedException {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(5);
+    List<String> ran = new CopyOnWriteArrayList<>();
+
+    scheduler.submit(Priority.BULK, waited -> await(blocked));
+    scheduler.submit(Priority.BULK, waited -> run(ran, "bulk", done));
+    scheduler.submit(Priority.OPEN, waited -> run(ran, "open1", done));
+    scheduler.submit(Priority.FOCUSED, waited -> run(ran, "focused", done));
+    scheduler.submit(Priority.OPEN, waited -> run(ran, "open2", done));
+    scheduler.submit(Priority.BULK, waited -> run(ran, "bulk2", done));
+    blocked.countDown();
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(ran).containsExactly("focused", "open1", "open2", "bulk", "bulk2");
+  }
+
+  @Test
+  public void should_record_queue_wait_per_priority() throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(2);
+    scheduler.submit(Priority.OPEN, waited -> done.countDown());
+    scheduler.submit(Priority.OPEN, waited -> done.countDown());
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(scheduler.getQueueWaitStats(Priority.OPEN).count()).isEqualTo(2);
+    assertThat(scheduler.getQueueWaitStats(Priority.OPEN).maxMs()).isGreaterThanOrEqualTo(scheduler.getQueueWaitStats(Priority.OPEN).averageMs());
+    assertThat(scheduler.getQueueWaitStats(Priority.FOCUSED).count()).isZero();
+    assertThat(scheduler.getQueueWaitStats(Priority.FOCUSED).toString()).isEqualTo("0 analyses, 0ms on average, 0ms at most");
+  }
+
+  private static void run(List<String> ran, String name, CountDownLatch done) {
+    ran.add(name);
+    done.countDown();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
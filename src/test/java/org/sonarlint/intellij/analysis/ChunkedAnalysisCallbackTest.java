@@ -0,0 +1,87 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class ChunkedAnalysisCallbackTest {
+  private AnalysisCallback callback = mock(AnalysisCallback.class);
+  private ChunkedAnalysisCallback chunks = new ChunkedAnalysisCallback(callback, 2);
+
+  @Test
+  public void should_succeed_once_all_chunks_succeeded() {
+    chunks.onSuccess();
+    verifyZeroInteractions(callback);
+
+    chunks.onSuccess();
+    verify(callback).onSuccess();
+  }
+
+  @Test
+  public void should_fail_once_with_first_error() {
+    Throwable error = new IllegalStateException();
+    chunks.onError(error);
+    chunks.onError(new IllegalStateException());
+    chunks.onSuccess();
+
+    verify(callback).onError(error);
+    verify(callback, never()).onSuccess();
+  }
+
+  @Test
+  public void should_merge_issues_of_processed_chunks() {
+    VirtualFile file1 = mock(VirtualFile.class);
+    VirtualFile file2 = mock(VirtualFile.class);
+    assertThat(chunks.chunkProcessed(Collections.singletonList(file1), 2)).isFalse();
+    assertThat(chunks.chunkProcessed(Arrays.asList(file1, file2), 3)).isTrue();
+
+    assertThat(chunks.getFilesWithIssues()).containsOnly(file1, file2);
+    assertThat(chunks.getIssueCount()).isEqualTo(5);
+  }
+
+  @Test
+  public void should_end_with_last_chunk() {
+    assertThat(chunks.chunkEnded()).isFalse();
+    assertThat(chunks.chunkEnded()).isTrue();
+  }
+
+  @Test
+  public void should_cancel_remaining_chunks() {
+    assertThat(chunks.isCanceled()).isFalse();
+    chunks.cancel();
+    assertThat(chunks.isCanceled()).isTrue();
+  }
+
+  @Test
+  public void should_accept_no_callback() {
+    ChunkedAnalysisCallback noCallback = new ChunkedAnalysisCallback(null, 1);
+    noCallback.onError(new IllegalStateException());
+    noCallback.onSuccess();
+  }
+}
@@ -19,24 +19,35 @@
  */
 package org.sonarlint.intellij.analysis;
 
+import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.sonarlint.intellij.SonarTest;
+import org.sonarlint.intellij.analysis.AnalysisScheduler.Priority;
 import org.sonarlint.intellij.trigger.TriggerType;
 import org.sonarlint.intellij.ui.SonarLintConsole;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class SonarLintJobManagerTest extends SonarTest {
@@ -45,6 +56,7 @@ public class SonarLintJobManagerTest extends SonarTest {
   private SonarLintStatus status = mock(SonarLintStatus.class);
   private SonarLintUserTask task = mock(SonarLintUserTask.class);
   private ProgressManager progressManager = mock(ProgressManager.class);
+  private FileEditorManager editorManager = mock(FileEditorManager.class);
 
   private SonarLintJobManager manager;
 
@@ -57,8 +69,9 @@ public class SonarLintJobManagerTest extends SonarTest {
     when(status.tryRun()).thenReturn(true);
     when(factory.createTask(any(SonarLintJob.class), eq(true))).thenReturn(task);
     when(factory.createUserTask(any(SonarLintJob.class), eq(true))).thenReturn(task);
+    when(editorManager.getSelectedFiles()).thenReturn(new VirtualFile[0]);
 
-    manager = new SonarLintJobManager(project, factory, progressManager, status, console);
+    manager = new SonarLintJobManager(project, factory, progressManager, status, console, editorManager);
   }
 
   @Test
@@ -77,6 +90,78 @@ public class SonarLintJobManagerTest extends SonarTest {
     verify(progressManager).run(task);
   }
 
+  @Test
+  public void should_not_cancel_when_no_analysis_runs() {
+    manager.cancelOutdatedAnalysis(mock(VirtualFile.class));
+    verifyZeroInteractions(console);
+  }
+
+  @Test
+  public void should_split_selected_files_and_chunks() {
+    Module module1 = mock(Module.class);
+    Module module2 = mock(Module.class);
+    VirtualFile selected = mock(VirtualFile.class);
+    Map<Module, Collection<VirtualFile>> files = new HashMap<>();
+    files.put(module1, Arrays.asList(mockFiles(SonarLintJobManager.CHUNK_SIZE - 1)));
+    List<VirtualFile> module2Files = new ArrayList<>(Arrays.asList(mockFiles(SonarLintJobManager.CHUNK_SIZE + 2)));
+    module2Files.add(selected);
+    files.put(module2, module2Files);
+
+    List<Map<Module, Collection<VirtualFile>>> chunks = SonarLintJobManager.split(files, Collections.singleton(selected));
+
+    assertThat(chunks).hasSize(4);
+    assertThat(chunks.get(0)).containsOnlyKeys(module2);
+    assertThat(chunks.get(0).get(module2)).containsOnly(selected);
+    assertThat(chunks.stream().skip(1).mapToInt(c -> c.values().stream().mapToInt(Collection::size).sum()))
+      .containsExactly(SonarLintJobManager.CHUNK_SIZE, SonarLintJobManager.CHUNK_SIZE, 1);
+  }
+
+  @Test
+  public void should_submit_manual_analysis_in_chunks() {
+    when(factory.createUserTask(any(SonarLintJob.class), any(ChunkedAnalysisCallback.class))).thenReturn(task);
+    AnalysisCallback callback = mock(AnalysisCallback.class);
+    Map<Module, Collection<VirtualFile>> files = Collections.singletonMap(mock(Module.class),
+      Arrays.asList(mockFiles(2 * SonarLintJobManager.CHUNK_SIZE + 1)));
+
+    manager.submitManual(files, TriggerType.ACTION, false, callback);
+
+    ArgumentCaptor<SonarLintJob> jobs = ArgumentCaptor.forClass(SonarLintJob.class);
+    verify(factory, times(3)).createUserTask(jobs.capture(), any(ChunkedAnalysisCallback.class));
+    assertThat(jobs.getAllValues().stream().mapToInt(j -> j.allFiles().size()))
+      .containsExactly(SonarLintJobManager.CHUNK_SIZE, SonarLintJobManager.CHUNK_SIZE, 1);
+    assertThat(jobs.getAllValues()).extracting(SonarLintJob::callback).doesNotContain(callback).doesNotContainNull();
+    verify(progressManager, times(3)).run(task);
+  }
+
+  @Test
+  public void should_not_split_modal_manual_analysis() {
+    Map<Module, Collection<VirtualFile>> files = Collections.singletonMap(mock(Module.class),
+      Arrays.asList(mockFiles(2 * SonarLintJobManager.CHUNK_SIZE + 1)));
+
+    manager.submitManual(files, TriggerType.ACTION, true, null);
+
+    verify(factory).createUserTask(any(SonarLintJob.class), eq(true));
+    verify(factory, never()).createUserTask(any(SonarLintJob.class), any(ChunkedAnalysisCallback.class));
+  }
+
+  @Test
+  public void should_prioritize_by_files_analyzed() {
+    VirtualFile file = mock(VirtualFile.class);
+    SonarLintJob job = new SonarLintJob(mock(Module.class), Collections.singleton(file), TriggerType.ACTION);
+
+    assertThat(SonarLintJobManager.getPriority(job, Collections.singleton(file), true)).isEqualTo(Priority.FOCUSED);
+    assertThat(SonarLintJobManager.getPriority(job, Collections.emptySet(), false)).isEqualTo(Priority.OPEN);
+    assertThat(SonarLintJobManager.getPriority(job, Collections.emptySet(), true)).isEqualTo(Priority.BULK);
+  }
+
+  private static VirtualFile[] mockFiles(int count) {
+    VirtualFile[] files = new VirtualFile[count];
+    for (int i = 0; i < count; i++) {
+      files[i] = mock(VirtualFile.class);
+    }
+    return files;
+  }
+
   private Map<Module, Collection<VirtualFile>> mockFiles() {
     return Collections.singletonMap(mock(Module.class), Collections.singleton(mock(VirtualFile.class)));
   }
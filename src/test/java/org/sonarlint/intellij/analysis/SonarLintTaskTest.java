@@ -19,31 +19,50 @@
  */
 package org.sonarlint.intellij.analysis;
 
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.sonarlint.intellij.SonarTest;
 import org.sonarlint.intellij.core.ServerIssueUpdater;
 import org.sonarlint.intellij.issue.IssueManager;
 import org.sonarlint.intellij.issue.IssueProcessor;
+import org.sonarlint.intellij.issue.TrackingSession;
 import org.sonarlint.intellij.messages.TaskListener;
+import org.sonarlint.intellij.proto.Sonarlint;
 import org.sonarlint.intellij.trigger.TriggerType;
 import org.sonarlint.intellij.ui.SonarLintConsole;
 import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -61,6 +80,8 @@ public class SonarLintTaskTest extends SonarTest {
   private SonarLintAnalyzer sonarLintAnalyzer;
   @Mock
   private AnalysisResults analysisResults;
+  @Mock
+  private IssueManager issueManager;
 
   @Before
   public void prepare() {
@@ -77,7 +98,7 @@ public class SonarLintTaskTest extends SonarTest {
     super.register(SonarLintAnalyzer.class, sonarLintAnalyzer);
     super.register(SonarLintConsole.class, mock(SonarLintConsole.class));
     super.register(ServerIssueUpdater.class, mock(ServerIssueUpdater.class));
-    super.register(IssueManager.class, mock(IssueManager.class));
+    super.register(IssueManager.class, issueManager);
 
     task = new SonarLintTask(processor, job, false, true);
 
@@ -96,7 +117,8 @@ public class SonarLintTaskTest extends SonarTest {
     task.run(progress);
 
     verify(sonarLintAnalyzer).analyzeModule(eq(module), eq(files), any(IssueListener.class), any(ProgressMonitor.class));
-    verify(processor).process(job, progress, new ArrayList<>(), new ArrayList<>());
+    verify(processor).process(eq(job), eq(new ArrayList<>(files)), eq(progress), eq(new ArrayList<>()), eq(new ArrayList<>()), eq(Collections.emptyMap()),
+      any(TrackingSession.class));
     verify(listener).ended(job);
 
     verifyNoMoreInteractions(sonarLintAnalyzer);
@@ -119,6 +141,140 @@ public class SonarLintTaskTest extends SonarTest {
     verifyNoMoreInteractions(listener);
   }
 
+  @Test
+  public void should_discard_issues_if_canceled_while_analyzing() {
+    TaskListener listener = mock(TaskListener.class);
+    getProject().getMessageBus().connect(getProject()).subscribe(TaskListener.SONARLINT_TASK_TOPIC, listener);
+    // the indicator is only canceled after the analyzers returned
+    when(sonarLintAnalyzer.analyzeModule(eq(module), eq(files), any(IssueListener.class), any(ProgressMonitor.class))).thenAnswer(invocation -> {
+      assertThat(task.tryCancel()).isTrue();
+      return analysisResults;
+    });
+
+    task.run(progress);
+
+    assertThat(task.wasCanceled()).isTrue();
+    verify(processor).restore(any(TrackingSession.class));
+    verifyNoMoreInteractions(processor);
+    verify(listener).ended(job);
+  }
+
+  @Test
+  public void should_restore_streamed_files_if_canceled() {
+    VirtualFile testFile = files.iterator().next();
+    ClientInputFile inputFile = mock(ClientInputFile.class);
+    when(inputFile.getPath()).thenReturn("file");
+    when(inputFile.getClientObject()).thenReturn(testFile);
+    Issue issue = mock(Issue.class);
+    when(issue.getInputFile()).thenReturn(inputFile);
+    when(sonarLintAnalyzer.analyzeModule(eq(module), eq(files), any(IssueListener.class), any(ProgressMonitor.class))).thenAnswer(invocation -> {
+      IssueListener issueListener = invocation.getArgument(2);
+      issueListener.handle(issue);
+      assertThat(task.tryCancel()).isTrue();
+      return analysisResults;
+    });
+
+    task.run(progress);
+
+    ArgumentCaptor<TrackingSession> session = ArgumentCaptor.forClass(TrackingSession.class);
+    verify(processor).processFile(eq(testFile), eq(progress), eq(Collections.singletonList(issue)), session.capture());
+    verify(processor).restore(session.getValue());
+    verify(processor, never()).process(eq(job), anyCollection(), eq(progress), anyList(), anyList(), anyMap(), any(TrackingSession.class));
+  }
+
+  @Test
+  public void should_refuse_cancel_once_analyzers_are_done() {
+    doAnswer(invocation -> {
+      assertThat(task.tryCancel()).isFalse();
+      return null;
+    }).when(processor).process(eq(job), anyCollection(), eq(progress), anyList(), anyList(), anyMap(), any(TrackingSession.class));
+
+    assertThat(task.tryCancel()).isFalse();
+    task.run(progress);
+
+    assertThat(task.wasCanceled()).isFalse();
+    verify(processor).process(eq(job), anyCollection(), eq(progress), anyList(), anyList(), anyMap(), any(TrackingSession.class));
+  }
+
+  @Test
+  public void testAnalyzeAllModules() {
+    Module module2 = mock(Module.class);
+    VirtualFile file2 = mock(VirtualFile.class);
+    when(sonarLintAnalyzer.analyzeModule(eq(module2), eq(Collections.singletonList(file2)), any(IssueListener.class), any(ProgressMonitor.class)))
+      .thenReturn(analysisResults);
+    SonarLintJob multiModuleJob = createMultiModuleJob(module2, file2);
+
+    new SonarLintTask(processor, multiModuleJob, false, true).run(progress);
+
+    verify(sonarLintAnalyzer).analyzeModule(eq(module), eq(files), any(IssueListener.class), any(ProgressMonitor.class));
+    verify(sonarLintAnalyzer).analyzeModule(eq(module2), eq(Collections.singletonList(file2)), any(IssueListener.class), any(ProgressMonitor.class));
+    verify(processor).process(eq(multiModuleJob), anyCollection(), eq(progress), eq(new ArrayList<>()), eq(new ArrayList<>()), eq(Collections.emptyMap()),
+      any(TrackingSession.class));
+  }
+
+  @Test
+  public void testErrorInOneModule() {
+    TaskListener listener = mock(TaskListener.class);
+    getProject().getMessageBus().connect(getProject()).subscribe(TaskListener.SONARLINT_TASK_TOPIC, listener);
+    Module module2 = mock(Module.class);
+    VirtualFile file2 = mock(VirtualFile.class);
+    doThrow(new IllegalStateException("error")).when(sonarLintAnalyzer)
+      .analyzeModule(eq(module2), eq(Collections.singletonList(file2)), any(IssueListener.class), any(ProgressMonitor.class));
+    SonarLintJob multiModuleJob = createMultiModuleJob(module2, file2);
+
+    new SonarLintTask(processor, multiModuleJob, false, true).run(progress);
+
+    verifyZeroInteractions(processor);
+    verify(listener).ended(multiModuleJob);
+  }
+
+  @Test
+  public void testSkipUpToDateFiles() {
+    SonarLintJob editorJob = new SonarLintJob(module, files, TriggerType.EDITOR_OPEN);
+    mockFingerprints();
+    when(issueManager.isUpToDate(any(VirtualFile.class), anyString())).thenReturn(true);
+
+    new SonarLintTask(processor, editorJob, false, true).run(progress);
+
+    verify(sonarLintAnalyzer, never()).analyzeModule(eq(module), anyCollection(), any(IssueListener.class), any(ProgressMonitor.class));
+    verify(processor).process(eq(editorJob), eq(Collections.emptyList()), eq(progress), eq(Collections.emptyList()), eq(Collections.emptyList()), anyMap(),
+      any(TrackingSession.class));
+  }
+
+  @Test
+  public void testRestoreIssuesFromStore() {
+    SonarLintJob editorJob = new SonarLintJob(module, files, TriggerType.EDITOR_OPEN);
+    mockFingerprints();
+    Sonarlint.Issues.Issue storedIssue = Sonarlint.Issues.Issue.newBuilder().setRuleKey("rule").setMessage("msg").setLine(1).build();
+    when(issueManager.getStoredIssues(any(VirtualFile.class), anyString())).thenReturn(Collections.singletonList(storedIssue));
+
+    new SonarLintTask(processor, editorJob, false, true).run(progress);
+
+    verify(sonarLintAnalyzer, never()).analyzeModule(eq(module), anyCollection(), any(IssueListener.class), any(ProgressMonitor.class));
+    verify(processor).process(eq(editorJob), eq(new ArrayList<>(files)), eq(progress),
+      argThat(issues -> issues.size() == 1 && issues.iterator().next().getRuleKey().equals("rule")), eq(Collections.emptyList()), anyMap(),
+      any(TrackingSession.class));
+  }
+
+  private void mockFingerprints() {
+    FileDocumentManager docManager = mock(FileDocumentManager.class);
+    Document doc = mock(Document.class);
+    when(doc.getImmutableCharSequence()).thenReturn("content");
+    when(docManager.getDocument(any(VirtualFile.class))).thenReturn(doc);
+    register(app, FileDocumentManager.class, docManager);
+    when(app.acquireReadActionLock()).thenReturn(mock(AccessToken.class));
+    when(sonarLintAnalyzer.getConfigurationHash(module)).thenReturn("config");
+    files.forEach(f -> when(f.isValid()).thenReturn(true));
+  }
+
+  private SonarLintJob createMultiModuleJob(Module module2, VirtualFile file2) {
+    when(module2.getProject()).thenReturn(getProject());
+    Map<Module, Collection<VirtualFile>> filesPerModule = new HashMap<>();
+    filesPerModule.put(module, files);
+    filesPerModule.put(module2, Collections.singletonList(file2));
+    return new SonarLintJob(filesPerModule, TriggerType.ACTION, false, null);
+  }
+
   private SonarLintJob createJob() {
     return new SonarLintJob(module, files, TriggerType.ACTION);
   }
@@ -0,0 +1,110 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StreamingIssueListenerTest {
+  private List<VirtualFile> flushedFiles = new ArrayList<>();
+  private List<List<Issue>> flushedIssues = new ArrayList<>();
+  private StreamingIssueListener listener;
+
+  @Before
+  public void setUp() {
+    listener = new StreamingIssueListener((file, issues) -> {
+      flushedFiles.add(file);
+      flushedIssues.add(issues);
+    });
+  }
+
+  @Test
+  public void should_hand_over_issues_when_moving_to_next_file() {
+    ClientInputFile file1 = createInputFile();
+    ClientInputFile file2 = createInputFile();
+
+    listener.handle(createIssue(file1));
+    listener.handle(createIssue(file1));
+    assertThat(flushedFiles).isEmpty();
+
+    listener.handle(createIssue(file2));
+    assertThat(flushedFiles).containsExactly(file1.getClientObject());
+    assertThat(flushedIssues.get(0)).hasSize(2);
+
+    listener.flush();
+    assertThat(flushedFiles).containsExactly(file1.getClientObject(), file2.getClientObject());
+    assertThat(flushedIssues.get(1)).hasSize(1);
+    assertThat(listener.getIssueCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void should_hand_over_late_issues_separately() {
+    ClientInputFile file1 = createInputFile();
+    ClientInputFile file2 = createInputFile();
+
+    listener.handle(createIssue(file1));
+    listener.handle(createIssue(file2));
+    listener.handle(createIssue(file1));
+    listener.flush();
+
+    assertThat(flushedFiles).containsExactly(file1.getClientObject(), file2.getClientObject(), file1.getClientObject());
+  }
+
+  @Test
+  public void should_ignore_project_level_issues() {
+    listener.handle(createIssue(null));
+    listener.flush();
+
+    assertThat(flushedFiles).isEmpty();
+    assertThat(listener.getIssueCount()).isZero();
+  }
+
+  @Test
+  public void should_not_hand_over_twice() {
+    listener.handle(createIssue(createInputFile()));
+    listener.flush();
+    listener.flush();
+
+    assertThat(flushedFiles).hasSize(1);
+  }
+
+  private static ClientInputFile createInputFile() {
+    ClientInputFile inputFile = mock(ClientInputFile.class);
+    VirtualFile file = mock(VirtualFile.class);
+    when(inputFile.getPath()).thenReturn("file");
+    when(inputFile.getClientObject()).thenReturn(file);
+    return inputFile;
+  }
+
+  private static Issue createIssue(ClientInputFile inputFile) {
+    Issue issue = mock(Issue.class);
+    when(issue.getInputFile()).thenReturn(inputFile);
+    return issue;
+  }
+}
@@ -21,6 +21,7 @@ package org.sonarlint.intellij.core;
 
 import com.intellij.openapi.project.Project;
 import java.util.Collections;
+import java.util.Date;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -34,6 +35,8 @@ import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults
 import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedAnalysisConfiguration;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedSonarLintEngine;
+import org.sonarsource.sonarlint.core.client.api.connected.LoadedAnalyzer;
+import org.sonarsource.sonarlint.core.client.api.connected.ModuleStorageStatus;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -86,4 +89,21 @@ public class ConnectedSonarLintFacadeTest {
     when(engine.analyze(any(ConnectedAnalysisConfiguration.class), any(IssueListener.class), any(LogOutput.class), any(ProgressMonitor.class))).thenReturn(results);
     assertThat(facade.startAnalysis(Collections.emptyList(), mock(IssueListener.class), Collections.emptyMap(), mock(ProgressMonitor.class))).isEqualTo(results);
   }
+
+  @Test
+  public void should_change_configuration_hash_when_storage_is_updated() {
+    LoadedAnalyzer analyzer = mock(LoadedAnalyzer.class);
+    when(analyzer.key()).thenReturn("java");
+    when(analyzer.version()).thenReturn("4.0");
+    when(engine.getLoadedAnalyzers()).thenReturn(Collections.singletonList(analyzer));
+    ModuleStorageStatus moduleStorageStatus = mock(ModuleStorageStatus.class);
+    when(moduleStorageStatus.getLastUpdateDate()).thenReturn(new Date(1000));
+    when(engine.getModuleStorageStatus(moduleKey)).thenReturn(moduleStorageStatus);
+
+    String hash = facade.getConfigurationHash();
+    assertThat(facade.getConfigurationHash()).isEqualTo(hash);
+
+    when(moduleStorageStatus.getLastUpdateDate()).thenReturn(new Date(2000));
+    assertThat(facade.getConfigurationHash()).isNotEqualTo(hash);
+  }
 }
@@ -20,9 +20,16 @@
 package org.sonarlint.intellij.core;
 
 import com.intellij.openapi.project.Project;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
@@ -41,6 +48,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 public class StandaloneSonarLintFacadeTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
   @Mock
   private StandaloneSonarLintEngine engine;
   @Mock
@@ -84,4 +93,33 @@ public class StandaloneSonarLintFacadeTest {
     when(engine.analyze(any(StandaloneAnalysisConfiguration.class), any(IssueListener.class), any(LogOutput.class), any(ProgressMonitor.class))).thenReturn(results);
     assertThat(facade.startAnalysis(Collections.emptyList(), mock(IssueListener.class), Collections.emptyMap(), mock(ProgressMonitor.class))).isEqualTo(results);
   }
+
+  @Test
+  public void should_delete_work_dirs_of_concurrent_analyses() throws IOException {
+    Path baseDir = temp.newFolder().toPath();
+    when(project.getBasePath()).thenReturn(baseDir.toString());
+    AnalysisResults results = mock(AnalysisResults.class);
+    List<Path> workDirs = new ArrayList<>();
+    // a facade is created for each analysis
+    StandaloneSonarLintFacade otherFacade = new StandaloneSonarLintFacade(settings, console, project, engine);
+    when(engine.analyze(any(StandaloneAnalysisConfiguration.class), any(IssueListener.class), any(LogOutput.class), any(ProgressMonitor.class))).thenAnswer(invocation -> {
+      StandaloneAnalysisConfiguration config = invocation.getArgument(0);
+      Files.createDirectories(config.workDir());
+      Files.createFile(config.workDir().resolve("file"));
+      workDirs.add(config.workDir());
+      if (workDirs.size() == 1) {
+        // analysis of another module, while the first one runs
+        otherFacade.startAnalysis(Collections.emptyList(), mock(IssueListener.class), Collections.emptyMap(), mock(ProgressMonitor.class));
+      }
+      return results;
+    });
+
+    facade.startAnalysis(Collections.emptyList(), mock(IssueListener.class), Collections.emptyMap(), mock(ProgressMonitor.class));
+
+    assertThat(workDirs).hasSize(2);
+    assertThat(workDirs.get(0)).isEqualTo(baseDir.resolve(Project.DIRECTORY_STORE_FOLDER).resolve("sonarlint"));
+    assertThat(workDirs.get(0)).exists();
+    assertThat(workDirs.get(1)).isNotEqualTo(workDirs.get(0));
+    assertThat(workDirs.get(1)).doesNotExist();
+  }
 }
@@ -116,7 +116,7 @@ public class SonarExternalAnnotatorTest {
     Collection<LiveIssue> issues = new LinkedList<>();
 
     for (int i = 0; i < number; i++) {
-      issues.add(createFileStoredIssue(i, psiFile));
+      issues.add(createFileStoredIssue(i, virtualFile));
     }
 
     when(store.getForFile(virtualFile)).thenReturn(issues);
@@ -132,7 +132,7 @@ public class SonarExternalAnnotatorTest {
     when(store.getForFile(virtualFile)).thenReturn(issues);
   }
 
-  private static LiveIssue createFileStoredIssue(int id, PsiFile file) {
+  private static LiveIssue createFileStoredIssue(int id, VirtualFile file) {
     Issue issue = SonarLintTestUtils.createIssue(id);
     return new LiveIssue(issue, file, null, Collections.emptyList());
   }
@@ -0,0 +1,78 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EditedLinesTest {
+  private EditedLines edits = new EditedLines();
+
+  @Test
+  public void nothing_edited() {
+    assertThat(edits.isEdited(0, 100)).isFalse();
+  }
+
+  @Test
+  public void should_record_edited_lines() {
+    edits.edited(10, 10, 10);
+
+    assertThat(edits.isEdited(9, 9)).isFalse();
+    assertThat(edits.isEdited(10, 10)).isTrue();
+    assertThat(edits.isEdited(5, 20)).isTrue();
+    assertThat(edits.isEdited(11, 11)).isFalse();
+  }
+
+  @Test
+  public void should_shift_following_edits() {
+    edits.edited(20, 20, 20);
+    // 3 lines inserted after line 5
+    edits.edited(5, 5, 8);
+
+    assertThat(edits.isEdited(5, 8)).isTrue();
+    assertThat(edits.isEdited(9, 22)).isFalse();
+    assertThat(edits.isEdited(23, 23)).isTrue();
+
+    // lines 6 to 8 removed
+    edits.edited(5, 8, 5);
+    assertThat(edits.isEdited(6, 19)).isFalse();
+    assertThat(edits.isEdited(20, 20)).isTrue();
+  }
+
+  @Test
+  public void should_merge_overlapping_edits() {
+    edits.edited(10, 12, 12);
+    edits.edited(11, 11, 15);
+
+    assertThat(edits.isEdited(10, 10)).isTrue();
+    assertThat(edits.isEdited(16, 16)).isTrue();
+    assertThat(edits.isEdited(17, 17)).isFalse();
+  }
+
+  @Test
+  public void should_consider_everything_edited_if_too_many_edits() {
+    for (int i = 0; i <= EditedLines.MAX_RANGES; i++) {
+      edits.edited(i * 2, i * 2, i * 2);
+    }
+
+    assertThat(edits.isEdited(1, 1)).isTrue();
+  }
+}
@@ -19,13 +19,17 @@
  */
 package org.sonarlint.intellij.issue;
 
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
-import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.psi.PsiFile;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -36,12 +40,20 @@ import org.sonarlint.intellij.SonarLintTestUtils;
 import org.sonarlint.intellij.SonarTest;
 import org.sonarlint.intellij.issue.persistence.IssuePersistence;
 import org.sonarlint.intellij.issue.persistence.LiveIssueCache;
+import org.sonarlint.intellij.messages.IssueStoreListener;
+import org.sonarlint.intellij.proto.Sonarlint;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -52,8 +64,6 @@ public class IssueManagerTest extends SonarTest {
   @Mock
   private VirtualFile file1;
   @Mock
-  private Document document;
-  @Mock
   private IssuePersistence store;
 
   private LiveIssue issue1;
@@ -64,6 +74,7 @@ public class IssueManagerTest extends SonarTest {
   @Before
   public void prepare() {
     MockitoAnnotations.initMocks(this);
+    when(app.acquireReadActionLock()).thenReturn(mock(AccessToken.class));
     when(file1.isValid()).thenReturn(true);
     when(file1.getPath()).thenReturn("file1");
 
@@ -123,6 +134,122 @@ public class IssueManagerTest extends SonarTest {
     assertThat(issues.iterator().next().getCreationDate()).isEqualTo(1000);
   }
 
+  @Test
+  public void should_track_late_issues_against_unmatched_previous_issues() {
+    LiveIssue previous2 = createRangeStoredIssue(2, "issue 2", 20);
+    issue1.setCreationDate(1000L);
+    previous2.setCreationDate(2000L);
+    when(cache.getLive(file1)).thenReturn(Arrays.asList(issue1, previous2));
+    TrackingSession session = new TrackingSession();
+
+    manager.store(Collections.singletonMap(file1, Collections.singletonList(createRangeStoredIssue(1, "issue 1", 10))), session);
+    verify(cache).save(eq(file1), issueCollectionCaptor.capture());
+    Collection<LiveIssue> stored = issueCollectionCaptor.getValue();
+    assertThat(stored).hasSize(1);
+    assertThat(session.contains(file1)).isTrue();
+
+    // previous issues that were not matched are still needed to track the late issue
+    when(cache.getLive(file1)).thenReturn(stored);
+    manager.store(Collections.singletonMap(file1, Collections.singletonList(createRangeStoredIssue(2, "issue 2", 20))), session);
+    verify(cache, times(2)).save(eq(file1), issueCollectionCaptor.capture());
+    Collection<LiveIssue> issues = issueCollectionCaptor.getValue();
+
+    assertThat(issues).extracting(LiveIssue::getCreationDate).containsExactly(1000L, 2000L);
+  }
+
+  @Test
+  public void should_restore_live_issues_of_stored_file_that_failed() {
+    TrackingSession session = new TrackingSession();
+    manager.store(Collections.singletonMap(file1, Collections.singletonList(createRangeStoredIssue(2, "issue 2", 20))), session);
+
+    manager.restore(Collections.singleton(file1), session);
+    verify(cache, times(2)).save(eq(file1), issueCollectionCaptor.capture());
+    assertThat(issueCollectionCaptor.getValue()).containsExactly(issue1);
+  }
+
+  @Test
+  public void should_restore_persisted_issues_of_stored_file_that_failed() throws IOException {
+    LocalIssueTrackable persisted = new LocalIssueTrackable(Sonarlint.Issues.Issue.newBuilder().setRuleKey("rule").setMessage("msg").build());
+    when(cache.contains(file1)).thenReturn(false);
+    when(cache.getLive(file1)).thenReturn(null);
+    when(store.contains("file1")).thenReturn(true);
+    when(store.read("file1")).thenReturn(Collections.singletonList(persisted));
+    TrackingSession session = new TrackingSession();
+    manager.store(Collections.singletonMap(file1, Collections.singletonList(createRangeStoredIssue(2, "issue 2", 20))), session);
+
+    // the stored issues are still in the cache, so the persisted ones are still valid
+    when(cache.remove(file1)).thenReturn(true);
+    manager.restore(Collections.singleton(file1), session);
+    verify(store, never()).save(anyString(), anyCollection());
+
+    // the stored issues were evicted and persisted
+    when(cache.remove(file1)).thenReturn(false);
+    manager.restore(Collections.singleton(file1), session);
+    ArgumentCaptor<Collection> restored = ArgumentCaptor.forClass(Collection.class);
+    verify(store).save(eq("file1"), restored.capture());
+    assertThat(restored.getValue()).containsExactly(persisted);
+  }
+
+  @Test
+  public void should_delete_issues_of_first_analysis_that_failed() throws IOException {
+    when(cache.contains(file1)).thenReturn(false);
+    when(cache.getLive(file1)).thenReturn(null);
+    TrackingSession session = new TrackingSession();
+    manager.store(Collections.singletonMap(file1, Collections.singletonList(createRangeStoredIssue(2, "issue 2", 20))), session);
+
+    manager.restore(Collections.singleton(file1), session);
+    verify(cache).remove(file1);
+    verify(store).delete("file1");
+  }
+
+  @Test
+  public void should_track_files_in_parallel_and_notify_once() {
+    VirtualFile file2 = mock(VirtualFile.class);
+    when(file2.getPath()).thenReturn("file2");
+    issue1.setCreationDate(1000L);
+    IssueStoreListener listener = mock(IssueStoreListener.class);
+    project.getMessageBus().connect().subscribe(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC, listener);
+
+    Map<VirtualFile, Collection<LiveIssue>> map = new HashMap<>();
+    map.put(file1, Collections.singletonList(createRangeStoredIssue(1, "issue 1", 10)));
+    map.put(file2, Collections.singletonList(createRangeStoredIssue(2, "issue 2", 20)));
+    manager.store(map);
+
+    verify(cache).save(eq(file1), issueCollectionCaptor.capture());
+    assertThat(issueCollectionCaptor.getValue()).extracting(LiveIssue::getCreationDate).containsExactly(1000L);
+    // first analysis of file2
+    verify(cache).save(file2, map.get(file2));
+    verify(listener).filesChanged(map);
+  }
+
+  @Test
+  public void should_save_in_calling_thread_while_write_action_is_pending() {
+    Thread caller = Thread.currentThread();
+    // a write action is pending: only the thread already holding read access gets it again
+    when(app.acquireReadActionLock()).thenAnswer(invocation -> {
+      if (Thread.currentThread() != caller) {
+        throw new IllegalStateException("Read access requested by " + Thread.currentThread().getName());
+      }
+      return mock(AccessToken.class);
+    });
+    // saving evicts entries, which are converted with read access
+    doAnswer(invocation -> {
+      ReadAction.start().finish();
+      return null;
+    }).when(cache).save(any(VirtualFile.class), anyCollection());
+
+    Map<VirtualFile, Collection<LiveIssue>> map = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      VirtualFile file = mock(VirtualFile.class);
+      when(file.getPath()).thenReturn("file" + i);
+      map.put(file, Collections.singletonList(createRangeStoredIssue(i, "issue " + i, 10)));
+    }
+    map.put(file1, Collections.singletonList(createRangeStoredIssue(1, "issue 1", 10)));
+    manager.store(map, new TrackingSession());
+
+    verify(cache, times(11)).save(any(VirtualFile.class), anyCollection());
+  }
+
   @Test
   public void should_copy_server_issue_on_match() {
     String serverIssueKey = "dummyServerIssueKey";
@@ -264,11 +391,13 @@ public class IssueManagerTest extends SonarTest {
     Issue issue = SonarLintTestUtils.createIssue(id);
     when(issue.getStartLine()).thenReturn(line);
     RangeMarker range = mock(RangeMarker.class);
+    // hashes are computed later from the document, so each issue needs its own
+    Document document = mock(Document.class);
     when(range.isValid()).thenReturn(true);
     when(range.getDocument()).thenReturn(document);
-    when(document.getText(any(TextRange.class))).thenReturn(rangeContent);
-    PsiFile psiFile = mock(PsiFile.class);
-    when(psiFile.isValid()).thenReturn(true);
-    return new LiveIssue(issue, psiFile, range, Collections.emptyList());
+    when(range.getEndOffset()).thenReturn(rangeContent.length());
+    when(document.getCharsSequence()).thenReturn(rangeContent);
+    when(document.getLineEndOffset(anyInt())).thenReturn(rangeContent.length());
+    return new LiveIssue(issue, file1, range, Collections.emptyList());
   }
 }
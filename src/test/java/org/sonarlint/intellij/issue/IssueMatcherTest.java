@@ -0,0 +1,79 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.util.TextRange;
+import org.junit.Test;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueLocation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IssueMatcherTest {
+  private static final String CONTENT = "class A {\n  void foo() {\n\n  }\n}";
+
+  @Test
+  public void should_compute_line_offsets() {
+    LineOffsets lines = LineOffsets.compute(CONTENT);
+
+    assertThat(lines.lineCount()).isEqualTo(5);
+    assertThat(lines.lineStart(1)).isEqualTo(10);
+    assertThat(lines.lineEnd(1)).isEqualTo(24);
+    assertThat(lines.firstNonWhitespace(1)).isEqualTo(12);
+    assertThat(lines.firstNonWhitespace(2)).isEqualTo(lines.lineEnd(2));
+    assertThat(lines.lineEnd(4)).isEqualTo(CONTENT.length());
+  }
+
+  @Test
+  public void should_use_precise_location() throws IssueMatcher.NoMatchException {
+    TextRange range = IssueMatcher.getIssueTextRange(LineOffsets.compute(CONTENT), location(2, 2, 2, 6));
+
+    assertThat(range).isEqualTo(new TextRange(12, 16));
+  }
+
+  @Test
+  public void should_skip_indentation_if_start_offset_unknown() throws IssueMatcher.NoMatchException {
+    TextRange range = IssueMatcher.getIssueTextRange(LineOffsets.compute(CONTENT), location(2, null, 2, null));
+
+    assertThat(range).isEqualTo(new TextRange(12, 24));
+  }
+
+  @Test
+  public void should_not_skip_blank_lines() throws IssueMatcher.NoMatchException {
+    TextRange range = IssueMatcher.getIssueTextRange(LineOffsets.compute(CONTENT), location(3, null, 4, null));
+
+    assertThat(range).isEqualTo(new TextRange(25, 29));
+  }
+
+  @Test(expected = IssueMatcher.NoMatchException.class)
+  public void should_fail_if_line_out_of_file() throws IssueMatcher.NoMatchException {
+    IssueMatcher.getIssueTextRange(LineOffsets.compute(CONTENT), location(6, null, 6, null));
+  }
+
+  private static IssueLocation location(int startLine, Integer startOffset, int endLine, Integer endOffset) {
+    IssueLocation location = mock(IssueLocation.class);
+    when(location.getStartLine()).thenReturn(startLine);
+    when(location.getStartLineOffset()).thenReturn(startOffset);
+    when(location.getEndLine()).thenReturn(endLine);
+    when(location.getEndLineOffset()).thenReturn(endOffset);
+    return location;
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.picocontainer.MutablePicoContainer;
+import org.sonarlint.intellij.SonarLintTestUtils;
+import org.sonarlint.intellij.SonarTest;
+import org.sonarlint.intellij.analysis.ChunkedAnalysisCallback;
+import org.sonarlint.intellij.analysis.SonarLintJob;
+import org.sonarlint.intellij.core.ServerIssueUpdater;
+import org.sonarlint.intellij.trigger.TriggerType;
+import org.sonarlint.intellij.ui.SonarLintConsole;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IssueProcessorTest extends SonarTest {
+  @Mock
+  private IssueMatcher matcher;
+  @Mock
+  private IssueManager manager;
+  @Mock
+  private ServerIssueUpdater serverIssueUpdater;
+  @Mock
+  private SonarLintConsole console;
+  @Mock
+  private ProgressIndicator indicator;
+  @Mock
+  private SonarLintJob job;
+  @Mock
+  private VirtualFile file;
+  @Captor
+  private ArgumentCaptor<Collection<VirtualFile>> filesCaptor;
+  @Captor
+  private ArgumentCaptor<Map<VirtualFile, Collection<LiveIssue>>> issuesCaptor;
+
+  private IssueProcessor processor;
+  private Predicate<Runnable> readActionWithWritePriority = action -> {
+    action.run();
+    return true;
+  };
+
+  @Before
+  public void prepare() throws IssueMatcher.NoMatchException {
+    MockitoAnnotations.initMocks(this);
+    when(app.acquireReadActionLock()).thenReturn(mock(AccessToken.class));
+    // ProgressManager.checkCanceled() gets the progress manager from the application
+    MutablePicoContainer container = mock(MutablePicoContainer.class);
+    when(app.getPicoContainer()).thenReturn(container);
+    when(container.getComponentInstance(ProgressManager.class.getName())).thenReturn(mock(ProgressManager.class));
+    register(SonarLintConsole.class, console);
+    when(job.trigger()).thenReturn(TriggerType.ACTION);
+    when(job.waitForServerIssues()).thenReturn(true);
+    when(file.isValid()).thenReturn(true);
+    when(file.getName()).thenReturn("file");
+    when(matcher.findFile(any(VirtualFile.class))).thenReturn(mock(PsiFile.class));
+    processor = new IssueProcessor(project, matcher, manager, serverIssueUpdater, action -> readActionWithWritePriority.test(action));
+  }
+
+  @After
+  public void dispose() {
+    processor.disposeComponent();
+  }
+
+  @Test
+  public void should_transform_issues_again_after_write_action() throws IssueMatcher.NoMatchException {
+    AtomicInteger attempts = new AtomicInteger();
+    readActionWithWritePriority = action -> {
+      action.run();
+      // the first attempt is canceled by a write action once the issues were transformed, they are transformed again
+      return attempts.incrementAndGet() > 1;
+    };
+
+    process(Collections.singletonList(file), createFileIssue(file, 1));
+
+    assertThat(attempts.get()).isEqualTo(2);
+    // waits for the write action before the second attempt
+    verify(app).runReadAction(any(Runnable.class));
+    verify(matcher, times(2)).findFile(file);
+    verify(manager).store(issuesCaptor.capture());
+    assertThat(issuesCaptor.getValue().get(file)).extracting(LiveIssue::getMessage).containsExactly("issue 1");
+  }
+
+  @Test
+  public void should_not_refresh_file_with_unmatched_issue() throws IssueMatcher.NoMatchException {
+    VirtualFile otherFile = mock(VirtualFile.class);
+    when(otherFile.isValid()).thenReturn(true);
+    when(matcher.findFile(file)).thenThrow(new IssueMatcher.NoMatchException("no match"));
+
+    process(Arrays.asList(file, otherFile), createFileIssue(file, 1), createFileIssue(otherFile, 2));
+
+    verify(manager).store(issuesCaptor.capture());
+    assertThat(issuesCaptor.getValue()).containsOnlyKeys(otherFile);
+    assertThat(issuesCaptor.getValue().get(otherFile)).extracting(LiveIssue::getMessage).containsExactly("issue 2");
+    verify(console).error(contains("The file won't be refreshed"));
+  }
+
+  @Test
+  public void should_propagate_cancellation_of_pool_threads() {
+    Thread caller = Thread.currentThread();
+    doAnswer(invocation -> {
+      // the issues are transformed in the pool
+      assertThat(Thread.currentThread()).isNotSameAs(caller);
+      throw new ProcessCanceledException();
+    }).when(indicator).checkCanceled();
+
+    try {
+      process(Collections.singletonList(file), createFileIssue(file, 1));
+      fail("Expected cancellation");
+    } catch (ProcessCanceledException e) {
+      // expected
+    }
+
+    verify(manager, never()).store(anyMap());
+    verify(serverIssueUpdater, never()).fetchAndMatchServerIssues(anyCollection(), any(ProgressIndicator.class), anyBoolean());
+  }
+
+  @Test
+  public void should_fetch_server_issues_once_for_all_chunks() {
+    ChunkedAnalysisCallback chunks = mock(ChunkedAnalysisCallback.class);
+    when(job.callback()).thenReturn(chunks);
+    when(chunks.chunkProcessed(anyCollection(), anyLong())).thenReturn(false, true);
+    VirtualFile otherFile = mock(VirtualFile.class);
+    when(chunks.getFilesWithIssues()).thenReturn(new HashSet<>(Arrays.asList(file, otherFile)));
+    when(chunks.getIssueCount()).thenReturn(3L);
+
+    processChunk(file);
+    verify(chunks).chunkProcessed(Collections.singletonList(file), 1L);
+    verify(serverIssueUpdater, never()).fetchAndMatchServerIssues(anyCollection(), any(ProgressIndicator.class), anyBoolean());
+    verify(console, never()).info("Found 1 issue");
+
+    processChunk(otherFile);
+    verify(serverIssueUpdater).fetchAndMatchServerIssues(filesCaptor.capture(), eq(indicator), eq(true));
+    assertThat(filesCaptor.getValue()).containsOnly(file, otherFile);
+    verify(console).info("Found 3 issues");
+    verify(chunks, times(2)).onSuccess();
+  }
+
+  private void process(List<VirtualFile> analyzed, Issue... issues) {
+    processor.process(job, analyzed, indicator, Arrays.asList(issues), Collections.emptyList(), Collections.emptyMap(), new TrackingSession());
+  }
+
+  private static Issue createFileIssue(VirtualFile file, int id) {
+    ClientInputFile inputFile = mock(ClientInputFile.class);
+    when(inputFile.getPath()).thenReturn("file" + id);
+    when(inputFile.getClientObject()).thenReturn(file);
+    Issue issue = SonarLintTestUtils.createIssue(id);
+    when(issue.getInputFile()).thenReturn(inputFile);
+    return issue;
+  }
+
+  private void processChunk(VirtualFile fileWithIssue) {
+    TrackingSession session = new TrackingSession();
+    session.processed(fileWithIssue, 1, 1);
+    processor.process(job, Collections.emptyList(), indicator, Collections.emptyList(), Collections.emptyList(), Collections.emptyMap(), session);
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IssueRuleTest {
+  @Test
+  public void should_share_equal_rules() {
+    IssueRule rule = IssueRule.of("squid:S123", "name", "MAJOR", "BUG");
+
+    assertThat(IssueRule.of("squid:S123", "name", "MAJOR", "BUG")).isSameAs(rule);
+    assertThat(IssueRule.of("squid:S123", "name", "MINOR", "BUG")).isNotSameAs(rule);
+  }
+
+  @Test
+  public void should_keep_values() {
+    IssueRule rule = IssueRule.of("squid:S123", null, "MAJOR", null);
+
+    assertThat(rule.key()).isEqualTo("squid:S123");
+    assertThat(rule.name()).isNull();
+    assertThat(rule.defaultSeverity()).isEqualTo("MAJOR");
+    assertThat(rule.type()).isNull();
+  }
+
+  @Test
+  public void should_code_unknown_values() {
+    byte code = CodeTable.SEVERITIES.code("UNKNOWN_SEVERITY");
+
+    assertThat(code).isGreaterThan((byte) 5);
+    assertThat(CodeTable.SEVERITIES.code("UNKNOWN_SEVERITY")).isEqualTo(code);
+    assertThat(CodeTable.SEVERITIES.value(code)).isEqualTo("UNKNOWN_SEVERITY");
+    assertThat(CodeTable.SEVERITIES.code(null)).isZero();
+    assertThat(CodeTable.SEVERITIES.value((byte) 0)).isNull();
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonarlint.intellij.SonarLintTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LiveIssueTest {
+  private Document document = mock(Document.class);
+  private RangeMarker marker = mock(RangeMarker.class);
+  private ChecksumCalculator checksumCalculator = mock(ChecksumCalculator.class);
+
+  @Before
+  public void setUp() {
+    when(document.getModificationStamp()).thenReturn(1L);
+    when(document.createRangeMarker(anyInt(), anyInt())).thenReturn(marker);
+  }
+
+  @Test
+  public void should_compute_hashes_on_first_use() {
+    RangeMarker range = mock(RangeMarker.class);
+    when(range.isValid()).thenReturn(true);
+    when(range.getDocument()).thenReturn(document);
+    when(range.getStartOffset()).thenReturn(2);
+    when(range.getEndOffset()).thenReturn(5);
+    when(document.getCharsSequence()).thenReturn("0123456789");
+    when(document.getLineStartOffset(anyInt())).thenReturn(0);
+    when(document.getLineEndOffset(anyInt())).thenReturn(10);
+    when(checksumCalculator.checksum("0123456789", 2, 5)).thenReturn(25);
+    when(checksumCalculator.checksum("0123456789", 0, 10)).thenReturn(10);
+
+    LiveIssue issue = new LiveIssue(SonarLintTestUtils.createIssue(1), mock(VirtualFile.class), range, Collections.emptyList(), checksumCalculator);
+    verify(checksumCalculator, never()).checksum(any(), anyInt(), anyInt());
+
+    assertThat(issue.getTextRangeHash()).isEqualTo(25);
+    assertThat(issue.getTextRangeHash()).isEqualTo(25);
+    assertThat(issue.getLineHash()).isEqualTo(10);
+    verify(checksumCalculator, times(2)).checksum(any(), anyInt(), anyInt());
+  }
+
+  @Test
+  public void should_not_compute_hashes_if_document_was_modified() {
+    RangeMarker range = mock(RangeMarker.class);
+    when(range.isValid()).thenReturn(true);
+    when(range.getDocument()).thenReturn(document);
+
+    LiveIssue issue = new LiveIssue(SonarLintTestUtils.createIssue(1), mock(VirtualFile.class), range, Collections.emptyList(), checksumCalculator);
+    when(document.getModificationStamp()).thenReturn(2L);
+
+    assertThat(issue.getTextRangeHash()).isNull();
+    assertThat(issue.getLineHash()).isNull();
+    verify(checksumCalculator, never()).checksum(any(), anyInt(), anyInt());
+  }
+
+  @Test
+  public void should_not_compute_hashes_of_invalid_ranges() {
+    RangeMarker range = mock(RangeMarker.class);
+    when(range.isValid()).thenReturn(false);
+
+    LiveIssue issue = new LiveIssue(SonarLintTestUtils.createIssue(1), mock(VirtualFile.class), range, Collections.emptyList(), checksumCalculator);
+
+    assertThat(issue.getTextRangeHash()).isNull();
+    assertThat(issue.getLineHash()).isNull();
+  }
+
+  @Test
+  public void should_create_range_marker_of_location_when_shown() {
+    LiveIssue.IssueLocation location = new LiveIssue.IssueLocation(document, 2, 5, "msg");
+    verify(document, never()).createRangeMarker(anyInt(), anyInt());
+
+    assertThat(location.location()).isSameAs(marker);
+    assertThat(location.location()).isSameAs(marker);
+    verify(document, times(1)).createRangeMarker(2, 5);
+  }
+
+  @Test
+  public void should_not_show_location_if_document_was_modified() {
+    LiveIssue.IssueLocation location = new LiveIssue.IssueLocation(document, 2, 5, "msg");
+    when(document.getModificationStamp()).thenReturn(2L);
+
+    assertThat(location.location()).isNull();
+    verify(document, never()).createRangeMarker(anyInt(), anyInt());
+  }
+
+  @Test
+  public void should_promote_flows_without_stale_locations() {
+    Document modified = mock(Document.class);
+    LiveIssue.IssueLocation location1 = new LiveIssue.IssueLocation(document, 2, 5, "msg1");
+    LiveIssue.IssueLocation location2 = new LiveIssue.IssueLocation(modified, 2, 5, "msg2");
+    when(modified.getModificationStamp()).thenReturn(1L);
+    List<LiveIssue.Flow> flows = Arrays.asList(
+      new LiveIssue.Flow(Arrays.asList(location1, location2)),
+      new LiveIssue.Flow(Collections.singletonList(location2)));
+
+    List<LiveIssue.Flow> promoted = LiveIssue.Flow.promote(flows);
+
+    assertThat(promoted).hasSize(1);
+    assertThat(promoted.get(0).locations()).containsExactly(location1);
+  }
+}
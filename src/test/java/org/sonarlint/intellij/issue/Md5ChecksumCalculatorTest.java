@@ -0,0 +1,104 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class Md5ChecksumCalculatorTest {
+  private static final String CHARS = "ab Z0{}\t\n\r\f\u000B\u00a0\u00e9\u20ac\u4e2d\ud83d\ude00\ud83d\ude00\ud800\udc00";
+
+  private final Md5ChecksumCalculator calculator = new Md5ChecksumCalculator();
+
+  @Test
+  public void should_be_compatible_with_stored_checksums() {
+    assertThat(calculator.checksum("")).isEqualTo(expected(""));
+    assertThat(calculator.checksum("  int i = 0;\n")).isEqualTo(expected("  int i = 0;\n"));
+    assertThat(calculator.checksum("int i=0;")).isEqualTo(calculator.checksum(" int  i = 0 ; "));
+    assertThat(calculator.checksum("caf\u00e9 \u20ac \ud83d\ude00")).isEqualTo(expected("caf\u00e9 \u20ac \ud83d\ude00"));
+  }
+
+  @Test
+  public void should_match_reference_implementation_on_random_text() {
+    Random random = new Random(42);
+    for (int run = 0; run < 2_000; run++) {
+      String text = randomText(random, random.nextInt(run % 10 == 0 ? 5_000 : 100));
+      int start = text.isEmpty() ? 0 : random.nextInt(text.length());
+      int end = start + random.nextInt(text.length() - start + 1);
+      assertThat(calculator.checksum(text, start, end)).as(text).isEqualTo(expected(text.substring(start, end)));
+    }
+  }
+
+  @Test
+  public void should_encode_unpaired_surrogates_like_strings() {
+    assertThat(calculator.checksum("a\ud83d")).isEqualTo(expected("a\ud83d"));
+    assertThat(calculator.checksum("\ude00b")).isEqualTo(expected("\ude00b"));
+    // whitespaces used to be removed before encoding
+    assertThat(calculator.checksum("\ud83d \ude00")).isEqualTo(expected("\ud83d\ude00"));
+    // a pair split by the end of the range
+    assertThat(calculator.checksum("\ud83d\ude00", 0, 1)).isEqualTo(expected("\ud83d"));
+  }
+
+  @Test
+  public void should_support_concurrent_use() throws Exception {
+    Random random = new Random(42);
+    List<String> texts = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      texts.add(randomText(random, random.nextInt(3_000)));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        results.add(executor.submit(() -> texts.stream().allMatch(t -> calculator.checksum(t) == expected(t))));
+      }
+      for (Future<Boolean> result : results) {
+        assertThat(result.get()).isTrue();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static String randomText(Random random, int length) {
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append(CHARS.charAt(random.nextInt(CHARS.length())));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * How the checksums were computed before
+   */
+  private static int expected(String content) {
+    return Hex.encodeHexString(DigestUtils.md5(content.replaceAll("[\\s]", "").getBytes(UTF_8))).hashCode();
+  }
+}
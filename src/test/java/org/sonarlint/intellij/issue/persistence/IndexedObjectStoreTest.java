@@ -24,6 +24,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Scanner;
 import org.junit.Before;
 import org.junit.Rule;
@@ -34,7 +37,11 @@ import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Reader;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -80,6 +87,58 @@ public class IndexedObjectStoreTest {
     assertThat(store.read("mykey").get()).isEqualTo("myvalue");
   }
 
+  @Test
+  public void testWriteAll() throws IOException {
+    Map<String, String> values = new HashMap<>();
+    values.put("mykey", "myvalue");
+    values.put("mykey2", "myvalue2");
+    store.writeAll(values);
+
+    assertThat(getPath("mykey")).hasContent("myvalue");
+    assertThat(getPath("mykey2")).hasContent("myvalue2");
+    Map<String, Path> paths = new HashMap<>();
+    paths.put("mykey", getPath("mykey"));
+    paths.put("mykey2", getPath("mykey2"));
+    verify(index).saveAll(paths);
+  }
+
+  @Test
+  public void should_index_values_once_written() throws IOException {
+    doAnswer(invocation -> {
+      Map<String, Path> paths = invocation.getArgument(0);
+      assertThat(paths.keySet()).containsOnly("mykey", "mykey2");
+      paths.values().forEach(p -> assertThat(p).exists());
+      return null;
+    }).when(index).saveAll(anyMap());
+
+    Map<String, String> values = new LinkedHashMap<>();
+    values.put("mykey", "myvalue");
+    values.put("mykey2", "myvalue2");
+    store.writeAll(values);
+
+    verify(index).saveAll(anyMap());
+    verify(index, never()).save(anyString(), any(Path.class));
+  }
+
+  @Test
+  public void should_only_index_written_values_on_error() throws IOException {
+    // a directory can't be written as a file
+    Files.createDirectories(getPath("mykey2").resolve("foo"));
+    Map<String, String> values = new LinkedHashMap<>();
+    values.put("mykey", "myvalue");
+    values.put("mykey2", "myvalue2");
+
+    try {
+      store.writeAll(values);
+      fail("Expected exception");
+    } catch (IOException e) {
+      // expected
+    }
+
+    assertThat(getPath("mykey")).hasContent("myvalue");
+    verify(index).saveAll(Collections.singletonMap("mykey", getPath("mykey")));
+  }
+
   @Test
   public void testContains() throws IOException {
     store.write("mykey", "myvalue");
@@ -19,26 +19,39 @@
  */
 package org.sonarlint.intellij.issue.persistence;
 
+import com.google.protobuf.ByteString;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import javax.annotation.Nullable;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
 import org.sonarlint.intellij.issue.LocalIssueTrackable;
 import org.sonarlint.intellij.issue.tracking.Trackable;
+import org.sonarlint.intellij.proto.Sonarlint;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class IssuePersistenceTest {
+  private Application app;
   private Project project;
+  private SonarLintProjectSettings settings;
   private IssuePersistence persistence;
 
   @Rule
@@ -46,14 +59,21 @@ public class IssuePersistenceTest {
 
   @Before
   public void setUp() {
+    app = mock(Application.class);
+    when(app.acquireReadActionLock()).thenReturn(mock(AccessToken.class));
+    ApplicationManager.setApplication(app, mock(Disposable.class));
+
     project = mock(Project.class);
     VirtualFile baseDir = mock(VirtualFile.class);
 
     when(project.getBaseDir()).thenReturn(baseDir);
     when(baseDir.getPath()).thenReturn(temp.getRoot().getAbsolutePath());
     when(baseDir.findFileByRelativePath(anyString())).thenReturn(baseDir);
+    when(baseDir.findChild(anyString())).thenReturn(baseDir);
+    when(baseDir.isValid()).thenReturn(true);
 
-    persistence = new IssuePersistence(project);
+    settings = new SonarLintProjectSettings();
+    persistence = new IssuePersistence(project, settings);
   }
 
   @Test
@@ -91,6 +111,153 @@ public class IssuePersistenceTest {
     assertThat(issue.getServerIssueKey()).isEqualTo("serverKey");
   }
 
+  @Test
+  public void should_save_all() throws IOException {
+    Map<String, Collection<Trackable>> issuesByKey = new HashMap<>();
+    issuesByKey.put("key1", Collections.singleton(testTrackable));
+    issuesByKey.put("key2", Collections.emptyList());
+    persistence.saveAll(issuesByKey);
+
+    assertThat(persistence.read("key1")).extracting(LocalIssueTrackable::getMessage).containsOnly("msg");
+    assertThat(persistence.read("key2")).isEmpty();
+  }
+
+  @Test
+  public void should_transform_each_key_in_read_action() throws IOException {
+    Map<String, Collection<Trackable>> issuesByKey = new HashMap<>();
+    issuesByKey.put("key1", Collections.singleton(testTrackable));
+    issuesByKey.put("key2", Collections.singleton(testTrackable));
+    when(app.isReadAccessAllowed()).thenReturn(true);
+    persistence.saveAll(issuesByKey);
+
+    verify(app, times(2)).acquireReadActionLock();
+    assertThat(persistence.read("key2")).extracting(LocalIssueTrackable::getMessage).containsOnly("msg");
+  }
+
+  @Test
+  public void should_save_all_segmented() throws IOException {
+    settings.setSegmentedIssueStoreEnabled(true);
+    persistence.clear();
+    persistence.saveAll(Collections.singletonMap("key1", Collections.singleton(testTrackable)));
+
+    assertThat(persistence.read("key1")).extracting(LocalIssueTrackable::getMessage).containsOnly("msg");
+  }
+
+  @Test
+  public void should_read_pending_async_save() throws IOException {
+    persistence.saveAsync("key", Collections.singleton(testTrackable));
+    assertThat(persistence.contains("key")).isTrue();
+    assertThat(persistence.read("key")).extracting(LocalIssueTrackable::getMessage).containsOnly("msg");
+
+    persistence.flushPending();
+    assertThat(persistence.read("key")).extracting(LocalIssueTrackable::getMessage).containsOnly("msg");
+  }
+
+  @Test
+  public void should_convert_async_save_in_read_action() {
+    persistence.saveAsync("key", Collections.singleton(testTrackable));
+    verify(app).acquireReadActionLock();
+  }
+
+  @Test
+  public void should_not_overwrite_with_pending_async_save() throws IOException {
+    persistence.saveAsync("key", Collections.singleton(testTrackable));
+    persistence.save("key", Collections.emptyList());
+    persistence.flushPending();
+
+    assertThat(persistence.read("key")).isEmpty();
+  }
+
+  @Test
+  public void should_read_if_fingerprint_matches() throws IOException {
+    persistence.saveAll(Collections.singletonMap("key", Collections.singleton(testTrackable)), Collections.singletonMap("key", "fingerprint"));
+
+    assertThat(persistence.readIfFingerprintMatches("key", "fingerprint").getIssueList())
+      .extracting(Sonarlint.Issues.Issue::getMessage).containsOnly("msg");
+    assertThat(persistence.readIfFingerprintMatches("key", "other")).isNull();
+    assertThat(persistence.readIfFingerprintMatches("unknown", "fingerprint")).isNull();
+  }
+
+  @Test
+  public void should_keep_fingerprint_of_pending_async_save() throws IOException {
+    persistence.saveAsync("key", Collections.singleton(testTrackable), "fingerprint");
+    assertThat(persistence.readIfFingerprintMatches("key", "fingerprint")).isNotNull();
+
+    persistence.flushPending();
+    assertThat(persistence.readIfFingerprintMatches("key", "fingerprint")).isNotNull();
+  }
+
+  @Test
+  public void should_not_read_without_fingerprint() throws IOException {
+    persistence.save("key", Collections.singleton(testTrackable));
+    assertThat(persistence.readIfFingerprintMatches("key", "")).isNull();
+  }
+
+  @Test
+  public void should_read_both_format_versions() throws IOException {
+    Sonarlint.Issues.Builder builder = Sonarlint.Issues.newBuilder().setFingerprint("fingerprint");
+    for (int i = 0; i < 10; i++) {
+      builder.addIssueBuilder()
+        .setRuleKey("java:S1128")
+        .setMessage("Remove this unused import 'java.util.List'.")
+        .setLine(i + 1)
+        .setChecksum(i)
+        .setAssignee("assignee")
+        .setSeverity("MINOR");
+    }
+    Sonarlint.Issues issues = builder.build();
+
+    ByteString v1 = issues.toByteString();
+    ByteString v2 = IssuePersistence.compact(issues).toByteString();
+
+    assertThat(IssuePersistence.transform(v1)).isEqualTo(issues);
+    assertThat(IssuePersistence.transform(v2)).isEqualTo(issues);
+    assertThat(v2.size()).isLessThan(v1.size() / 2);
+  }
+
+  @Test
+  public void should_read_empty_in_both_format_versions() throws IOException {
+    Sonarlint.Issues issues = Sonarlint.Issues.getDefaultInstance();
+    assertThat(IssuePersistence.transform(issues.toByteString())).isEqualTo(issues);
+    assertThat(IssuePersistence.transform(IssuePersistence.compact(issues).toByteString())).isEqualTo(issues);
+  }
+
+  @Test
+  public void should_store_read_segmented() throws IOException {
+    settings.setSegmentedIssueStoreEnabled(true);
+    persistence.clear();
+    persistence.save("key", Collections.singleton(testTrackable));
+
+    assertThat(persistence.read("key")).extracting(LocalIssueTrackable::getMessage).containsOnly("msg");
+    assertThat(temp.getRoot().toPath().resolve(".idea/sonarlint/issuestore").resolve(IssuePersistence.SEGMENTS_DIR)).isDirectory();
+  }
+
+  @Test
+  public void should_migrate_to_segmented_store() throws IOException {
+    persistence.save("key", Collections.singleton(testTrackable));
+    persistence.disposeComponent();
+
+    settings.setSegmentedIssueStoreEnabled(true);
+    persistence = new IssuePersistence(project, settings);
+
+    assertThat(persistence.read("key")).extracting(LocalIssueTrackable::getMessage).containsOnly("msg");
+    assertThat(temp.getRoot().toPath().resolve(".idea/sonarlint/issuestore").resolve(StringStoreIndex.INDEX_FILENAME)).doesNotExist();
+  }
+
+  @Test
+  public void should_migrate_back_from_segmented_store() throws IOException {
+    settings.setSegmentedIssueStoreEnabled(true);
+    persistence.clear();
+    persistence.save("key", Collections.singleton(testTrackable));
+    persistence.disposeComponent();
+
+    settings.setSegmentedIssueStoreEnabled(false);
+    persistence = new IssuePersistence(project, settings);
+
+    assertThat(persistence.read("key")).extracting(LocalIssueTrackable::getMessage).containsOnly("msg");
+    assertThat(temp.getRoot().toPath().resolve(".idea/sonarlint/issuestore").resolve(IssuePersistence.SEGMENTS_DIR)).doesNotExist();
+  }
+
   private Trackable testTrackable = new Trackable() {
     @Override public Integer getLine() {
       return 5;
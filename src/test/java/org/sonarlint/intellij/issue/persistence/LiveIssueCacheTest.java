@@ -19,20 +19,32 @@
  */
 package org.sonarlint.intellij.issue.persistence;
 
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.sonarlint.intellij.analysis.AnalysisFingerprint;
 import org.sonarlint.intellij.issue.LiveIssue;
+import org.sonarlint.intellij.proto.Sonarlint;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.anyCollection;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -41,16 +53,21 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class LiveIssueCacheTest {
+  private Project project;
   private LiveIssueCache cache;
   private IssuePersistence store;
+  private Application app;
 
   @Rule
   public ExpectedException exception = ExpectedException.none();
 
   @Before
   public void setUp() {
-    Project project = mock(Project.class);
+    project = mock(Project.class);
     store = mock(IssuePersistence.class);
+    app = mock(Application.class);
+    when(app.acquireReadActionLock()).thenReturn(mock(AccessToken.class));
+    ApplicationManager.setApplication(app, mock(Disposable.class));
     cache = new LiveIssueCache(project, store);
 
     when(project.getBasePath()).thenReturn("/root");
@@ -80,6 +97,18 @@ public class LiveIssueCacheTest {
     assertThat(cache.getLive(file)).isEmpty();
   }
 
+  @Test
+  public void should_remove_without_persisting() {
+    VirtualFile file = createTestFile("file1");
+    cache.save(file, Collections.singleton(createTestIssue("r1")));
+
+    assertThat(cache.remove(file)).isTrue();
+    assertThat(cache.remove(file)).isFalse();
+    assertThat(cache.contains(file)).isFalse();
+    assertThat(cache.getWeight()).isZero();
+    verifyZeroInteractions(store);
+  }
+
   @Test
   public void should_not_fallback_persistence() throws IOException {
     VirtualFile file = createTestFile("file1");
@@ -97,21 +126,95 @@ public class LiveIssueCacheTest {
     LiveIssue issue1 = createTestIssue("r1");
     VirtualFile file0 = createTestFile("file0");
     cache.save(file0, Collections.singleton(issue1));
+    long entryWeight = cache.getWeight();
 
-    for (int i = 1; i < LiveIssueCache.MAX_ENTRIES; i++) {
+    // window holds a single entry
+    cache = new LiveIssueCache(project, store, 100 * entryWeight);
+    cache.save(file0, Collections.singleton(issue1));
+    for (int i = 1; i < 100; i++) {
       VirtualFile file = createTestFile("file" + i);
       cache.save(file, Collections.singleton(issue1));
     }
 
     // oldest access should be file1 after this
     assertThat(cache.getLive(file0)).containsOnly(issue1);
+    assertThat(cache.getWeight()).isEqualTo(100 * entryWeight);
 
     verifyZeroInteractions(store);
 
     VirtualFile file = createTestFile("anotherfile");
     cache.save(file, Collections.singleton(issue1));
 
-    verify(store).save(eq("file1"), anyCollection());
+    // file99 leaving the window was not accessed more often than file1, so it's not admitted
+    verify(store).saveAsync(eq("file99"), any(Sonarlint.Issues.class));
+    assertThat(cache.contains(file)).isTrue();
+    assertThat(cache.getEvictionCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_persist_evicted_entries_once_unlocked() {
+    LiveIssue issue1 = createTestIssue("r1");
+    VirtualFile file0 = createTestFile("file0");
+    cache.save(file0, Collections.singleton(issue1));
+    long entryWeight = cache.getWeight();
+    cache = new LiveIssueCache(project, store, 100 * entryWeight);
+    for (int i = 0; i < 100; i++) {
+      cache.save(createTestFile("file" + i), Collections.singleton(issue1));
+    }
+    VirtualFile evicted = createTestFile("file99");
+
+    when(app.acquireReadActionLock()).thenAnswer(invocation -> {
+      assertThat(Thread.holdsLock(cache)).isFalse();
+      return mock(AccessToken.class);
+    });
+    doAnswer(invocation -> {
+      assertThat(Thread.holdsLock(cache)).isFalse();
+      // still returned until it's queued
+      assertThat(cache.getLive(evicted)).containsOnly(issue1);
+      return null;
+    }).when(store).saveAsync(eq("file99"), any(Sonarlint.Issues.class));
+
+    cache.save(createTestFile("anotherfile"), Collections.singleton(issue1));
+
+    verify(app).acquireReadActionLock();
+    verify(store).saveAsync(eq("file99"), any(Sonarlint.Issues.class));
+    assertThat(cache.contains(evicted)).isFalse();
+  }
+
+  @Test
+  public void should_keep_frequently_accessed_files_during_scan() {
+    LiveIssue issue1 = createTestIssue("r1");
+    VirtualFile hotFile = createTestFile("hot");
+    cache.save(hotFile, Collections.singleton(issue1));
+    long entryWeight = cache.getWeight();
+
+    cache = new LiveIssueCache(project, store, 100 * entryWeight);
+    cache.save(hotFile, Collections.singleton(issue1));
+    for (int i = 0; i < 5; i++) {
+      cache.getLive(hotFile);
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      cache.save(createTestFile("file" + i), Collections.singleton(issue1));
+    }
+
+    assertThat(cache.getLive(hotFile)).containsOnly(issue1);
+    assertThat(cache.getWeight()).isLessThanOrEqualTo(100 * entryWeight);
+    assertThat(cache.getEvictionCount()).isEqualTo(901);
+  }
+
+  @Test
+  public void should_count_hits_and_misses() {
+    VirtualFile file = createTestFile("file1");
+    cache.save(file, Collections.singleton(createTestIssue("r1")));
+
+    cache.getLive(file);
+    cache.getLive(file);
+    cache.getLive(createTestFile("file2"));
+
+    assertThat(cache.getHitCount()).isEqualTo(2);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.getEvictionCount()).isZero();
   }
 
   @Test
@@ -135,14 +238,13 @@ public class LiveIssueCacheTest {
 
     cache.flushAll();
 
-    verify(store).save(eq("file0"), anyCollection());
-    verify(store).save(eq("file1"), anyCollection());
+    verify(store).saveAll(argThat(map -> map.keySet().equals(new HashSet<>(Arrays.asList("file0", "file1")))), anyMap());
     verifyNoMoreInteractions(store);
   }
 
   @Test
   public void error_flush() throws IOException {
-    doThrow(new IOException()).when(store).save(anyString(), anyCollection());
+    doThrow(new IOException()).when(store).saveAll(anyMap(), anyMap());
 
     LiveIssue issue1 = createTestIssue("r1");
     VirtualFile file0 = createTestFile("file0");
@@ -152,20 +254,6 @@ public class LiveIssueCacheTest {
     cache.flushAll();
   }
 
-  @Test
-  public void error_remove_eldest() throws IOException {
-    doThrow(new IOException()).when(store).save(anyString(), anyCollection());
-
-    LiveIssue issue1 = createTestIssue("r1");
-    for (int i = 0; i < LiveIssueCache.MAX_ENTRIES; i++) {
-      VirtualFile file = createTestFile("file" + i);
-      cache.save(file, Collections.singleton(issue1));
-    }
-
-    exception.expect(IllegalStateException.class);
-    cache.save(createTestFile("anotherfile"), Collections.singleton(issue1));
-  }
-
   @Test
   public void should_flush_on_project_closed() throws IOException {
     LiveIssue issue1 = createTestIssue("r1");
@@ -176,11 +264,37 @@ public class LiveIssueCacheTest {
 
     cache.disposeComponent();
 
-    verify(store).save(eq("file0"), anyCollection());
-    verify(store).save(eq("file1"), anyCollection());
+    verify(store).saveAll(argThat(map -> map.keySet().equals(new HashSet<>(Arrays.asList("file0", "file1")))), anyMap());
+    verify(store).flushPending();
     verifyNoMoreInteractions(store);
   }
 
+  @Test
+  public void should_keep_fingerprint_until_file_is_modified() {
+    FileDocumentManager docManager = mock(FileDocumentManager.class);
+    when(app.getComponent(FileDocumentManager.class)).thenReturn(docManager);
+
+    VirtualFile file = createTestFile("file1");
+    Document doc = mock(Document.class);
+    when(doc.getImmutableCharSequence()).thenReturn("content");
+    when(doc.getModificationStamp()).thenReturn(1L);
+    when(docManager.getDocument(file)).thenReturn(doc);
+    when(docManager.getCachedDocument(file)).thenReturn(doc);
+    AnalysisFingerprint fingerprint = AnalysisFingerprint.compute(docManager, file, "config");
+
+    cache.save(file, Collections.singleton(createTestIssue("r1")));
+    cache.setFingerprint(file, fingerprint);
+    assertThat(cache.getFingerprint(file)).isEqualTo(fingerprint.value());
+
+    // tracking the issues again doesn't change the fingerprint
+    cache.save(file, Collections.singleton(createTestIssue("r1")));
+    assertThat(cache.getFingerprint(file)).isEqualTo(fingerprint.value());
+
+    when(doc.getModificationStamp()).thenReturn(2L);
+    assertThat(cache.getFingerprint(file)).isNull();
+    assertThat(cache.getFingerprint(createTestFile("file2"))).isNull();
+  }
+
   private LiveIssue createTestIssue(String ruleKey) {
     LiveIssue issue = mock(LiveIssue.class);
     when(issue.getRuleKey()).thenReturn(ruleKey);
@@ -20,6 +20,7 @@
 package org.sonarlint.intellij.issue.persistence;
 
 import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Arrays;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -56,4 +57,22 @@ public class PathStoreKeyValidatorTest {
   public void should_not_validate_if_file_not_found() {
     assertThat(validator.apply("file2")).isFalse();
   }
+
+  @Test
+  public void should_filter_files_not_in_vfs() {
+    VirtualFile dir = mock(VirtualFile.class);
+    VirtualFile file1 = mock(VirtualFile.class);
+    VirtualFile file2 = mock(VirtualFile.class);
+    VirtualFile file3 = mock(VirtualFile.class);
+    when(projectBaseDir.findFileByRelativePath("dir")).thenReturn(dir);
+    when(dir.isValid()).thenReturn(true);
+    when(dir.findChild("file1")).thenReturn(file1);
+    when(dir.findChild("file3")).thenReturn(file3);
+    when(projectBaseDir.findChild("file2")).thenReturn(file2);
+    when(file1.isValid()).thenReturn(true);
+    when(file2.isValid()).thenReturn(true);
+
+    assertThat(validator.filterInvalid(Arrays.asList("dir/file1", "dir/file3", "file2", "file4", "missing/file5")))
+      .containsOnly("dir/file3", "file4", "missing/file5");
+  }
 }
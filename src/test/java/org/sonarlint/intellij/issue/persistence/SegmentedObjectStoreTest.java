@@ -0,0 +1,185 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Scanner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Reader;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SegmentedObjectStoreTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private SegmentedObjectStore<String> store;
+  private Path root;
+  private StoreKeyValidator<String> validator;
+
+  @Before
+  public void setUp() {
+    root = temp.getRoot().toPath();
+    validator = mock(StoreKeyValidator.class);
+    store = open();
+  }
+
+  @After
+  public void tearDown() {
+    store.close();
+  }
+
+  private SegmentedObjectStore<String> open() {
+    Reader<String> reader = (stream) -> new Scanner(stream).next();
+    Writer<String> writer = (stream, str) -> {
+      try {
+        stream.write(str.getBytes());
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    };
+    return new SegmentedObjectStore<>(root, reader, writer, validator);
+  }
+
+  @Test
+  public void testWrite() throws IOException {
+    store.write("mykey", "myvalue");
+    store.write("mykey2", "myvalue2");
+    store.write("mykey", "myvalue3");
+
+    assertThat(store.read("mykey").get()).isEqualTo("myvalue3");
+    assertThat(store.read("mykey2").get()).isEqualTo("myvalue2");
+    assertThat(store.contains("mykey")).isTrue();
+    assertThat(store.contains("random")).isFalse();
+    assertThat(store.read("random").isPresent()).isFalse();
+  }
+
+  @Test
+  public void testDelete() throws IOException {
+    store.write("mykey", "myvalue");
+    store.delete("mykey");
+    store.delete("random");
+
+    assertThat(store.read("mykey").isPresent()).isFalse();
+    assertThat(store.contains("mykey")).isFalse();
+  }
+
+  @Test
+  public void testReopen() throws IOException {
+    store.write("mykey", "myvalue");
+    store.write("mykey2", "myvalue2");
+    store.write("mykey", "myvalue3");
+    store.delete("mykey2");
+    store.close();
+
+    store = open();
+    assertThat(store.read("mykey").get()).isEqualTo("myvalue3");
+    assertThat(store.contains("mykey2")).isFalse();
+  }
+
+  @Test
+  public void testIgnoreIncompleteRecord() throws IOException {
+    store.write("mykey", "myvalue");
+    store.write("mykey2", "myvalue2");
+    store.close();
+    Path segment = root.resolve("segment-1.log");
+    Files.write(segment, Arrays.copyOf(Files.readAllBytes(segment), (int) Files.size(segment) - 3));
+
+    store = open();
+    assertThat(store.read("mykey").get()).isEqualTo("myvalue");
+    assertThat(store.contains("mykey2")).isFalse();
+    store.write("mykey3", "myvalue3");
+    store.close();
+
+    store = open();
+    assertThat(store.read("mykey3").get()).isEqualTo("myvalue3");
+  }
+
+  @Test
+  public void testCompact() throws IOException {
+    store.write("mykey", "myvalue");
+    store.write("mykey", "myvalue2");
+    store.write("mykey2", "myvalue3");
+    store.delete("mykey2");
+    assertThat(store.getGarbageBytes()).isPositive();
+
+    store.compact();
+    assertThat(store.getGarbageBytes()).isZero();
+    assertThat(store.getSegmentCount()).isEqualTo(1);
+    assertThat(store.read("mykey").get()).isEqualTo("myvalue2");
+    store.write("mykey3", "myvalue4");
+    store.close();
+
+    store = open();
+    assertThat(store.read("mykey").get()).isEqualTo("myvalue2");
+    assertThat(store.read("mykey3").get()).isEqualTo("myvalue4");
+    assertThat(store.contains("mykey2")).isFalse();
+  }
+
+  @Test
+  public void testKeepSegmentsAfterIncompleteCompaction() throws IOException {
+    store.write("mykey", "myvalue");
+    store.write("mykey2", "myvalue2");
+    store.write("mykey", "myvalue3");
+    store.close();
+
+    // compacted segment of a compaction that crashed after copying a part of the records
+    byte[] segment = Files.readAllBytes(root.resolve("segment-1.log"));
+    byte[] halfWritten = Arrays.copyOf(segment, segment.length / 2);
+    halfWritten[5] = 1;
+    Path tmp = root.resolve("segment-2.log.tmp");
+    Files.write(tmp, halfWritten);
+
+    store = open();
+    assertThat(store.read("mykey").get()).isEqualTo("myvalue3");
+    assertThat(store.read("mykey2").get()).isEqualTo("myvalue2");
+    assertThat(tmp).doesNotExist();
+
+    store.compact();
+    store.close();
+    store = open();
+    assertThat(store.read("mykey").get()).isEqualTo("myvalue3");
+    assertThat(store.read("mykey2").get()).isEqualTo("myvalue2");
+    assertThat(store.getSegmentCount()).isEqualTo(1);
+    assertThat(root.resolve("segment-2.log")).exists();
+  }
+
+  @Test
+  public void testDeleteInvalid() throws IOException {
+    store.write("mykey", "myvalue");
+    store.write("mykey2", "myvalue2");
+    when(validator.apply("mykey")).thenReturn(Boolean.FALSE);
+    when(validator.apply("mykey2")).thenReturn(Boolean.TRUE);
+
+    store.deleteInvalid();
+    assertThat(store.contains("mykey")).isFalse();
+    assertThat(store.contains("mykey2")).isTrue();
+  }
+}
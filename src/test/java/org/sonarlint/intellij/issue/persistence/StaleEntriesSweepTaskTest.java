@@ -0,0 +1,125 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StaleEntriesSweepTaskTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Project project;
+  private IssuePersistence persistence;
+  private Path cursorPath;
+  private ProgressIndicator indicator = mock(ProgressIndicator.class);
+  private Application app;
+  private VirtualFile baseDir;
+
+  @Before
+  public void setUp() throws IOException {
+    app = mock(Application.class);
+    when(app.acquireReadActionLock()).thenReturn(mock(AccessToken.class));
+    ApplicationManager.setApplication(app, mock(Disposable.class));
+
+    project = mock(Project.class);
+    baseDir = mock(VirtualFile.class);
+    when(project.getBaseDir()).thenReturn(baseDir);
+    when(baseDir.getPath()).thenReturn(temp.getRoot().getAbsolutePath());
+    when(baseDir.isValid()).thenReturn(true);
+    VirtualFile file = mock(VirtualFile.class);
+    when(file.isValid()).thenReturn(true);
+    when(baseDir.findChild("a-valid")).thenReturn(file);
+    when(baseDir.findChild("c-valid")).thenReturn(file);
+    persistence = new IssuePersistence(project, new SonarLintProjectSettings());
+    cursorPath = temp.getRoot().toPath().resolve("cursor");
+
+    for (String key : new String[] {"a-valid", "b-stale", "c-valid", "d-stale"}) {
+      persistence.save(key, Collections.emptyList());
+    }
+  }
+
+  @Test
+  public void should_delete_stale_entries() {
+    new StaleEntriesSweepTask(project, persistence, cursorPath).run(indicator);
+
+    assertThat(persistence.keys()).containsOnly("a-valid", "c-valid");
+    assertThat(cursorPath).doesNotExist();
+    verify(indicator).setFraction(1.0);
+  }
+
+  @Test
+  public void should_look_up_files_with_read_access() {
+    AtomicBoolean readAccess = new AtomicBoolean();
+    when(app.acquireReadActionLock()).thenAnswer(invocation -> {
+      readAccess.set(true);
+      AccessToken token = mock(AccessToken.class);
+      doAnswer(i -> {
+        readAccess.set(false);
+        return null;
+      }).when(token).finish();
+      return token;
+    });
+    List<String> lookedUp = new ArrayList<>();
+    when(baseDir.findChild(anyString())).thenAnswer(invocation -> {
+      assertThat(readAccess.get()).isTrue();
+      lookedUp.add(invocation.getArgument(0));
+      return null;
+    });
+
+    new StaleEntriesSweepTask(project, persistence, cursorPath).run(indicator);
+
+    assertThat(lookedUp).containsOnly("a-valid", "b-stale", "c-valid", "d-stale");
+    assertThat(readAccess.get()).isFalse();
+  }
+
+  @Test
+  public void should_resume_from_cursor() throws IOException {
+    Files.write(cursorPath, "b-stale".getBytes());
+    new StaleEntriesSweepTask(project, persistence, cursorPath).run(indicator);
+
+    assertThat(persistence.keys()).containsOnly("a-valid", "b-stale", "c-valid");
+    assertThat(cursorPath).doesNotExist();
+  }
+}
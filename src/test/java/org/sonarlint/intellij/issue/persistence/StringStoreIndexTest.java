@@ -22,6 +22,9 @@ package org.sonarlint.intellij.issue.persistence;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -66,6 +69,67 @@ public class StringStoreIndexTest {
     assertThat(index.keys()).isEmpty();
   }
 
+  @Test
+  public void testSaveAll() {
+    Map<String, Path> pathByKey = new HashMap<>();
+    pathByKey.put("key1", baseDir.resolve("p1").resolve("file1"));
+    pathByKey.put("key2", baseDir.resolve("p1").resolve("file2"));
+    index.saveAll(pathByKey);
+
+    assertThat(index.keys()).containsOnly("key1", "key2");
+    assertThat(new StringStoreIndex(baseDir).keys()).containsOnly("key1", "key2");
+  }
+
+  @Test
+  public void testReplayJournal() {
+    index.save("key1", baseDir.resolve("p1").resolve("file1"));
+    index.save("key2", baseDir.resolve("p1").resolve("file2"));
+    index.delete("key1");
+
+    assertThat(baseDir.resolve(StringStoreIndex.JOURNAL_FILENAME)).exists();
+    assertThat(new StringStoreIndex(baseDir).keys()).containsOnly("key2");
+  }
+
+  @Test
+  public void testCompact() {
+    index.save("key1", baseDir.resolve("p1").resolve("file1"));
+    index.save("key2", baseDir.resolve("p1").resolve("file2"));
+    index.compact();
+
+    assertThat(baseDir.resolve(StringStoreIndex.JOURNAL_FILENAME)).doesNotExist();
+    assertThat(new StringStoreIndex(baseDir).keys()).containsOnly("key1", "key2");
+  }
+
+  @Test
+  public void testCompactWhenJournalGrows() {
+    Path test1 = baseDir.resolve("p1").resolve("file1");
+    index.save("key1", test1);
+    for (int i = 0; i <= StringStoreIndex.MIN_ENTRIES_BEFORE_COMPACTION; i++) {
+      if (i % 2 == 0) {
+        index.delete("key1");
+      } else {
+        index.save("key1", test1);
+      }
+    }
+
+    assertThat(baseDir.resolve(StringStoreIndex.JOURNAL_FILENAME)).doesNotExist();
+    assertThat(new StringStoreIndex(baseDir).keys()).isEmpty();
+  }
+
+  @Test
+  public void testIgnoreIncompleteJournalRecord() throws IOException {
+    index.save("key1", baseDir.resolve("p1").resolve("file1"));
+    index.save("key2", baseDir.resolve("p1").resolve("file2"));
+    Path journal = baseDir.resolve(StringStoreIndex.JOURNAL_FILENAME);
+    byte[] content = Files.readAllBytes(journal);
+    Files.write(journal, Arrays.copyOf(content, content.length - 2));
+
+    StringStoreIndex reloaded = new StringStoreIndex(baseDir);
+    assertThat(reloaded.keys()).containsOnly("key1");
+    reloaded.save("key3", baseDir.resolve("p1").resolve("file3"));
+    assertThat(new StringStoreIndex(baseDir).keys()).containsOnly("key1", "key3");
+  }
+
   @Test
   public void testErrorSave() throws IOException {
     // Try to make file readonly on supported platform to prevent file creation
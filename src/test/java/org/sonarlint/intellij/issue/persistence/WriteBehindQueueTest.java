@@ -0,0 +1,117 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WriteBehindQueueTest {
+  private final Map<String, String> written = new ConcurrentHashMap<>();
+  private final CountDownLatch unblock = new CountDownLatch(1);
+  private WriteBehindQueue<String, String> queue;
+
+  @After
+  public void tearDown() {
+    unblock.countDown();
+    queue.shutdown();
+  }
+
+  @Test
+  public void should_write_in_background() {
+    queue = new WriteBehindQueue<>("test", 10, written::put);
+    queue.put("key1", "value1");
+    queue.put("key2", "value2");
+    queue.awaitEmpty();
+
+    assertThat(written).containsOnlyKeys("key1", "key2");
+    assertThat(queue.get("key1")).isNull();
+  }
+
+  @Test
+  public void should_coalesce_and_keep_pending_values_visible() throws InterruptedException {
+    CountDownLatch writing = new CountDownLatch(1);
+    queue = new WriteBehindQueue<>("test", 10, (k, v) -> {
+      writing.countDown();
+      await(unblock);
+      written.put(k, v);
+    });
+    queue.put("blocker", "value");
+    writing.await();
+
+    queue.put("key1", "value1");
+    queue.put("key1", "value2");
+    assertThat(queue.size()).isEqualTo(2);
+    assertThat(queue.get("key1")).isEqualTo("value2");
+    assertThat(queue.get("blocker")).isEqualTo("value");
+
+    unblock.countDown();
+    queue.awaitEmpty();
+    assertThat(written).containsEntry("key1", "value2");
+  }
+
+  @Test
+  public void should_continue_after_error() {
+    queue = new WriteBehindQueue<>("test", 10, (k, v) -> {
+      if (k.equals("fail")) {
+        throw new IOException("error");
+      }
+      written.put(k, v);
+    });
+    queue.put("fail", "value");
+    queue.put("key1", "value1");
+    queue.awaitEmpty();
+
+    assertThat(written).containsOnlyKeys("key1");
+  }
+
+  @Test
+  public void should_drain_on_shutdown() {
+    queue = new WriteBehindQueue<>("test", 10, written::put);
+    queue.put("key1", "value1");
+    queue.shutdown();
+
+    assertThat(written).containsOnlyKeys("key1");
+  }
+
+  @Test
+  public void should_write_synchronously_after_shutdown() {
+    queue = new WriteBehindQueue<>("test", 10, written::put);
+    queue.shutdown();
+    queue.put("key1", "value1");
+
+    assertThat(written).containsOnlyKeys("key1");
+    assertThat(queue.get("key1")).isNull();
+    assertThat(queue.size()).isZero();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
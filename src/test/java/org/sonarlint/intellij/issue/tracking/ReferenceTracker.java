@@ -0,0 +1,500 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.tracking;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import org.sonarlint.intellij.util.SonarLintUtils;
+
+/**
+ * Straightforward implementation of the stages of {@link Tracker}, used as a reference of the expected results. Issues sharing a
+ * search key are paired with the same costs as the tracker, but by comparing all the candidate pairs.
+ * {@link #firstMatch()} returns the original implementation instead, which matches each raw issue with the first base issue that
+ * shares its search key.
+ */
+class ReferenceTracker<RAW extends Trackable, BASE extends Trackable> {
+  private final boolean firstMatch;
+
+  ReferenceTracker() {
+    this(false);
+  }
+
+  private ReferenceTracker(boolean firstMatch) {
+    this.firstMatch = firstMatch;
+  }
+
+  static <RAW extends Trackable, BASE extends Trackable> ReferenceTracker<RAW, BASE> firstMatch() {
+    return new ReferenceTracker<>(true);
+  }
+
+  public Tracking<RAW, BASE> track(Input<RAW> rawInput, Input<BASE> baseInput) {
+    Tracking<RAW, BASE> tracking = new Tracking<>(rawInput, baseInput);
+
+    // 1. match issues with same rule, same line and same text range hash, but not necessarily with same message
+    match(tracking, LineAndTextRangeHashKeyFactory.INSTANCE);
+
+    // 2. match issues with same rule, same message and same text range hash
+    match(tracking, TextRangeHashAndMessageKeyFactory.INSTANCE);
+
+    // 3. match issues with same rule, same line and same message
+    match(tracking, LineAndMessageKeyFactory.INSTANCE);
+
+    // 4. match issues with same rule and same text range hash but different line and different message.
+    // See SONAR-2812
+    match(tracking, TextRangeHashKeyFactory.INSTANCE);
+
+    // 5. match issues with same rule, same line and same line hash
+    match(tracking, LineAndLineHashKeyFactory.INSTANCE);
+
+    // 6. match issues with same rule and same same line hash
+    match(tracking, LineHashKeyFactory.INSTANCE);
+
+    // 7. match issues with same server issue key
+    match(tracking, ServerIssueSearchKeyFactory.INSTANCE);
+
+    return tracking;
+  }
+
+  private void match(Tracking<RAW, BASE> tracking, SearchKeyFactory factory) {
+    if (tracking.isComplete()) {
+      return;
+    }
+
+    Map<SearchKey, List<BASE>> baseSearch = new HashMap<>();
+    for (BASE base : tracking.getUnmatchedBases()) {
+      baseSearch.computeIfAbsent(factory.apply(base), k -> new ArrayList<>()).add(base);
+    }
+    if (firstMatch) {
+      matchFirst(tracking, factory, baseSearch);
+      return;
+    }
+    Map<SearchKey, List<RAW>> rawSearch = new HashMap<>();
+    for (RAW raw : tracking.getUnmatchedRaws()) {
+      rawSearch.computeIfAbsent(factory.apply(raw), k -> new ArrayList<>()).add(raw);
+    }
+
+    for (RAW raw : tracking.getUnmatchedRaws()) {
+      if (tracking.baseFor(raw) != null) {
+        continue;
+      }
+      SearchKey rawKey = factory.apply(raw);
+      List<BASE> bases = baseSearch.get(rawKey);
+      if (bases != null && !bases.isEmpty()) {
+        List<RAW> raws = rawSearch.get(rawKey);
+        for (Pair pair : bestPairs(raws, bases)) {
+          RAW matchedRaw = raws.get(pair.raw);
+          BASE matchedBase = bases.get(pair.base);
+          tracking.match(matchedRaw, matchedBase);
+        }
+        raws.removeIf(r -> tracking.baseFor(r) != null);
+        bases.removeIf(b -> !tracking.containsUnmatchedBase(b));
+      }
+    }
+  }
+
+  private void matchFirst(Tracking<RAW, BASE> tracking, SearchKeyFactory factory, Map<SearchKey, List<BASE>> baseSearch) {
+    for (RAW raw : tracking.getUnmatchedRaws()) {
+      SearchKey rawKey = factory.apply(raw);
+      List<BASE> bases = baseSearch.get(rawKey);
+      if (bases != null && !bases.isEmpty()) {
+        BASE match = bases.get(0);
+        tracking.match(raw, match);
+        bases.remove(match);
+      }
+    }
+  }
+
+  /**
+   * Pairs the first issues of the bucket by increasing cost, then in their original order.
+   */
+  private static List<Pair> bestPairs(List<? extends Trackable> raws, List<? extends Trackable> bases) {
+    int numRaws = Math.min(raws.size(), Tracker.MAX_CANDIDATES);
+    int numBases = Math.min(bases.size(), Tracker.MAX_CANDIDATES);
+    List<Pair> candidates = new ArrayList<>();
+    for (int r = 0; r < numRaws; r++) {
+      for (int b = 0; b < numBases; b++) {
+        candidates.add(new Pair(r, b, cost(raws.get(r), bases.get(b))));
+      }
+    }
+    candidates.sort(Comparator.<Pair>comparingLong(p -> p.cost).thenComparingInt(p -> p.raw).thenComparingInt(p -> p.base));
+
+    Set<Integer> pairedRaws = new HashSet<>();
+    Set<Integer> pairedBases = new HashSet<>();
+    List<Pair> pairs = new ArrayList<>();
+    for (Pair candidate : candidates) {
+      if (!pairedRaws.contains(candidate.raw) && !pairedBases.contains(candidate.base)) {
+        pairedRaws.add(candidate.raw);
+        pairedBases.add(candidate.base);
+        pairs.add(candidate);
+      }
+    }
+    return pairs;
+  }
+
+  private static long cost(Trackable raw, Trackable base) {
+    long maxDistance = (1 << 24) - 1;
+    long distance;
+    if (raw.getLine() == null || base.getLine() == null) {
+      distance = Objects.equals(raw.getLine(), base.getLine()) ? 0 : maxDistance;
+    } else {
+      distance = Math.min(Math.abs((long) raw.getLine() - base.getLine()), maxDistance);
+    }
+    return Objects.equals(raw.getMessage(), base.getMessage()) ? distance : (maxDistance + 1 + distance);
+  }
+
+  private static class Pair {
+    private final int raw;
+    private final int base;
+    private final long cost;
+
+    Pair(int raw, int base, long cost) {
+      this.raw = raw;
+      this.base = base;
+      this.cost = cost;
+    }
+  }
+
+  private interface SearchKey {
+  }
+
+  @FunctionalInterface
+  private interface SearchKeyFactory extends Function<Trackable, SearchKey> {
+    @Override
+    SearchKey apply(Trackable trackable);
+  }
+
+  private static class LineAndTextRangeHashKey implements SearchKey {
+    private final String ruleKey;
+    private final Integer textRangeHash;
+    private final Integer line;
+
+    LineAndTextRangeHashKey(Trackable trackable) {
+      this.ruleKey = trackable.getRuleKey();
+      this.line = trackable.getLine();
+      this.textRangeHash = trackable.getTextRangeHash();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null) {
+        return false;
+      }
+      if (this.getClass() != o.getClass()) {
+        return false;
+      }
+      LineAndTextRangeHashKey that = (LineAndTextRangeHashKey) o;
+      // start with most discriminant field
+      return Objects.equals(line, that.line)
+        && Objects.equals(textRangeHash, that.textRangeHash)
+        && ruleKey.equals(that.ruleKey);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = ruleKey.hashCode();
+      result = 31 * result + (textRangeHash != null ? textRangeHash.hashCode() : 0);
+      result = 31 * result + (line != null ? line.hashCode() : 0);
+      return result;
+    }
+  }
+
+  private enum LineAndTextRangeHashKeyFactory implements SearchKeyFactory {
+    INSTANCE;
+
+    @Override
+    public SearchKey apply(Trackable t) {
+      return new LineAndTextRangeHashKey(t);
+    }
+  }
+
+  private static class LineAndLineHashKey implements SearchKey {
+    private final String ruleKey;
+    private final Integer line;
+    private final Integer lineHash;
+
+    LineAndLineHashKey(Trackable trackable) {
+      this.ruleKey = trackable.getRuleKey();
+      this.line = trackable.getLine();
+      this.lineHash = trackable.getLineHash();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null) {
+        return false;
+      }
+      if (this.getClass() != o.getClass()) {
+        return false;
+      }
+      LineAndLineHashKey that = (LineAndLineHashKey) o;
+      // start with most discriminant field
+      return Objects.equals(line, that.line)
+        && Objects.equals(lineHash, that.lineHash)
+        && ruleKey.equals(that.ruleKey);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = ruleKey.hashCode();
+      result = 31 * result + (lineHash != null ? lineHash.hashCode() : 0);
+      result = 31 * result + (line != null ? line.hashCode() : 0);
+      return result;
+    }
+  }
+
+  private enum LineAndLineHashKeyFactory implements SearchKeyFactory {
+    INSTANCE;
+
+    @Override
+    public SearchKey apply(Trackable t) {
+      return new LineAndLineHashKey(t);
+    }
+  }
+
+  private static class LineHashKey implements SearchKey {
+    private final String ruleKey;
+    private final Integer lineHash;
+
+    LineHashKey(Trackable trackable) {
+      this.ruleKey = trackable.getRuleKey();
+      this.lineHash = trackable.getLineHash();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null) {
+        return false;
+      }
+      if (this.getClass() != o.getClass()) {
+        return false;
+      }
+      LineHashKey that = (LineHashKey) o;
+      // start with most discriminant field
+      return Objects.equals(lineHash, that.lineHash)
+        && ruleKey.equals(that.ruleKey);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = ruleKey.hashCode();
+      result = 31 * result + (lineHash != null ? lineHash.hashCode() : 0);
+      return result;
+    }
+  }
+
+  private enum LineHashKeyFactory implements SearchKeyFactory {
+    INSTANCE;
+
+    @Override
+    public SearchKey apply(Trackable t) {
+      return new LineHashKey(t);
+    }
+  }
+
+  private static class TextRangeHashAndMessageKey implements SearchKey {
+    private final String ruleKey;
+    private final String message;
+    private final Integer textRangeHash;
+
+    TextRangeHashAndMessageKey(Trackable trackable) {
+      this.ruleKey = trackable.getRuleKey();
+      this.message = trackable.getMessage();
+      this.textRangeHash = trackable.getTextRangeHash();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null) {
+        return false;
+      }
+      if (this.getClass() != o.getClass()) {
+        return false;
+      }
+      TextRangeHashAndMessageKey that = (TextRangeHashAndMessageKey) o;
+      // start with most discriminant field
+      return Objects.equals(textRangeHash, that.textRangeHash)
+        && message.equals(that.message)
+        && ruleKey.equals(that.ruleKey);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = ruleKey.hashCode();
+      result = 31 * result + message.hashCode();
+      result = 31 * result + (textRangeHash != null ? textRangeHash.hashCode() : 0);
+      return result;
+    }
+  }
+
+  private enum TextRangeHashAndMessageKeyFactory implements SearchKeyFactory {
+    INSTANCE;
+
+    @Override
+    public SearchKey apply(Trackable t) {
+      return new TextRangeHashAndMessageKey(t);
+    }
+  }
+
+  private static class LineAndMessageKey implements SearchKey {
+    private final String ruleKey;
+    private final String message;
+    private final Integer line;
+
+    LineAndMessageKey(Trackable trackable) {
+      this.ruleKey = trackable.getRuleKey();
+      this.message = trackable.getMessage();
+      this.line = trackable.getLine();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null) {
+        return false;
+      }
+      if (this.getClass() != o.getClass()) {
+        return false;
+      }
+      LineAndMessageKey that = (LineAndMessageKey) o;
+      // start with most discriminant field
+      return Objects.equals(line, that.line)
+        && message.equals(that.message)
+        && ruleKey.equals(that.ruleKey);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = ruleKey.hashCode();
+      result = 31 * result + message.hashCode();
+      result = 31 * result + (line != null ? line.hashCode() : 0);
+      return result;
+    }
+  }
+
+  private enum LineAndMessageKeyFactory implements SearchKeyFactory {
+    INSTANCE;
+
+    @Override
+    public SearchKey apply(Trackable t) {
+      return new LineAndMessageKey(t);
+    }
+  }
+
+  private static class TextRangeHashKey implements SearchKey {
+    private final String ruleKey;
+    private final Integer textRangeHash;
+
+    TextRangeHashKey(Trackable trackable) {
+      this.ruleKey = trackable.getRuleKey();
+      this.textRangeHash = trackable.getTextRangeHash();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null) {
+        return false;
+      }
+      if (this.getClass() != o.getClass()) {
+        return false;
+      }
+      TextRangeHashKey that = (TextRangeHashKey) o;
+      // start with most discriminant field
+      return Objects.equals(textRangeHash, that.textRangeHash)
+        && ruleKey.equals(that.ruleKey);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = ruleKey.hashCode();
+      result = 31 * result + (textRangeHash != null ? textRangeHash.hashCode() : 0);
+      return result;
+    }
+  }
+
+  private enum TextRangeHashKeyFactory implements SearchKeyFactory {
+    INSTANCE;
+
+    @Override
+    public SearchKey apply(Trackable t) {
+      return new TextRangeHashKey(t);
+    }
+  }
+
+  private static class ServerIssueSearchKey implements SearchKey {
+    private final String serverIssueKey;
+
+    ServerIssueSearchKey(Trackable trackable) {
+      serverIssueKey = trackable.getServerIssueKey();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      ServerIssueSearchKey that = (ServerIssueSearchKey) o;
+
+      return !SonarLintUtils.isBlank(serverIssueKey) && !SonarLintUtils.isBlank(that.serverIssueKey) && serverIssueKey.equals(that.serverIssueKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return serverIssueKey != null ? serverIssueKey.hashCode() : 0;
+    }
+  }
+
+  private enum ServerIssueSearchKeyFactory implements SearchKeyFactory {
+    INSTANCE;
+
+    @Override
+    public SearchKey apply(Trackable trackable) {
+      return new ServerIssueSearchKey(trackable);
+    }
+  }
+}
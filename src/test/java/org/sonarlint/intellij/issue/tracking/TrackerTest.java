@@ -0,0 +1,318 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.tracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class TrackerTest {
+  private static final int RUNS = 2_000;
+
+  // "Aa" and "BB" have the same hash code
+  private static final List<String> RULE_KEYS = Arrays.asList("java:S100", "Aa", "BB");
+  private static final List<String> MESSAGES = Arrays.asList("msg1", "msg2", "Remove this unused import.");
+  private static final List<String> SERVER_ISSUE_KEYS = Arrays.asList(null, "", " ", "AV1", "AV2");
+
+  @Test
+  public void should_match_same_issues_as_reference_implementation() {
+    Random random = new Random(42);
+    for (int run = 0; run < RUNS; run++) {
+      List<Issue> raws = randomIssues(random, random.nextInt(30));
+      List<Issue> bases = randomIssues(random, random.nextInt(30));
+
+      Tracking<Issue, Issue> expected = new ReferenceTracker<Issue, Issue>().track(() -> raws, () -> bases);
+      Tracking<Issue, Issue> actual = new Tracker<Issue, Issue>().track(() -> raws, () -> bases);
+
+      assertSameMatches(actual, expected, raws);
+    }
+  }
+
+  @Test
+  public void should_match_same_issues_as_reference_implementation_with_many_duplicates() {
+    Random random = new Random(7);
+    for (int run = 0; run < RUNS / 10; run++) {
+      List<Issue> raws = randomIssues(random, 500);
+      List<Issue> bases = randomIssues(random, 500);
+
+      assertSameMatches(new Tracker<Issue, Issue>().track(() -> raws, () -> bases),
+        new ReferenceTracker<Issue, Issue>().track(() -> raws, () -> bases), raws);
+    }
+  }
+
+  @Test
+  public void should_not_match_keys_with_same_hash() {
+    Issue raw = new Issue("Aa", "msg", 1, 2, 3, null);
+    Issue base = new Issue("BB", "msg", 1, 2, 3, null);
+
+    Tracking<Issue, Issue> tracking = new Tracker<Issue, Issue>().track(() -> Collections.singletonList(raw), () -> Collections.singletonList(base));
+
+    assertThat(tracking.getMatchedRaws()).isEmpty();
+  }
+
+  @Test
+  public void should_match_in_order_of_appearance() {
+    Issue raw1 = new Issue("rule", "msg", 1, null, null, null);
+    Issue raw2 = new Issue("rule", "msg", 1, null, null, null);
+    Issue base1 = new Issue("rule", "msg", 1, null, null, null);
+    Issue base2 = new Issue("rule", "msg", 1, null, null, null);
+
+    Tracking<Issue, Issue> tracking = new Tracker<Issue, Issue>().track(() -> Arrays.asList(raw1, raw2), () -> Arrays.asList(base1, base2));
+
+    assertThat(tracking.baseFor(raw1)).isSameAs(base1);
+    assertThat(tracking.baseFor(raw2)).isSameAs(base2);
+  }
+
+  @Test
+  public void should_match_closest_issues_with_same_key() {
+    // same rule, message and text range hash, but lines were inserted above
+    Issue raw1 = new Issue("rule", "msg", 21, 2, null, null);
+    Issue raw2 = new Issue("rule", "msg", 11, 2, null, null);
+    Issue base1 = new Issue("rule", "msg", 10, 2, null, null);
+    Issue base2 = new Issue("rule", "msg", 20, 2, null, null);
+
+    Tracking<Issue, Issue> tracking = new Tracker<Issue, Issue>().track(() -> Arrays.asList(raw1, raw2), () -> Arrays.asList(base1, base2));
+
+    assertThat(tracking.baseFor(raw1)).isSameAs(base2);
+    assertThat(tracking.baseFor(raw2)).isSameAs(base1);
+
+    // the original tracker matched them in order of appearance
+    Tracking<Issue, Issue> firstMatch = ReferenceTracker.<Issue, Issue>firstMatch().track(() -> Arrays.asList(raw1, raw2), () -> Arrays.asList(base1, base2));
+    assertThat(firstMatch.baseFor(raw1)).isSameAs(base1);
+    assertThat(firstMatch.baseFor(raw2)).isSameAs(base2);
+  }
+
+  @Test
+  public void should_prefer_issues_with_same_message() {
+    // same rule, line and text range hash
+    Issue raw1 = new Issue("rule", "msg1", 1, 2, null, null);
+    Issue raw2 = new Issue("rule", "msg2", 1, 2, null, null);
+    Issue base1 = new Issue("rule", "msg2", 1, 2, null, null);
+    Issue base2 = new Issue("rule", "msg1", 1, 2, null, null);
+
+    Tracking<Issue, Issue> tracking = new Tracker<Issue, Issue>().track(() -> Arrays.asList(raw1, raw2), () -> Arrays.asList(base1, base2));
+
+    assertThat(tracking.baseFor(raw1)).isSameAs(base2);
+    assertThat(tracking.baseFor(raw2)).isSameAs(base1);
+
+    // the original tracker matched them in order of appearance
+    Tracking<Issue, Issue> firstMatch = ReferenceTracker.<Issue, Issue>firstMatch().track(() -> Arrays.asList(raw1, raw2), () -> Arrays.asList(base1, base2));
+    assertThat(firstMatch.baseFor(raw1)).isSameAs(base1);
+    assertThat(firstMatch.baseFor(raw2)).isSameAs(base2);
+  }
+
+  /**
+   * Pairing by cost only changes the matches of issues sharing a search key with other issues of the same input.
+   */
+  @Test
+  public void should_match_same_issues_as_first_match_if_no_search_key_is_shared() {
+    Random random = new Random(3);
+    for (int run = 0; run < RUNS; run++) {
+      List<Issue> raws = distinctIssues(random, random.nextInt(30));
+      List<Issue> bases = distinctIssues(random, random.nextInt(30));
+
+      assertSameMatches(new Tracker<Issue, Issue>().track(() -> raws, () -> bases),
+        ReferenceTracker.<Issue, Issue>firstMatch().track(() -> raws, () -> bases), raws);
+    }
+  }
+
+  @Test
+  public void should_handle_empty_inputs() {
+    Issue issue = new Issue("rule", "msg", 1, null, null, null);
+
+    assertThat(new Tracker<Issue, Issue>().track(Collections::emptyList, Collections::emptyList).getMatchedRaws()).isEmpty();
+    assertThat(new Tracker<Issue, Issue>().track(() -> Collections.singletonList(issue), Collections::emptyList).getUnmatchedRaws()).containsOnly(issue);
+    assertThat(new Tracker<Issue, Issue>().track(Collections::emptyList, () -> Collections.singletonList(issue)).getUnmatchedBases()).containsOnly(issue);
+  }
+
+  @Test
+  public void should_only_request_hashes_when_needed() {
+    Issue raw = spy(new Issue("rule", "msg", 1, 2, 3, null));
+    Issue base = spy(new Issue("rule", "msg", 1, 2, 3, null));
+
+    new Tracker<Issue, Issue>().track(() -> Collections.singletonList(raw), Collections::emptyList);
+    verify(raw, never()).getTextRangeHash();
+    verify(raw, never()).getLineHash();
+
+    // matched in the first stage
+    new Tracker<Issue, Issue>().track(() -> Collections.singletonList(raw), () -> Collections.singletonList(base));
+    verify(raw).getTextRangeHash();
+    verify(base).getTextRangeHash();
+    verify(raw, never()).getLineHash();
+    verify(base, never()).getLineHash();
+  }
+
+  @Test
+  public void should_match_unchanged_issues_directly() {
+    Issue unchangedRaw = spy(new Issue("rule", "msg", 10, 2, 3, null));
+    Issue unchangedBase = spy(new Issue("rule", "other msg", 12, 4, 5, null));
+    Issue editedRaw = new Issue("rule", "msg", 1, 6, 7, null);
+    Issue editedBase = new Issue("rule", "msg", 1, 6, 7, null);
+    Map<Issue, Object> unchanged = new IdentityHashMap<>();
+    unchanged.put(unchangedRaw, "key");
+    unchanged.put(unchangedBase, "key");
+
+    Tracking<Issue, Issue> tracking = new Tracker<Issue, Issue>().track(() -> Arrays.asList(editedRaw, unchangedRaw),
+      () -> Arrays.asList(unchangedBase, editedBase), t -> unchanged.get(t));
+
+    assertThat(tracking.baseFor(unchangedRaw)).isSameAs(unchangedBase);
+    assertThat(tracking.baseFor(editedRaw)).isSameAs(editedBase);
+    verify(unchangedRaw, never()).getTextRangeHash();
+    verify(unchangedBase, never()).getTextRangeHash();
+  }
+
+  private static void assertSameMatches(Tracking<Issue, Issue> actual, Tracking<Issue, Issue> expected, List<Issue> raws) {
+    Map<Issue, Issue> actualMatches = actual.getMatchedRaws();
+    Map<Issue, Issue> expectedMatches = expected.getMatchedRaws();
+    assertThat(actualMatches).hasSameSizeAs(expectedMatches);
+    for (Issue raw : raws) {
+      assertThat(actual.baseFor(raw)).isSameAs(expected.baseFor(raw));
+    }
+  }
+
+  private static List<Issue> randomIssues(Random random, int count) {
+    List<Issue> issues = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      issues.add(new Issue(
+        pick(random, RULE_KEYS),
+        pick(random, MESSAGES),
+        randomInteger(random, 5),
+        randomInteger(random, 3),
+        randomInteger(random, 3),
+        pick(random, SERVER_ISSUE_KEYS)));
+    }
+    return issues;
+  }
+
+  /**
+   * Each issue gets a distinct value for each field that is part of a search key. Raw and base issues get values of the same
+   * range, so that they are matched by different stages.
+   */
+  private static List<Issue> distinctIssues(Random random, int count) {
+    List<Integer> values = IntStream.range(0, 30).boxed().collect(Collectors.toList());
+    Collections.shuffle(values, random);
+    List<Issue> issues = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int value = values.get(i);
+      issues.add(new Issue(
+        "rule",
+        "msg" + distinct(random, value),
+        distinct(random, value),
+        distinct(random, value),
+        distinct(random, value),
+        "AV" + distinct(random, value)));
+    }
+    return issues;
+  }
+
+  /**
+   * Either the value, or a value that no other issue can have.
+   */
+  private static int distinct(Random random, int value) {
+    return random.nextInt(3) == 0 ? (value + 100) : value;
+  }
+
+  @CheckForNull
+  private static Integer randomInteger(Random random, int bound) {
+    int value = random.nextInt(bound + 1);
+    return value == bound ? null : value;
+  }
+
+  private static <T> T pick(Random random, List<T> values) {
+    return values.get(random.nextInt(values.size()));
+  }
+
+  private static class Issue implements Trackable {
+    private final String ruleKey;
+    private final String message;
+    private final Integer line;
+    private final Integer textRangeHash;
+    private final Integer lineHash;
+    private final String serverIssueKey;
+
+    private Issue(String ruleKey, String message, @Nullable Integer line, @Nullable Integer textRangeHash, @Nullable Integer lineHash,
+      @Nullable String serverIssueKey) {
+      this.ruleKey = ruleKey;
+      this.message = message;
+      this.line = line;
+      this.textRangeHash = textRangeHash;
+      this.lineHash = lineHash;
+      this.serverIssueKey = serverIssueKey;
+    }
+
+    @Override public Integer getLine() {
+      return line;
+    }
+
+    @Override public String getMessage() {
+      return message;
+    }
+
+    @Override public Integer getTextRangeHash() {
+      return textRangeHash;
+    }
+
+    @Override public Integer getLineHash() {
+      return lineHash;
+    }
+
+    @Override public String getRuleKey() {
+      return ruleKey;
+    }
+
+    @Override public String getServerIssueKey() {
+      return serverIssueKey;
+    }
+
+    @Override public Long getCreationDate() {
+      return null;
+    }
+
+    @Override public boolean isResolved() {
+      return false;
+    }
+
+    @Override public String getAssignee() {
+      return "";
+    }
+
+    @Override public String getSeverity() {
+      return "MAJOR";
+    }
+
+    @Override public String getType() {
+      return null;
+    }
+  }
+}
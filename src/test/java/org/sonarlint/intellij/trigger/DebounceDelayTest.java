@@ -0,0 +1,65 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.trigger;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DebounceDelayTest {
+  @Test
+  public void should_start_from_initial_delay() {
+    assertThat(new DebounceDelay(2000).get()).isEqualTo(2000);
+  }
+
+  @Test
+  public void should_follow_analysis_durations() {
+    DebounceDelay delay = new DebounceDelay(2000);
+    for (int i = 0; i < 50; i++) {
+      delay.analyzed(3000);
+    }
+    assertThat(delay.get()).isBetween(2900L, 3000L);
+  }
+
+  @Test
+  public void should_follow_typing_pauses() {
+    DebounceDelay delay = new DebounceDelay(2000);
+    for (int i = 0; i < 50; i++) {
+      delay.analyzed(100);
+      delay.typed(200);
+    }
+    assertThat(delay.get()).isBetween(600L, 700L);
+  }
+
+  @Test
+  public void should_be_bounded() {
+    DebounceDelay delay = new DebounceDelay(2000);
+    for (int i = 0; i < 50; i++) {
+      delay.analyzed(100_000);
+    }
+    assertThat(delay.get()).isEqualTo(8000);
+
+    for (int i = 0; i < 100; i++) {
+      delay.analyzed(0);
+      delay.typed(0);
+    }
+    assertThat(delay.get()).isEqualTo(500);
+  }
+}
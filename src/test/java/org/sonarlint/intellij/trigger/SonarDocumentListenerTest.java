@@ -27,16 +27,23 @@ import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.messages.MessageBusConnection;
 import java.util.Collections;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.sonarlint.intellij.SonarLintTestUtils;
+import org.sonarlint.intellij.analysis.SonarLintJob;
+import org.sonarlint.intellij.analysis.SonarLintJobManager;
 import org.sonarlint.intellij.config.global.SonarLintGlobalSettings;
+import org.sonarlint.intellij.messages.TaskListener;
 import org.sonarlint.intellij.util.SonarLintAppUtils;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
@@ -50,6 +57,8 @@ public class SonarDocumentListenerTest {
   @Mock
   private SonarLintSubmitter submitter;
   @Mock
+  private SonarLintJobManager jobManager;
+  @Mock
   private EditorFactory editorFactory;
   @Mock
   private SonarLintAppUtils utils;
@@ -58,16 +67,17 @@ public class SonarDocumentListenerTest {
 
   private SonarLintGlobalSettings globalSettings;
   private SonarDocumentListener listener;
+  private MessageBusConnection connection;
 
   @Before
   public void setUp() {
     MockitoAnnotations.initMocks(this);
-    SonarLintTestUtils.mockMessageBus(project);
+    connection = SonarLintTestUtils.mockMessageBus(project);
 
     when(editorFactory.getEventMulticaster()).thenReturn(mock(EditorEventMulticaster.class));
     globalSettings = new SonarLintGlobalSettings();
     globalSettings.setAutoTrigger(true);
-    listener = new SonarDocumentListener(project, globalSettings, submitter, editorFactory, utils, docManager, 500);
+    listener = new SonarDocumentListener(project, globalSettings, submitter, jobManager, editorFactory, utils, docManager, 500);
     listener.initComponent();
   }
 
@@ -87,10 +97,50 @@ public class SonarDocumentListenerTest {
 
     listener.documentChanged(event);
     assertThat(listener.getEvents()).hasSize(1);
+    verify(jobManager).cancelOutdatedAnalysis(file);
     verify(submitter, timeout(1000)).submitFiles(Collections.singleton(file), TriggerType.EDITOR_CHANGE, true);
     verifyNoMoreInteractions(submitter);
   }
 
+  @Test
+  public void should_trigger_once_after_last_edit() throws InterruptedException {
+    VirtualFile file = mock(VirtualFile.class);
+    Document doc = mock(Document.class);
+    DocumentEvent event = mock(DocumentEvent.class);
+
+    when(file.isValid()).thenReturn(true);
+    when(event.getDocument()).thenReturn(doc);
+    when(docManager.getFile(doc)).thenReturn(file);
+    when(utils.guessProjectForFile(file)).thenReturn(project);
+    when(utils.isOpenFile(project, file)).thenReturn(true);
+
+    listener.documentChanged(event);
+    Thread.sleep(300);
+    listener.documentChanged(event);
+    verify(submitter, after(1500)).submitFiles(Collections.singleton(file), TriggerType.EDITOR_CHANGE, true);
+    assertThat(listener.getEvents()).isEmpty();
+  }
+
+  @Test
+  public void should_only_adapt_delay_to_completed_analyses() {
+    ArgumentCaptor<TaskListener> taskListener = ArgumentCaptor.forClass(TaskListener.class);
+    verify(connection).subscribe(eq(TaskListener.SONARLINT_TASK_TOPIC), taskListener.capture());
+    SonarLintJob job = mock(SonarLintJob.class);
+    when(job.trigger()).thenReturn(TriggerType.EDITOR_CHANGE);
+    when(job.creationTime()).thenReturn(System.currentTimeMillis() - 10_000);
+    long initialDelay = listener.getDelay();
+
+    // canceled or skipped
+    taskListener.getValue().started(job);
+    taskListener.getValue().ended(job);
+    assertThat(listener.getDelay()).isEqualTo(initialDelay);
+
+    taskListener.getValue().started(job);
+    taskListener.getValue().completed(job);
+    taskListener.getValue().ended(job);
+    assertThat(listener.getDelay()).isGreaterThan(initialDelay);
+  }
+
   @Test
   public void dont_trigger_if_auto_disabled() {
     globalSettings.setAutoTrigger(false);
@@ -107,6 +157,7 @@ public class SonarDocumentListenerTest {
 
     listener.documentChanged(event);
     verifyZeroInteractions(submitter);
+    verifyZeroInteractions(jobManager);
   }
 
   @Test
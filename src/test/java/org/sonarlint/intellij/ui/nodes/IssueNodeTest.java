@@ -19,7 +19,7 @@
  */
 package org.sonarlint.intellij.ui.nodes;
 
-import com.intellij.psi.PsiFile;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.SimpleTextAttributes;
 import icons.SonarLintIcons;
 import java.io.IOException;
@@ -84,7 +84,7 @@ public class IssueNodeTest {
   }
 
   private static LiveIssue createIssue(long date, String message) {
-    PsiFile file = mock(PsiFile.class);
+    VirtualFile file = mock(VirtualFile.class);
     when(file.isValid()).thenReturn(true);
     Issue issue = mock(Issue.class);
     when(issue.getMessage()).thenReturn(message);
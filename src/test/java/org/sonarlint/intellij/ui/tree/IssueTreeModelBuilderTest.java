@@ -21,7 +21,6 @@ package org.sonarlint.intellij.ui.tree;
 
 import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.psi.PsiFile;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -112,8 +111,6 @@ public class IssueTreeModelBuilderTest {
     when(file.getName()).thenReturn(fileName);
     when(file.isValid()).thenReturn(true);
 
-    PsiFile psiFile = mock(PsiFile.class);
-    when(psiFile.isValid()).thenReturn(true);
     List<LiveIssue> issueList = new LinkedList<>();
 
     for (int i = 0; i < numIssues; i++) {
@@ -125,8 +122,8 @@ public class IssueTreeModelBuilderTest {
 
   private static LiveIssue mockIssuePointer(String path, int startOffset, String rule, String severity, @Nullable Long creationDate) {
     Issue issue = mock(Issue.class);
-    PsiFile psiFile = mock(PsiFile.class);
-    when(psiFile.isValid()).thenReturn(true);
+    VirtualFile virtualFile = mock(VirtualFile.class);
+    when(virtualFile.isValid()).thenReturn(true);
     ClientInputFile f = mockFile(path);
     when(issue.getInputFile()).thenReturn(f);
     when(issue.getRuleKey()).thenReturn(rule);
@@ -134,7 +131,7 @@ public class IssueTreeModelBuilderTest {
     when(issue.getSeverity()).thenReturn(severity);
     RangeMarker marker = mock(RangeMarker.class);
     when(marker.getStartOffset()).thenReturn(startOffset);
-    LiveIssue ip = new LiveIssue(issue, psiFile);
+    LiveIssue ip = new LiveIssue(issue, virtualFile);
     ip.setCreationDate(creationDate);
     return ip;
   }
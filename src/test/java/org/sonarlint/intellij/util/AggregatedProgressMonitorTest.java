@@ -0,0 +1,108 @@
+/*
+ * CodeScan for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.util;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AggregatedProgressMonitorTest {
+  private ProgressIndicator indicator;
+  private AggregatedProgressMonitor progress;
+
+  @Before
+  public void setUp() {
+    indicator = mock(ProgressIndicator.class);
+    progress = new AggregatedProgressMonitor(indicator, 4);
+  }
+
+  @Test
+  public void should_average_fractions() {
+    progress.part(0).setFraction(0.5f);
+    verify(indicator).setFraction(0.125);
+
+    progress.done(1);
+    verify(indicator).setFraction(0.375);
+
+    progress.part(0).setFraction(1.0f);
+    verify(indicator).setFraction(0.5);
+  }
+
+  @Test
+  public void should_wrap() {
+    ProgressMonitor monitor = progress.part(2);
+
+    monitor.setMessage("message");
+    verify(indicator).setText("message");
+
+    monitor.startNonCancelableSection();
+    verify(indicator).startNonCancelableSection();
+
+    monitor.finishNonCancelableSection();
+    verify(indicator).finishNonCancelableSection();
+
+    monitor.setIndeterminate(false);
+    verify(indicator, never()).setIndeterminate(false);
+  }
+
+  @Test
+  public void should_only_forward_outermost_non_cancelable_section() {
+    ProgressMonitor monitor1 = progress.part(0);
+    ProgressMonitor monitor2 = progress.part(1);
+
+    monitor1.startNonCancelableSection();
+    monitor2.startNonCancelableSection();
+    monitor1.finishNonCancelableSection();
+    verify(indicator).startNonCancelableSection();
+    verify(indicator, never()).finishNonCancelableSection();
+
+    monitor2.finishNonCancelableSection();
+    verify(indicator).finishNonCancelableSection();
+
+    monitor1.startNonCancelableSection();
+    verify(indicator, times(2)).startNonCancelableSection();
+  }
+
+  @Test
+  public void should_cancel_all_parts() {
+    ProgressMonitor monitor1 = progress.part(0);
+    ProgressMonitor monitor2 = progress.part(1);
+    assertThat(monitor1.isCanceled()).isFalse();
+
+    progress.cancel();
+    assertThat(monitor1.isCanceled()).isTrue();
+    assertThat(monitor2.isCanceled()).isTrue();
+  }
+
+  @Test
+  public void should_be_canceled_with_indicator() {
+    when(indicator.isCanceled()).thenReturn(true);
+    assertThat(progress.part(3).isCanceled()).isTrue();
+    assertThat(progress.isCanceled()).isTrue();
+  }
+}